@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -26,6 +27,14 @@ public class Configuration {
   /* a map contains everything */
   public static Map<String, String> keyValue = new TreeMap<String, String>();
 
+  /*
+   * parameters of the thread that override the map above, e.g. the language of the extraction.
+   * They are inherited by the threads that it creates, so a pipeline sees the same values in all
+   * of its stages.
+   */
+  private static InheritableThreadLocal<Map<String, String>> threadValue =
+      new InheritableThreadLocal<Map<String, String>>();
+
   /**
    * Print the (interesting) details of the config file.
    */
@@ -44,6 +53,19 @@ public class Configuration {
         (Configuration.getNumArticlesToProcess() == -1) ? "ALL"
             : Configuration.getNumArticlesToProcess());
     System.out.printf("\t%-30s %s\n", "by:", Configuration.getChunkSize());
+    System.out.printf("\t%-30s %s\n", "Dump reader:",
+        (Configuration.useMultistreamReader())
+            ? "multistream (" + Configuration.getReaderThreads() + " threads)" : "sequential");
+    System.out.printf("\t%-30s %s\n", "Prefetched chunks:", Configuration.getPrefetchDepth());
+    System.out.printf("\t%-30s %s\n", "Stage threads (AP/SD/ED/WR/TE):",
+        Configuration.getParserThreads() + "/" + Configuration.getSeedThreads() + "/"
+            + Configuration.getDetectorThreads() + "/" + Configuration.getWriterThreads() + "/"
+            + Configuration.getTriplifierThreads());
+    System.out.printf("\t%-30s %s\n", "Fan out:",
+        (Configuration.getFanOutChars() > 0) ? Configuration.getFanOutThreads()
+            + " threads, from " + Configuration.getFanOutChars() + " chars" : "NO");
+    System.out.printf("\t%-30s %s\n", "Longest first:",
+        (Configuration.longestFirst()) ? "YES" : "NO");
     System.out.printf("\t%-30s %s\n", "In memory:",
         (Configuration.inMemoryProcess()) ? "YES" : "NO");
     System.out.printf("\t%-30s %s\n", "Solve Redirect:",
@@ -64,6 +86,41 @@ public class Configuration {
     keyValue.put(key, value);
   }
 
+  /**
+   * Update a parameter only for the current thread (and the threads that it will create). It is
+   * used to run the extraction of several languages at the same time.
+   * 
+   * @param key
+   * @param value
+   */
+  public static void updateThreadParameter(String key, String value) {
+    Map<String, String> values = new HashMap<String, String>();
+    if (threadValue.get() != null)
+      values.putAll(threadValue.get());
+    values.put(key, value);
+    threadValue.set(values);
+  }
+
+  /**
+   * Removes the parameters of the current thread.
+   */
+  public static void clearThreadParameters() {
+    threadValue.remove();
+  }
+
+  /**
+   * Returns the value of the parameter, looking first at the ones of the current thread.
+   * 
+   * @param key
+   * @return
+   */
+  private static String get(String key) {
+    Map<String, String> values = threadValue.get();
+    if (values != null && values.containsKey(key))
+      return values.get(key);
+    return keyValue.get(key);
+  }
+
   /**
    * Returns a map with the parameters obtained parsing the command line.
    * 
@@ -143,18 +200,22 @@ public class Configuration {
   }
 
   public static String getTask() {
-    return keyValue.get("task");
+    return get("task");
   }
 
   /***********************************************************************/
   /************************* LANGUAGE *******************************/
   /***********************************************************************/
   public static Set<String> getLanguages() {
-    return new HashSet<String>(Arrays.asList(keyValue.get("languages").split(",")));
+    return new HashSet<String>(Arrays.asList(get("languages").split(",")));
+  }
+
+  public static boolean runLanguagesInParallel() {
+    return get("parallelLanguages").equalsIgnoreCase("true");
   }
 
   public static String getLanguageCode() {
-    return keyValue.get("language");
+    return get("language");
   }
 
   public static String getLanguageProperties() {
@@ -166,7 +227,7 @@ public class Configuration {
   }
 
   public static String getPipelineSteps() {
-    return keyValue.get("pipeline");
+    return get("pipeline");
   }
 
   /***********************************************************************/
@@ -174,17 +235,17 @@ public class Configuration {
   /***********************************************************************/
   public static String getDataFolder() {
     String dataFolder = null;
-    if (keyValue.get("dataFile") == null) {
+    if (get("dataFile") == null) {
       System.out.println("Data Folder not selected. System exit.");
       System.exit(1);
     } else {
-      dataFolder = keyValue.get("dataFile");
+      dataFolder = get("dataFile");
     }
     return dataFolder;
   }
 
   private static String getInputFolder() {
-    String folderPath = getDataFolder() + "/" + keyValue.get("inputFolder");
+    String folderPath = getDataFolder() + "/" + get("inputFolder");
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -193,7 +254,7 @@ public class Configuration {
 
   public static String getLectorFolder() {
     String folderPath =
-        getDataFolder() + "/" + keyValue.get("lectorFolder") + "/" + getLanguageCode();
+        getDataFolder() + "/" + get("lectorFolder") + "/" + getLanguageCode();
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -202,7 +263,7 @@ public class Configuration {
 
   public static String getOutputFolder() {
     String folderPath =
-        getDataFolder() + "/" + keyValue.get("outputFolder") + "/" + getLanguageCode();
+        getDataFolder() + "/" + get("outputFolder") + "/" + getLanguageCode();
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -210,7 +271,7 @@ public class Configuration {
   }
 
   private static String getIndexesFolder(String langCode) {
-    String folderPath = getDataFolder() + "/" + keyValue.get("indexesFolder") + "/" + langCode;
+    String folderPath = getDataFolder() + "/" + get("indexesFolder") + "/" + langCode;
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -218,7 +279,7 @@ public class Configuration {
   }
 
   private static String getSourceFolder(String langCode) {
-    String folderPath = getDataFolder() + "/" + keyValue.get("sourceFolder") + "/" + langCode;
+    String folderPath = getDataFolder() + "/" + get("sourceFolder") + "/" + langCode;
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -226,7 +287,7 @@ public class Configuration {
   }
 
   private static String getTypesFolder(String langCode) {
-    String folderPath = getSourceFolder(langCode) + "/" + keyValue.get("typesFolder");
+    String folderPath = getSourceFolder(langCode) + "/" + get("typesFolder");
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -235,7 +296,7 @@ public class Configuration {
 
   private static String getOntologyFolder() {
     String folderPath =
-        getDataFolder() + "/" + keyValue.get("sourceFolder") + "/" + keyValue.get("ontologyFolder");
+        getDataFolder() + "/" + get("sourceFolder") + "/" + get("ontologyFolder");
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -244,7 +305,7 @@ public class Configuration {
 
   private static String getPosModelsFolder() {
     String folderPath =
-        getDataFolder() + "/" + keyValue.get("posModelsFolder") + "/" + getLanguageCode();
+        getDataFolder() + "/" + get("posModelsFolder") + "/" + getLanguageCode();
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -253,7 +314,7 @@ public class Configuration {
 
   private static String getListsFolder() {
     String folderPath =
-        getDataFolder() + "/" + keyValue.get("listsFolder") + "/" + getLanguageCode();
+        getDataFolder() + "/" + get("listsFolder") + "/" + getLanguageCode();
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -261,7 +322,7 @@ public class Configuration {
   }
 
   private static String getSpotlightFolder() {
-    String folderPath = getDataFolder() + "/" + keyValue.get("spotlightFolder");
+    String folderPath = getDataFolder() + "/" + get("spotlightFolder");
     File folder = new File(folderPath);
     if (!folder.exists())
       folder.mkdirs();
@@ -272,15 +333,15 @@ public class Configuration {
   /************************* DBPEDIA STUFFS ************************/
   /***********************************************************************/
   private static String getDBPediaPath() {
-    return getInputFolder() + "/" + keyValue.get("dbpediaPath") + "/" + getLanguageCode();
+    return getInputFolder() + "/" + get("dbpediaPath") + "/" + getLanguageCode();
   }
 
   public static String getDBPediaIndex() {
-    return getDBPediaPath() + "/" + keyValue.get("dbpediaIndex");
+    return getDBPediaPath() + "/" + get("dbpediaIndex");
   }
 
   public static String getDBPediaDumpFile() {
-    return getDBPediaPath() + "/" + keyValue.get("dbpediaName");
+    return getDBPediaPath() + "/" + get("dbpediaName");
   }
 
   public static String getIndexableDBPediaFile() {
@@ -291,30 +352,45 @@ public class Configuration {
   /********************** WIKIPEDIA STUFFS ***************************/
   /***********************************************************************/
   private static String getWikipediaPath() {
-    return getInputFolder() + "/" + keyValue.get("wikipediaPath") + "/" + getLanguageCode();
+    return getInputFolder() + "/" + get("wikipediaPath") + "/" + getLanguageCode();
   }
 
   public static String getOriginalArticlesFile() {
     return getWikipediaPath() + "/" + "dump.xml.bz2";
   }
 
+  public static String getOriginalArticlesIndexFile() {
+    return getWikipediaPath() + "/" + "dump-index.txt.bz2";
+  }
+
   public static String getAugmentedArticlesFile() {
-    return getWikipediaPath() + "/" + keyValue.get("augmentedArticles");
+    return getShardFile(getWikipediaPath() + "/" + get("augmentedArticles"), getShard());
   }
 
   public static String getParsedArticlesFile() {
-    return getWikipediaPath() + "/" + keyValue.get("parsedArticles");
+    return getShardFile(getWikipediaPath() + "/" + get("parsedArticles"), getShard());
   }
 
   public static String getDetailArticlesFile() {
-    return getWikipediaPath() + "/" + keyValue.get("detailsArticles");
+    return getShardFile(getWikipediaPath() + "/" + get("detailsArticles"), getShard());
+  }
+
+  public static String getQuarantineArticlesFile() {
+    return getShardFile(getWikipediaPath() + "/" + get("quarantineArticles"), getShard());
   }
 
   /***********************************************************************/
   /********************** OUTPUT & MODELS *************************/
   /***********************************************************************/
   public static String getDBModel() {
-    return getLectorFolder() + "/" + getLanguageCode() + "_" + keyValue.get("dbmodel");
+    return getShardFile(getLectorFolder() + "/" + getLanguageCode() + "_" + get("dbmodel"),
+        getShard());
+  }
+
+  public static String getMetricsFolder() {
+    if (getShard() < 0)
+      return getOutputFolder();
+    return getOutputFolder() + "/shard" + getShard();
   }
 
   public static String getDBCrossValidation() {
@@ -353,92 +429,134 @@ public class Configuration {
   /*********************** TYPES INDEXES ***************************/
   /***********************************************************************/
   public static String getTypesIndex() {
-    return getIndexesFolder(getLanguageCode()) + "/" + keyValue.get("typesIndexName");
+    return getIndexesFolder(getLanguageCode()) + "/" + get("typesIndexName");
   }
 
   public static String getSDTypesIndex() {
-    return getIndexesFolder(getLanguageCode()) + "/" + keyValue.get("sdtypedIndexName");
+    return getIndexesFolder(getLanguageCode()) + "/" + get("sdtypedIndexName");
   }
 
   public static String getAirpediaIndex() {
-    return getIndexesFolder(getLanguageCode()) + "/" + keyValue.get("airpediaIndexName");
+    return getIndexesFolder(getLanguageCode()) + "/" + get("airpediaIndexName");
   }
 
   public static String getLHDTypesIndex() {
-    return getIndexesFolder(getLanguageCode()) + "/" + keyValue.get("lhdIndexName");
+    return getIndexesFolder(getLanguageCode()) + "/" + get("lhdIndexName");
   }
 
   public static String getDBTaxTypesIndex() {
-    return getIndexesFolder(getLanguageCode()) + "/" + keyValue.get("dbtaxIndexName");
+    return getIndexesFolder(getLanguageCode()) + "/" + get("dbtaxIndexName");
   }
 
   public static String getRedirectIndex() {
-    return getIndexesFolder(getLanguageCode()) + "/" + keyValue.get("redirectIndexName");
+    return getIndexesFolder(getLanguageCode()) + "/" + get("redirectIndexName");
   }
 
   public static String getTypesIndex_Ref() {
-    return getIndexesFolder("en") + "/" + keyValue.get("typesIndexName");
+    return getIndexesFolder("en") + "/" + get("typesIndexName");
   }
 
   public static String getAirpediaIndex_Ref() {
-    return getIndexesFolder("en") + "/" + keyValue.get("airpediaIndexName");
+    return getIndexesFolder("en") + "/" + get("airpediaIndexName");
   }
 
   /***********************************************************************/
   /*********************** NORMALIZED TYPES ***********************/
   /***********************************************************************/
   public static String getRedirectFile() {
-    return getSourceFolder(getLanguageCode()) + "/" + keyValue.get("redirectFile");
+    return getSourceFolder(getLanguageCode()) + "/" + get("redirectFile");
   }
 
   /***********************************************************************/
   /*********************** SOURCE TYPES ***************************/
   /***********************************************************************/
   public static String getSourceMainInstanceTypes() {
-    return getTypesFolder(getLanguageCode()) + "/" + keyValue.get("mainInstanceType");
+    return getTypesFolder(getLanguageCode()) + "/" + get("mainInstanceType");
   }
 
   public static String getSourceAirpediaTypes() {
-    return getTypesFolder(getLanguageCode()) + "/" + keyValue.get("airpediaInstanceType");
+    return getTypesFolder(getLanguageCode()) + "/" + get("airpediaInstanceType");
   }
 
   public static String getSourceDBTaxInstanceTypes() {
-    return getTypesFolder(getLanguageCode()) + "/" + keyValue.get("dbtaxInstanceType");
+    return getTypesFolder(getLanguageCode()) + "/" + get("dbtaxInstanceType");
   }
 
   public static String getSourceLHDInstanceTypes() {
-    return getTypesFolder(getLanguageCode()) + "/" + keyValue.get("lhdInstanceType");
+    return getTypesFolder(getLanguageCode()) + "/" + get("lhdInstanceType");
   }
 
   public static String getSourceSDTypedInstanceTypes() {
-    return getTypesFolder(getLanguageCode()) + "/" + keyValue.get("sdtypedInstanceType");
+    return getTypesFolder(getLanguageCode()) + "/" + get("sdtypedInstanceType");
   }
 
   public static String getSourceMainInstanceTypes_Ref() {
-    return getTypesFolder("en") + "/" + keyValue.get("mainInstanceType");
+    return getTypesFolder("en") + "/" + get("mainInstanceType");
   }
 
   public static String getSourceAirpediaTypes_Ref() {
-    return getTypesFolder("en") + "/" + keyValue.get("airpediaInstanceType");
+    return getTypesFolder("en") + "/" + get("airpediaInstanceType");
   }
 
   public static String getDBPediaOntologyFile() {
-    return getOntologyFolder() + "/" + keyValue.get("ontology");
+    return getOntologyFolder() + "/" + get("ontology");
   }
 
   /***********************************************************************/
   /*********************** OPEN NLP MODELS ************************/
   /***********************************************************************/
   public static String getTokenModel() {
-    return getPosModelsFolder() + "/" + keyValue.get("tokenModel");
+    return getPosModelsFolder() + "/" + get("tokenModel");
   }
 
   public static String getLemmatizerModel() {
-    return getPosModelsFolder() + "/" + keyValue.get("lemmatizerDictonary");
+    return getPosModelsFolder() + "/" + get("lemmatizerDictonary");
   }
 
   public static String getPOSModel() {
-    return getPosModelsFolder() + "/" + keyValue.get("postaggerModel");
+    return getPosModelsFolder() + "/" + get("postaggerModel");
+  }
+
+  /***********************************************************************/
+  /***************************** SHARDS ******************************/
+  /***********************************************************************/
+  public static int getShards() {
+    return Integer.parseInt(get("shards"));
+  }
+
+  /**
+   * Returns the shard processed by this worker, or -1 if this is not a worker.
+   * 
+   * @return
+   */
+  public static int getShard() {
+    return (get("shard") == null) ? -1 : Integer.parseInt(get("shard"));
+  }
+
+  public static String getShardHeap() {
+    return get("shardHeap");
+  }
+
+  public static String getShardLog(int shard) {
+    return getLectorFolder() + "/shard" + shard + ".log";
+  }
+
+  /**
+   * Returns the file written by the given shard in place of path, e.g. model.shard2.db. With a
+   * negative shard the path is returned as it is.
+   * 
+   * @param path
+   * @param shard
+   * @return
+   */
+  public static String getShardFile(String path, int shard) {
+    if (shard < 0)
+      return path;
+    int name = path.lastIndexOf('/') + 1;
+    int dot = path.lastIndexOf('.');
+    if (dot < name)
+      return path + ".shard" + shard;
+    return path.substring(0, dot) + ".shard" + shard + path.substring(dot);
   }
 
   /***********************************************************************/
@@ -449,96 +567,231 @@ public class Configuration {
   }
 
   public static String getSpotlightJar() {
-    return getSpotlightFolder() + "/" + keyValue.get("pathDBSpotLocalJar");
+    return getSpotlightFolder() + "/" + get("pathDBSpotLocalJar");
   }
 
   public static String getSpotlightLocalERR(int port) {
-    return getSpotlightFolder() + "/" + keyValue.get("pathDBSpotErr") + "_" + port + ".txt";
+    return getSpotlightFolder() + "/" + get("pathDBSpotErr") + "_" + port + ".txt";
   }
 
   public static String getSpotlightLocalURL() {
-    return keyValue.get("pathDBSpotLocalUrl");
+    return get("pathDBSpotLocalUrl");
+  }
+
+  /**
+   * The URL of the i-th server of the pool. The pools that run at the same time (one for each
+   * language with parallelLanguages, or one for each worker of a sharded extraction) take
+   * consecutive ranges of spotlightServers ports from the one of pathDBSpotLocalUrl on, so that
+   * they never collide.
+   *
+   * @param server
+   * @return
+   */
+  public static String getSpotlightLocalURL(int server) {
+    URI url = URI.create(getSpotlightLocalURL());
+    int port = url.getPort() + getSpotlightPoolIndex() * getSpotlightServers() + server;
+    return url.getScheme() + "://" + url.getHost() + ":" + port + url.getPath();
+  }
+
+  /**
+   * Returns the shard of this worker, or else the position of the language in languages.
+   *
+   * @return
+   */
+  private static int getSpotlightPoolIndex() {
+    if (getShard() >= 0)
+      return getShard();
+    int index = Arrays.asList(get("languages").split(",")).indexOf(getLanguageCode());
+    return Math.max(index, 0);
+  }
+
+  public static String getSpotlightHeap() {
+    return get("spotlightHeap");
   }
 
   /***********************************************************************/
   /*********************** RESOURCES LIST ************************/
   /***********************************************************************/
   public static String getCurrenciesList() {
-    return getListsFolder() + "/" + keyValue.get("currencies");
+    return getListsFolder() + "/" + get("currencies");
   }
 
   public static String getNationalitiesList() {
-    return getListsFolder() + "/" + keyValue.get("nationalities");
+    return getListsFolder() + "/" + get("nationalities");
   }
 
   public static String getProfessionsList() {
-    return getListsFolder() + "/" + keyValue.get("professions");
+    return getListsFolder() + "/" + get("professions");
   }
 
   public static String getStopwordsList() {
-    return getListsFolder() + "/" + keyValue.get("stopwords");
+    return getListsFolder() + "/" + get("stopwords");
   }
 
   /***********************************************************************/
   /************************** PARAMETERS **************************/
   /***********************************************************************/
   public static int getNumArticlesToProcess() {
-    return Integer.parseInt(keyValue.get("totArticle"));
+    return Integer.parseInt(get("totArticle"));
   }
 
   public static int getChunkSize() {
-    return Integer.parseInt(keyValue.get("chunckSize"));
+    return Integer.parseInt(get("chunckSize"));
+  }
+
+  public static boolean useMultistreamReader() {
+    return get("multistreamReader").equalsIgnoreCase("true");
+  }
+
+  public static int getReaderThreads() {
+    return Integer.parseInt(get("readerThreads"));
+  }
+
+  public static int getPrefetchDepth() {
+    return Integer.parseInt(get("prefetchDepth"));
+  }
+
+  public static boolean triagePages() {
+    return get("triagePages").equalsIgnoreCase("true");
+  }
+
+  public static int getParserThreads() {
+    return Integer.parseInt(get("parserThreads"));
+  }
+
+  public static int getSeedThreads() {
+    return Integer.parseInt(get("seedThreads"));
+  }
+
+  public static int getDetectorThreads() {
+    return Integer.parseInt(get("detectorThreads"));
+  }
+
+  public static int getWriterThreads() {
+    return Integer.parseInt(get("writerThreads"));
+  }
+
+  public static int getTriplifierThreads() {
+    return Integer.parseInt(get("triplifierThreads"));
+  }
+
+  public static int getFanOutChars() {
+    return Integer.parseInt(get("fanOutChars"));
+  }
+
+  public static int getFanOutThreads() {
+    return Integer.parseInt(get("fanOutThreads"));
+  }
+
+  public static boolean longestFirst() {
+    return get("longestFirst").equalsIgnoreCase("true");
   }
 
+  public static int getStageQueueSize() {
+    return Integer.parseInt(get("stageQueueSize"));
+  }
+
+  public static int getParserBudget() {
+    return Integer.parseInt(get("parserBudget"));
+  }
+
+  public static int getDetectorBudget() {
+    return Integer.parseInt(get("detectorBudget"));
+  }
+
+  public static int getTriplifierBudget() {
+    return Integer.parseInt(get("triplifierBudget"));
+  }
+
+  public static int getMetricsInterval() {
+    return Integer.parseInt(get("metricsInterval"));
+  }
+
+  public static int getSlowestArticles() {
+    return Integer.parseInt(get("slowestArticles"));
+  }
+
+
+  public static String getTextCleaner() {
+    return get("textCleaner");
+  }
+
+  public static boolean languageSentences() {
+    return get("languageSentences").equalsIgnoreCase("true");
+  }
 
   public static boolean getOnlyTextWikilinks() {
-    return keyValue.get("onlyTextWikilinks").equalsIgnoreCase("true");
+    return get("onlyTextWikilinks").equalsIgnoreCase("true");
   }
 
   public static boolean extractTables() {
-    return keyValue.get("extractTables").equalsIgnoreCase("true");
+    return get("extractTables").equalsIgnoreCase("true");
   }
 
   public static boolean extractLists() {
-    return keyValue.get("extractLists").equalsIgnoreCase("true");
+    return get("extractLists").equalsIgnoreCase("true");
   }
 
   public static boolean solveRedirect() {
-    return keyValue.get("solveRedirect").equalsIgnoreCase("true");
+    return get("solveRedirect").equalsIgnoreCase("true");
   }
 
   public static boolean useDBpediaSpotlight() {
-    return keyValue.get("useSpotlight").equalsIgnoreCase("yes");
+    return get("useSpotlight").equalsIgnoreCase("yes");
+  }
+
+  public static int getSpotlightThreads() {
+    return Integer.parseInt(get("spotlightThreads"));
+  }
+
+  public static int getSpotlightBatchChars() {
+    return Integer.parseInt(get("spotlightBatchChars"));
+  }
+
+  public static int getSpotlightCacheSize() {
+    return Integer.parseInt(get("spotlightCacheSize"));
+  }
+
+  public static String getSpotlightServer() {
+    return get("spotlightServer");
+  }
+
+  public static int getSpotlightServers() {
+    return Integer.parseInt(get("spotlightServers"));
+  }
+
+  public static int getSpotlightHealthCheck() {
+    return Integer.parseInt(get("spotlightHealthCheck"));
   }
 
   public static double getPronounThreshold() {
-    return Double.parseDouble(keyValue.get("pronounDensityThreshold"));
+    return Double.parseDouble(get("pronounDensityThreshold"));
   }
 
   public static double getSubnameThreshold() {
-    return Double.parseDouble(keyValue.get("subnameDensityThreshold"));
+    return Double.parseDouble(get("subnameDensityThreshold"));
   }
 
   public static boolean inMemoryProcess() {
-    return keyValue.get("inMemory").equalsIgnoreCase("true");
+    return get("inMemory").equalsIgnoreCase("true");
   }
 
   /************************************/
 
   public static String getLectorModelName() {
-    return keyValue.get("lectorModel");
+    return get("lectorModel");
   }
 
   public static int getMinF() {
-    return Integer.parseInt(keyValue.get("minF"));
+    return Integer.parseInt(get("minF"));
   }
 
   public static int getPercUnl() {
-    return Integer.parseInt(keyValue.get("percUnl"));
+    return Integer.parseInt(get("percUnl"));
   }
 
   public static double getMajThr() {
-    return Double.parseDouble(keyValue.get("majorityThreshold"));
+    return Double.parseDouble(get("majorityThreshold"));
   }
 
   public static String getModelCode() {
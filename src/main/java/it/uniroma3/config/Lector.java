@@ -1,11 +1,10 @@
 package it.uniroma3.config;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import it.uniroma3.main.kg.DBPedia;
+import it.uniroma3.main.pipeline.FanOut;
 import it.uniroma3.main.pipeline.articleparser.ArticleTyper;
 import it.uniroma3.main.pipeline.articleparser.BlockParser;
 import it.uniroma3.main.pipeline.articleparser.MarkupParser;
@@ -15,52 +14,80 @@ import it.uniroma3.main.pipeline.articleparser.XMLParser;
 import it.uniroma3.main.pipeline.entitydetection.EntityReplacement;
 import it.uniroma3.main.pipeline.entitydetection.EntityFinder;
 import it.uniroma3.main.pipeline.entitydetection.dbsp.DBPediaSpotlight;
+import it.uniroma3.main.pipeline.entitydetection.dbsp.SpotlightClient;
+import it.uniroma3.main.pipeline.entitydetection.dbsp.SpotlightPool;
 import it.uniroma3.main.pipeline.entitydetection.fsm.FSMNationality;
 import it.uniroma3.main.pipeline.entitydetection.fsm.FSMSeed;
 import it.uniroma3.main.pipeline.triplesextractor.Triplifier;
+import it.uniroma3.main.pipeline.watchdog.BudgetExceededException;
+import it.uniroma3.main.util.nlp.NLPModels;
 import it.uniroma3.main.util.nlp.OpenNLP;
+import it.uniroma3.main.util.nlp.SentenceSplitter;
 import it.uniroma3.main.util.nlp.StanfordNLP;
 import it.uniroma3.model.db.DBModel;
 
 /**
  * This static class declares and initializes all the components needed in the system. Some
  * components are declared ThreadLocal, to ensure the existance of a copy for each thread. e using
- * DBPedia Spotlight, Lector class contains the refenrece to the external process.
+ * DBPedia Spotlight, Lector class contains the refenrece to the external processes.
+ * 
+ * The components belong to a context, one for each language that is running: the static methods
+ * use the context of the current thread, which is inherited by the threads it creates. In this
+ * way several languages can be extracted at the same time in the same process.
  * 
  * @author matteo
  *
  */
 public class Lector {
 
-  private static WikiLanguage wikiLang;
+  /* the context of the current thread (and its children) */
+  private static InheritableThreadLocal<Lector> context = new InheritableThreadLocal<Lector>();
+
+  private WikiLanguage wikiLang;
+  private SentenceSplitter sentenceSplitter;
+  /* threads that share the blocks of the longest articles, in ED and TE */
+  private FanOut fanOut;
 
   /* Needed in Article Parsing (AP) */
-  private static XMLParser xmlParser;
-  private static WikiParser wikiParser;
-  private static ArticleTyper articleTyper;
-  private static MarkupParser markupParser;
-  private static BlockParser blockParser;
-  private static TextParser textParser;
+  private XMLParser xmlParser;
+  private WikiParser wikiParser;
+  private ArticleTyper articleTyper;
+  private MarkupParser markupParser;
+  private BlockParser blockParser;
+  private TextParser textParser;
 
   /* Needed in Entity Detection (ED) */
-  private static ThreadLocal<StanfordNLP> stanfordExpert;
-  private static ThreadLocal<OpenNLP> openNLPExpert;
-  private static ThreadLocal<FSMSeed> fsm;
-  private static ThreadLocal<FSMNationality> fsm_nat;
-  private static EntityFinder entitiesFinder;
-  private static EntityReplacement entitiesTagger;
+  private NLPModels nlpModels;
+  private ThreadLocal<StanfordNLP> stanfordExpert;
+  private ThreadLocal<OpenNLP> openNLPExpert;
+  private ThreadLocal<FSMSeed> fsm;
+  private ThreadLocal<FSMNationality> fsm_nat;
+  private EntityFinder entitiesFinder;
+  private EntityReplacement entitiesTagger;
 
   /* ** DBpedia Spotlight ** */
-  private static ThreadLocal<DBPediaSpotlight> dbspot;
-  private static Process localServerSideProcess;
+  private DBPediaSpotlight dbspot;
+  private SpotlightPool spotlightPool;
 
   /* Needed in Triple Extraction (TE) */
-  private static DBPedia dbpedia;
-  private static Triplifier triplifier;
+  private DBPedia dbpedia;
+  private Triplifier triplifier;
 
   /* Keep the (open) connection here */
-  private static DBModel dbmodel;
+  private DBModel dbmodel;
 
+  /**
+   * Returns the context of the current thread, that must be initialized (or inherited) first.
+   * 
+   * @return
+   */
+  private static Lector current() {
+    Lector lector = context.get();
+    if (lector == null)
+      throw new IllegalStateException(
+          "Lector is not initialized in thread " + Thread.currentThread().getName());
+    return lector;
+  }
 
   /**
    * Here we initialize all the components of the tool. Lector is a global class that initializes
@@ -69,17 +96,33 @@ public class Lector {
    * @param config
    */
   public static void init(String pipeline) {
+    init(pipeline, false);
+  }
+
+  /**
+   * Initializes the components in a new context, bound to the current thread. When resuming, the
+   * model DB is kept as it is.
+   * 
+   * @param pipeline
+   * @param resume
+   */
+  public static void init(String pipeline, boolean resume) {
     System.out.println("\nInitializing");
     System.out.println("------------");
-    wikiLang =
+    Lector lector = new Lector();
+    context.set(lector);
+    lector.wikiLang =
         new WikiLanguage(Configuration.getLanguageCode(), Configuration.getLanguageProperties());
+    lector.sentenceSplitter =
+        new SentenceSplitter(lector.wikiLang, Configuration.languageSentences());
+    lector.fanOut = new FanOut(Configuration.getFanOutThreads(), Configuration.getFanOutChars());
     if (pipeline.contains("AP"))
       initAP();
     initDBpedia();
     if (pipeline.contains("ED"))
       initED();
     if (pipeline.contains("TE"))
-      initTE();
+      initTE(resume);
   }
 
   /**
@@ -87,12 +130,13 @@ public class Lector {
    */
   public static void initAP() {
     System.out.println("\t-> Init Article Parser (AP)");
-    wikiParser = new WikiParser();
-    markupParser = new MarkupParser();
-    articleTyper = new ArticleTyper();
-    xmlParser = new XMLParser();
-    blockParser = new BlockParser();
-    textParser = new TextParser();
+    Lector lector = current();
+    lector.wikiParser = new WikiParser();
+    lector.markupParser = new MarkupParser();
+    lector.articleTyper = new ArticleTyper();
+    lector.xmlParser = new XMLParser();
+    lector.blockParser = new BlockParser();
+    lector.textParser = new TextParser();
   }
 
   /**
@@ -100,32 +144,37 @@ public class Lector {
    */
   public static void initED() {
     System.out.println("\t-> Init Entity Detector (ED)");
+    Lector lector = current();
 
-    entitiesFinder = new EntityFinder();
-    entitiesTagger = new EntityReplacement();
+    lector.entitiesFinder = new EntityFinder();
+    lector.entitiesTagger = new EntityReplacement();
 
-    stanfordExpert = new ThreadLocal<StanfordNLP>() {
+    // the models are loaded once, each thread only creates its decoders on them
+    lector.nlpModels = new NLPModels(lector.wikiLang.getLang());
+    lector.nlpModels.printSize(Configuration.getDetectorThreads());
+
+    lector.stanfordExpert = new ThreadLocal<StanfordNLP>() {
       @Override
       protected StanfordNLP initialValue() {
-        return new StanfordNLP();
+        return new StanfordNLP(lector.nlpModels);
       }
     };
 
-    openNLPExpert = new ThreadLocal<OpenNLP>() {
+    lector.openNLPExpert = new ThreadLocal<OpenNLP>() {
       @Override
       protected OpenNLP initialValue() {
-        return new OpenNLP();
+        return new OpenNLP(lector.nlpModels);
       }
     };
 
-    fsm = new ThreadLocal<FSMSeed>() {
+    lector.fsm = new ThreadLocal<FSMSeed>() {
       @Override
       protected FSMSeed initialValue() {
-        return new FSMSeed(openNLPExpert.get());
+        return new FSMSeed(lector.openNLPExpert.get());
       }
     };
 
-    fsm_nat = new ThreadLocal<FSMNationality>() {
+    lector.fsm_nat = new ThreadLocal<FSMNationality>() {
       @Override
       protected FSMNationality initialValue() {
         return new FSMNationality();
@@ -134,30 +183,76 @@ public class Lector {
 
     if (Configuration.useDBpediaSpotlight()) {
 
-      try {
+      // one server for each port, from the one of pathDBSpotLocalUrl on
+      List<String> urls = new ArrayList<String>();
+      for (int i = 0; i < Configuration.getSpotlightServers(); i++)
+        urls.add(Configuration.getSpotlightLocalURL(i));
+      lector.spotlightPool = SpotlightPool.start(urls, Configuration.getSpotlightServer());
+      lector.spotlightPool.startHealthChecks(Configuration.getSpotlightHealthCheck());
+
+      // the calls to Spotlight run on the threads of the client, so they do not take the ones of
+      // ED, which only wait for them
+      lector.dbspot = new DBPediaSpotlight(new SpotlightClient(lector.spotlightPool, 0.5, 0,
+          Configuration.getSpotlightThreads(), Configuration.getSpotlightBatchChars(),
+          Configuration.getSpotlightCacheSize()));
+    }
+  }
 
-        localServerSideProcess = runSpotlight();
+  /**
+   * Creates the components of Entity Detection for the current thread. It is called when a thread
+   * of ED starts, so that the decoders are created once per thread and before its first article.
+   * StanfordNLP is not created here, since it is very heavy and used only on demand.
+   */
+  public static void bindEDComponents() {
+    Lector lector = current();
+    if (lector.fsm != null) {
+      lector.fsm.get();
+      lector.fsm_nat.get();
+    }
+  }
 
-      } catch (IOException e) {
-        System.out.println("Problems with running local DBPedia Spotlight process!");
-        e.printStackTrace();
-      }
+  /**
+   * Releases the components of Entity Detection of the current thread, when the thread ends.
+   */
+  public static void releaseEDComponents() {
+    Lector lector = current();
+    if (lector.fsm != null) {
+      lector.stanfordExpert.remove();
+      lector.openNLPExpert.remove();
+      lector.fsm.remove();
+      lector.fsm_nat.remove();
+    }
+  }
 
-      dbspot = new ThreadLocal<DBPediaSpotlight>() {
-        @Override
-        protected DBPediaSpotlight initialValue() {
-          return new DBPediaSpotlight(0.5, 0);
-        }
-      };
+  /**
+   * Annotates the block with DBPedia Spotlight on one of the threads reserved to it, waiting for
+   * the result.
+   * 
+   * @param block
+   * @param wikid
+   * @return
+   */
+  public static List<String> annotateWithSpotlight(String block, String wikid) {
+    try {
+      return current().dbspot.annotateText(block, wikid);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BudgetExceededException();
+    } catch (ExecutionException e) {
+      e.printStackTrace();
+      return getSentenceSplitter().splitInSentence(block);
     }
   }
 
   /**
    * Initializes Triple Extractor.
+   * 
+   * @param resume
    */
-  public static void initTE() {
+  public static void initTE(boolean resume) {
     System.out.println("\t-> Init Triple Extractor (TE) and model DB");
-    triplifier = new Triplifier();
+    getDbmodel(!resume).createCheckpointTables();
+    current().triplifier = new Triplifier();
   }
 
   /**
@@ -165,7 +260,7 @@ public class Lector {
    */
   public static void initDBpedia() {
     System.out.println("\t-> Init Knowledge Graph...");
-    dbpedia = new DBPedia();
+    current().dbpedia = new DBPedia();
   }
 
   /**
@@ -173,7 +268,7 @@ public class Lector {
    * @return
    */
   public static DBPediaSpotlight getDBSpot() {
-    return dbspot.get();
+    return current().dbspot;
   }
 
   /**
@@ -181,9 +276,34 @@ public class Lector {
    * @return
    */
   public static MarkupParser getMarkupParser() {
-    if (markupParser == null)
-      markupParser = new MarkupParser();
-    return markupParser;
+    Lector lector = current();
+    if (lector.markupParser == null)
+      lector.markupParser = new MarkupParser();
+    return lector.markupParser;
+  }
+
+  /**
+   * 
+   * @return the sentence splitter of the language
+   */
+  public static SentenceSplitter getSentenceSplitter() {
+    return current().sentenceSplitter;
+  }
+
+  /**
+   * 
+   * @return the threads that share the blocks of the longest articles
+   */
+  public static FanOut getFanOut() {
+    return current().fanOut;
+  }
+
+  /**
+   * 
+   * @return the NLP models, shared by all the threads
+   */
+  public static NLPModels getNLPModels() {
+    return current().nlpModels;
   }
 
   /**
@@ -191,7 +311,7 @@ public class Lector {
    * @return
    */
   public static StanfordNLP getNLPExpert() {
-    return stanfordExpert.get();
+    return current().stanfordExpert.get();
   }
 
   /**
@@ -199,50 +319,54 @@ public class Lector {
    * @return
    */
   public static ArticleTyper getArticleTyper() {
-    if (articleTyper == null)
-      articleTyper = new ArticleTyper();
-    return articleTyper;
+    Lector lector = current();
+    if (lector.articleTyper == null)
+      lector.articleTyper = new ArticleTyper();
+    return lector.articleTyper;
   }
 
   /**
    * @return the xmlParser
    */
   public static XMLParser getXmlParser() {
-    if (xmlParser == null)
-      xmlParser = new XMLParser();
-    return xmlParser;
+    Lector lector = current();
+    if (lector.xmlParser == null)
+      lector.xmlParser = new XMLParser();
+    return lector.xmlParser;
   }
 
   /**
    * @return the blockParser
    */
   public static BlockParser getBlockParser() {
-    if (blockParser == null)
-      blockParser = new BlockParser();
-    return blockParser;
+    Lector lector = current();
+    if (lector.blockParser == null)
+      lector.blockParser = new BlockParser();
+    return lector.blockParser;
   }
 
   /**
    * @return the textParser
    */
   public static TextParser getTextParser() {
-    if (textParser == null)
-      textParser = new TextParser();
-    return textParser;
+    Lector lector = current();
+    if (lector.textParser == null)
+      lector.textParser = new TextParser();
+    return lector.textParser;
   }
 
   /**
    * @return the triplifier
    */
   public static Triplifier getTriplifier() {
-    return triplifier;
+    return current().triplifier;
   }
 
   /**
    * @return the openNLPExpert
    */
   public static OpenNLP getOpenNLPExpert() {
-    return openNLPExpert.get();
+    return current().openNLPExpert.get();
   }
 
 
@@ -250,42 +374,42 @@ public class Lector {
    * @return the fsm
    */
   public static FSMSeed getFsm() {
-    return fsm.get();
+    return current().fsm.get();
   }
 
   /**
    * @return the fsm_nat
    */
   public static FSMNationality getFsmNat() {
-    return fsm_nat.get();
+    return current().fsm_nat.get();
   }
 
   /**
    * @return the kg
    */
   public static DBPedia getDBPedia() {
-    return dbpedia;
+    return current().dbpedia;
   }
 
   /**
    * @return the wikiParser
    */
   public static WikiParser getWikiParser() {
-    return wikiParser;
+    return current().wikiParser;
   }
 
   /**
    * @return the entitiesFinder
    */
   public static EntityFinder getEntitiesFinder() {
-    return entitiesFinder;
+    return current().entitiesFinder;
   }
 
   /**
    * @return the entitiesTagger
    */
   public static EntityReplacement getEntitiesTagger() {
-    return entitiesTagger;
+    return current().entitiesTagger;
   }
 
   /**
@@ -293,7 +417,7 @@ public class Lector {
    * @return
    */
   public static WikiLanguage getWikiLang() {
-    return wikiLang;
+    return current().wikiLang;
   }
 
   /**
@@ -302,88 +426,52 @@ public class Lector {
    * @return
    */
   public static DBModel getDbmodel(boolean create) {
-    if (dbmodel == null) {
-      dbmodel = new DBModel(Configuration.getDBModel());
+    Lector lector = current();
+    if (lector.dbmodel == null) {
+      lector.dbmodel = new DBModel(Configuration.getDBModel());
       if (create) {
-        dbmodel.createDB();
+        lector.dbmodel.createDB();
       }
     }
-    return dbmodel;
+    return lector.dbmodel;
   }
 
 
   /**
-   * Close all the connections that are open.
+   * Close all the connections that are open, and unbind the context from the current thread. It
+   * does nothing if there is no context, e.g. when it is already closed.
    */
   public static void close() {
-    if (dbmodel != null) {
-      dbmodel.closeConnection();
-      dbmodel = null;
+    Lector lector = context.get();
+    if (lector == null)
+      return;
+    if (lector.dbmodel != null) {
+      lector.dbmodel.closeConnection();
+      lector.dbmodel = null;
     }
-    // kill DBPedia SPotlight process, if exists
+    // kill DBPedia SPotlight process, if exists, after the requests in flight
     closeDBPediaSpotlight();
+    if (lector.dbspot != null) {
+      lector.dbspot.getClient().close();
+      lector.dbspot = null;
+    }
+    if (lector.fanOut != null) {
+      lector.fanOut.close();
+      lector.fanOut = null;
+    }
+    context.remove();
   }
 
   /**
-   * Pull down the (local) server where DBPedia SPotlight is running on.
+   * Pull down the (local) servers where DBPedia SPotlight is running on, once the requests in
+   * flight are done.
    */
   public static void closeDBPediaSpotlight() {
-    if (Configuration.useDBpediaSpotlight() && localServerSideProcess != null) {
-      localServerSideProcess.destroy();
-    }
-  }
-
-  /**
-   * Returns the process where DBPedia Spotlight is running on. TODO: improve fixed-time waiting for
-   * the creation.
-   * 
-   * @throws IOException
-   */
-  private static Process runSpotlight() throws IOException {
-    System.out.println("\t-> Loading DBPedia Spotlight on " + Configuration.getSpotlightLocalURL());
-    ProcessBuilder pb = new ProcessBuilder("java", "-Xmx16g", "-Dfile.encoding=utf-8", "-jar",
-        Configuration.getSpotlightJar(), Configuration.getSpotlightModel(),
-        Configuration.getSpotlightLocalURL());
-    pb.redirectError(new File(Configuration.getSpotlightLocalERR(2222)));
-
-    /*
-     * Start a new separate process but keep an hook shutdown process for its termination based on
-     * the parent process.
-     */
-    Process p = pb.start();
-    Runtime.getRuntime().addShutdownHook(new Thread() {
-      @Override
-      public void run() {
-        p.destroy();
-      }
-    });
-
-
-    try {
-      // wait untill the server started
-      BufferedReader logBR;
-      String last = "";
-      int maxChecks = 50;
-      while (!last.startsWith("Server started") && maxChecks > 0) {
-        p.waitFor(5, TimeUnit.SECONDS);
-        logBR = new BufferedReader(new FileReader(Configuration.getSpotlightLocalERR(2222)));
-        String line = null;
-        while ((line = logBR.readLine()) != null) {
-          last = line;
-        }
-        maxChecks -= 1;
-      }
-
-      File log = new File(Configuration.getSpotlightLocalERR(2222));
-      if (log.exists()) {
-        log.delete();
-      }
-
-
-    } catch (IOException | InterruptedException e) {
-      e.printStackTrace();
+    Lector lector = current();
+    if (lector.spotlightPool != null) {
+      lector.spotlightPool.close();
+      lector.spotlightPool = null;
     }
-    return p;
   }
 
 }
@@ -6,6 +6,7 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.Scanner;
 
@@ -190,6 +191,20 @@ public class WikiLanguage {
   }
 
 
+  /**
+   * @return the locale of the language, e.g. for the sentence rules
+   */
+  public Locale getLocale() {
+    return new Locale(lang.name());
+  }
+
+  /**
+   * @return the abbreviations after which a sentence does not end (e.g. Dr.), if any
+   */
+  public List<String> getAbbreviations() {
+    return getValues("abbreviations");
+  }
+
   /**
    * @return the lang
    */
@@ -1,9 +1,12 @@
 package it.uniroma3.main;
 
+import java.util.ArrayList;
+import java.util.List;
 import it.uniroma3.config.Configuration;
 import it.uniroma3.config.Lector;
 import it.uniroma3.config.WikiLanguage;
 import it.uniroma3.main.pipeline.Pipeline;
+import it.uniroma3.main.pipeline.ShardedExtraction;
 import it.uniroma3.model.evaluation.Evaluator;
 import it.uniroma3.model.evaluation.Extractor;
 import it.uniroma3.model.paper.Paper;
@@ -21,7 +24,7 @@ import it.uniroma3.model.paper.Paper;
 public class Main {
   
   public enum Task {
-    fullpipeline, evaluation, extraction, paper
+    fullpipeline, resume, incremental, shard, shardworker, evaluation, extraction, paper
   };
 
   /**
@@ -34,7 +37,23 @@ public class Main {
     Task t = Task.valueOf(Configuration.getTask());
     switch(t){
       case fullpipeline:
-        extractionPipeline();
+        extractionPipeline(t);
+        break;
+
+      case resume:
+        extractionPipeline(t);
+        break;
+
+      case incremental:
+        extractionPipeline(t);
+        break;
+
+      case shard:
+        shardedPipeline(args);
+        break;
+
+      case shardworker:
+        extractionPipeline(t);
         break;
         
       case extraction:
@@ -52,19 +71,82 @@ public class Main {
   }
   
   /**
+   * Runs the complete pipeline for each language. With resume, each language continues from the
+   * last checkpoint written in its model DB. With incremental, only the pages changed since the
+   * extraction in the model DB are extracted again. If parallelLanguages is set, the languages run
+   * at the same time, each one in its own thread and with its own context.
+   * 
+   * @param task
+   */
+  public static void extractionPipeline(Task task) {
+    if (!Configuration.runLanguagesInParallel()) {
+      for (String lang : Configuration.getLanguages()) {
+        Configuration.updateParameter("language", lang);
+        extractLanguage(task);
+      }
+      return;
+    }
+    List<Thread> threads = new ArrayList<Thread>();
+    for (String lang : Configuration.getLanguages()) {
+      Thread t = new Thread(() -> {
+        Configuration.updateThreadParameter("language", lang);
+        try {
+          extractLanguage(task);
+        } catch (Exception e) {
+          e.printStackTrace();
+        } finally {
+          Configuration.clearThreadParameters();
+        }
+      }, "lector-" + lang);
+      threads.add(t);
+      t.start();
+    }
+    for (Thread t : threads) {
+      try {
+        t.join();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Runs the complete pipeline for each language, splitting the dump between worker processes.
    * 
+   * @param args
    */
-  public static void extractionPipeline(){
+  public static void shardedPipeline(String[] args) {
     for (String lang : Configuration.getLanguages()) {
       Configuration.updateParameter("language", lang);
       System.out.println("\n===================================");
       System.out.println("Starting a new LectorPlus execution");
       System.out.println("===================================");
       Configuration.printFullyDetails();
-      WikiLanguage wikiLang =
-          new WikiLanguage(Configuration.getLanguageCode(), Configuration.getLanguageProperties());
-      Lector.init(Configuration.getPipelineSteps());
-      processComplete(wikiLang);
+      try {
+        new ShardedExtraction(args).run();
+      } finally {
+        Lector.close();
+      }
+    }
+  }
+
+  /**
+   * Runs the complete pipeline for the language of the current thread.
+   * 
+   * @param task
+   */
+  private static void extractLanguage(Task task) {
+    System.out.println("\n===================================");
+    System.out.println("Starting a new LectorPlus execution");
+    System.out.println("===================================");
+    Configuration.printFullyDetails();
+    WikiLanguage wikiLang =
+        new WikiLanguage(Configuration.getLanguageCode(), Configuration.getLanguageProperties());
+    // the model DB is kept when resuming or updating it
+    Lector.init(Configuration.getPipelineSteps(), task == Task.resume || task == Task.incremental);
+    try {
+      processComplete(wikiLang, task);
+    } finally {
       Lector.close();
     }
   }
@@ -74,15 +156,21 @@ public class Main {
    * (i.e. from the pipeline)
    * 
    * @param inputPath
+   * @param task
    */
-  private static void processComplete(WikiLanguage lang) {
-    Pipeline cp = new Pipeline(Configuration.getOriginalArticlesFile(),
-        Configuration.getParsedArticlesFile(), Configuration.getAugmentedArticlesFile());
-    
+  private static void processComplete(WikiLanguage lang, Task task) {
+    Pipeline cp =
+        new Pipeline(Configuration.getOriginalArticlesFile(), Configuration.getParsedArticlesFile(),
+            Configuration.getAugmentedArticlesFile(), task == Task.resume);
+    if (task == Task.incremental)
+      cp.incremental();
+
     cp.runPipeline(Configuration.getNumArticlesToProcess(), Configuration.getChunkSize(),
         Configuration.getPipelineSteps());
     
-    cp.extractNovelFacts();
+    // the facts of a shard are extracted after the merge of all the shards
+    if (Configuration.getShard() < 0)
+      Pipeline.extractNovelFacts();
   }
 
 }
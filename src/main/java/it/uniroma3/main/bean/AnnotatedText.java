@@ -0,0 +1,314 @@
+package it.uniroma3.main.bean;
+
+import java.io.IOException;
+import java.util.Arrays;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A text with its entities as standoff annotations: the clean text (the entities are only their
+ * rendered names) plus, for each entity, its span (start and end in the clean text), its method
+ * (e.g. PE-TITLE, SE-ORG) and its wikid. The spans are sorted and do not overlap.
+ *
+ * The inline format <<SE-ORG><wikid><name>> (see MarkupParser.WIKID_REGEX) is only parsed once,
+ * when the entity detection is done, and rendered again only for the output (json and provenance
+ * of the triples).
+ *
+ * @author matteo
+ *
+ */
+public class AnnotatedText {
+
+  private static final int[] NO_OFFSETS = new int[0];
+  private static final String[] NO_STRINGS = new String[0];
+
+  private final String text;
+  private final int[] starts;
+  private final int[] ends;
+  private final String[] methods;
+  private final String[] wikids;
+
+  /* position of the entities in the inline rendering, computed when needed */
+  private int[] renderedStarts;
+
+  /**
+   *
+   * @param text
+   * @param starts
+   * @param ends
+   * @param methods
+   * @param wikids
+   */
+  private AnnotatedText(String text, int[] starts, int[] ends, String[] methods,
+      String[] wikids) {
+    this.text = text;
+    this.starts = starts;
+    this.ends = ends;
+    this.methods = methods;
+    this.wikids = wikids;
+  }
+
+  /**
+   * Parses the entities of a text with inline annotations, with a single scan. It recognizes
+   * exactly what MarkupParser.WIKID_REGEX matches, everything else is kept as text.
+   *
+   * @param inline
+   * @return
+   */
+  public static AnnotatedText parse(String inline) {
+    StringBuilder text = new StringBuilder(inline.length());
+    int size = 0;
+    int[] starts = NO_OFFSETS;
+    int[] ends = NO_OFFSETS;
+    String[] methods = NO_STRINGS;
+    String[] wikids = NO_STRINGS;
+
+    int copied = 0;
+    int open = inline.indexOf("<<");
+    while (open >= 0) {
+      int[] entity = matchEntity(inline, open);
+      if (entity == null) {
+        open = inline.indexOf("<<", open + 1);
+        continue;
+      }
+      if (size == starts.length) {
+        int capacity = Math.max(4, size * 2);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        methods = Arrays.copyOf(methods, capacity);
+        wikids = Arrays.copyOf(wikids, capacity);
+      }
+      text.append(inline, copied, open);
+      methods[size] = inline.substring(open + 2, entity[0]);
+      wikids[size] = inline.substring(entity[0] + 2, entity[1]);
+      starts[size] = text.length();
+      text.append(inline, entity[1] + 2, entity[2]);
+      ends[size] = text.length();
+      size++;
+      copied = entity[2] + 2;
+      open = inline.indexOf("<<", copied);
+    }
+    text.append(inline, copied, inline.length());
+    return new AnnotatedText(text.toString(), Arrays.copyOf(starts, size),
+        Arrays.copyOf(ends, size), Arrays.copyOf(methods, size), Arrays.copyOf(wikids, size));
+  }
+
+  /**
+   * Matches <<METHOD><wikid><name>> at the given position, where METHOD is PE-... or SE-... and
+   * wikid and name do not contain '>'. Returns the positions of the '>' that close method, wikid
+   * and name, or null.
+   *
+   * @param inline
+   * @param open
+   * @return
+   */
+  private static int[] matchEntity(String inline, int open) {
+    int i = open + 2;
+    if (!inline.startsWith("PE-", i) && !inline.startsWith("SE-", i))
+      return null;
+    i += 3;
+    int methodStart = i;
+    while (i < inline.length() && (inline.charAt(i) == '-'
+        || (inline.charAt(i) >= 'A' && inline.charAt(i) <= 'Z')))
+      i++;
+    if (i == methodStart || !inline.startsWith("><", i))
+      return null;
+    int methodEnd = i;
+    int wikidEnd = inline.indexOf('>', methodEnd + 2);
+    if (wikidEnd < 0 || !inline.startsWith("><", wikidEnd))
+      return null;
+    int nameEnd = inline.indexOf('>', wikidEnd + 2);
+    if (nameEnd < 0 || !inline.startsWith(">>", nameEnd))
+      return null;
+    return new int[] {methodEnd, wikidEnd, nameEnd};
+  }
+
+  /**
+   * The text without the annotations.
+   *
+   * @return
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Number of entities.
+   *
+   * @return
+   */
+  public int size() {
+    return starts.length;
+  }
+
+  /**
+   *
+   * @param entity
+   * @return
+   */
+  public int getStart(int entity) {
+    return starts[entity];
+  }
+
+  /**
+   *
+   * @param entity
+   * @return
+   */
+  public int getEnd(int entity) {
+    return ends[entity];
+  }
+
+  /**
+   *
+   * @param entity
+   * @return
+   */
+  public String getMethod(int entity) {
+    return methods[entity];
+  }
+
+  /**
+   *
+   * @param entity
+   * @return
+   */
+  public String getWikid(int entity) {
+    return wikids[entity];
+  }
+
+  /**
+   *
+   * @param entity
+   * @return
+   */
+  public String getName(int entity) {
+    return text.substring(starts[entity], ends[entity]);
+  }
+
+  /**
+   * The inline annotation of the entity.
+   *
+   * @param entity
+   * @return
+   */
+  public String render(int entity) {
+    return "<<" + methods[entity] + "><" + wikids[entity] + "><" + getName(entity) + ">>";
+  }
+
+  /**
+   * Position of the entity in the inline rendering of the text (i.e. in toString()).
+   *
+   * @param entity
+   * @return
+   */
+  public int getRenderedStart(int entity) {
+    if (renderedStarts == null) {
+      int[] rendered = new int[starts.length];
+      int shift = 0;
+      for (int i = 0; i < starts.length; i++) {
+        rendered[i] = starts[i] + shift;
+        shift += 8 + methods[i].length() + wikids[i].length();
+      }
+      renderedStarts = rendered;
+    }
+    return renderedStarts[entity];
+  }
+
+  /**
+   * Position of the end of the entity in the inline rendering of the text.
+   *
+   * @param entity
+   * @return
+   */
+  public int getRenderedEnd(int entity) {
+    return getRenderedStart(entity) + 8 + methods[entity].length() + wikids[entity].length()
+        + ends[entity] - starts[entity];
+  }
+
+  /**
+   * The portion of text between the two positions, with the entities that are inside it.
+   *
+   * @param from
+   * @param to
+   * @return
+   */
+  public AnnotatedText subText(int from, int to) {
+    int first = 0;
+    while (first < starts.length && starts[first] < from)
+      first++;
+    int last = first;
+    while (last < starts.length && ends[last] <= to)
+      last++;
+    int[] subStarts = new int[last - first];
+    int[] subEnds = new int[last - first];
+    for (int i = first; i < last; i++) {
+      subStarts[i - first] = starts[i] - from;
+      subEnds[i - first] = ends[i] - from;
+    }
+    return new AnnotatedText(text.substring(from, to), subStarts, subEnds,
+        Arrays.copyOfRange(methods, first, last), Arrays.copyOfRange(wikids, first, last));
+  }
+
+  /**
+   * Removes the leading and trailing whitespaces (as String.trim() on the inline rendering).
+   *
+   * @return
+   */
+  public AnnotatedText trim() {
+    int from = 0;
+    int to = text.length();
+    int maxFrom = (starts.length == 0) ? to : starts[0];
+    int minTo = (ends.length == 0) ? 0 : ends[ends.length - 1];
+    while (from < maxFrom && text.charAt(from) <= ' ')
+      from++;
+    while (to > Math.max(from, minTo) && text.charAt(to - 1) <= ' ')
+      to--;
+    if (from == 0 && to == text.length())
+      return this;
+    return subText(from, to);
+  }
+
+  /**
+   * The text with the inline annotations.
+   */
+  @Override
+  public String toString() {
+    StringBuilder inline = new StringBuilder(text.length() + 32 * starts.length);
+    int copied = 0;
+    for (int i = 0; i < starts.length; i++) {
+      inline.append(text, copied, starts[i]);
+      inline.append("<<").append(methods[i]).append("><").append(wikids[i]).append("><");
+      inline.append(text, starts[i], ends[i]).append(">>");
+      copied = ends[i];
+    }
+    inline.append(text, copied, text.length());
+    return inline.toString();
+  }
+
+  /**
+   * Serializes the annotated texts in json with their inline rendering, as before.
+   */
+  public static class InlineAdapter extends TypeAdapter<AnnotatedText> {
+
+    @Override
+    public void write(JsonWriter out, AnnotatedText value) throws IOException {
+      if (value == null)
+        out.nullValue();
+      else
+        out.value(value.toString());
+    }
+
+    @Override
+    public AnnotatedText read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      return AnnotatedText.parse(in.nextString());
+    }
+  }
+
+}
@@ -28,6 +28,9 @@ public class WikiArticle {
   private String id;
   private String namespace;
   private String title;
+  // revision of the page in the dump (not serialized), used by the incremental extraction
+  private transient String revision;
+  private transient String sha1;
   private String url;
   private ArticleType type;
   private transient String originalMarkup;
@@ -44,7 +47,7 @@ public class WikiArticle {
 
   // content
   private Map<String, String> blocks;
-  private Map<String, List<String>> sentences; // used only for DBpedia Spotlight
+  private Map<String, List<AnnotatedText>> sentences; // entities as standoff annotations
   private String nationality;
   private String firstSentence;
 
@@ -55,10 +58,13 @@ public class WikiArticle {
   // DBpedia types
   private List<String> dbpedia_types;
 
-  private static transient Gson gson_pp =
-      new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
+  // the annotated sentences are written with their inline annotations
+  private static transient Gson gson_pp = new GsonBuilder().disableHtmlEscaping()
+      .registerTypeAdapter(AnnotatedText.class, new AnnotatedText.InlineAdapter())
+      .setPrettyPrinting().create();
 
-  private static transient Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+  private static transient Gson gson = new GsonBuilder().disableHtmlEscaping()
+      .registerTypeAdapter(AnnotatedText.class, new AnnotatedText.InlineAdapter()).create();
 
   /**
    * 
@@ -116,9 +122,9 @@ public class WikiArticle {
   /**
    * @return the content
    */
-  public Map<String, List<String>> getSentences() {
+  public Map<String, List<AnnotatedText>> getSentences() {
     if (this.sentences == null)
-      this.sentences = new LinkedHashMap<String, List<String>>();
+      this.sentences = new LinkedHashMap<String, List<AnnotatedText>>();
     return sentences;
   }
 
@@ -137,7 +143,7 @@ public class WikiArticle {
   /**
    * @param content the content to set
    */
-  public void setSentences(Map<String, List<String>> sentences) {
+  public void setSentences(Map<String, List<AnnotatedText>> sentences) {
     this.sentences = sentences;
   }
 
@@ -238,6 +244,34 @@ public class WikiArticle {
     this.namespace = namespace;
   }
 
+  /**
+   * @return the revision
+   */
+  public String getRevision() {
+    return revision;
+  }
+
+  /**
+   * @param revision the revision to set
+   */
+  public void setRevision(String revision) {
+    this.revision = revision;
+  }
+
+  /**
+   * @return the sha1 of the revision
+   */
+  public String getSha1() {
+    return sha1;
+  }
+
+  /**
+   * @param sha1 the sha1 to set
+   */
+  public void setSha1(String sha1) {
+    this.sha1 = sha1;
+  }
+
 
   /**
    * @return the disambiguation
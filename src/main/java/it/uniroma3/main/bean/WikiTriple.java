@@ -4,7 +4,6 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import it.uniroma3.config.Lector;
-import it.uniroma3.main.pipeline.articleparser.MarkupParser;
 
 /**
  * 
@@ -143,13 +142,9 @@ public class WikiTriple {
    * @return
    */
   private boolean isWikiEntity(String entity) {
-    boolean isJoinable = false;
-    Pattern joinableEntity = Pattern.compile("^" + MarkupParser.WIKID_REGEX + "$");
-    Matcher m = joinableEntity.matcher(entity);
-    if (m.matches()) {
-      isJoinable = true;
-    }
-    return isJoinable;
+    AnnotatedText annotated = AnnotatedText.parse(entity);
+    return annotated.size() == 1 && annotated.getRenderedStart(0) == 0
+        && annotated.getRenderedEnd(0) == entity.length();
   }
 
   /**
@@ -200,13 +195,8 @@ public class WikiTriple {
    * @return
    */
   private String getWikipediaName(String entity) {
-    String dbpediaEntity = null;
-    Pattern ENTITY = Pattern.compile(MarkupParser.WIKID_REGEX);
-    Matcher m = ENTITY.matcher(entity);
-    if (m.find()) {
-      dbpediaEntity = m.group(2);
-    }
-    return dbpediaEntity;
+    AnnotatedText annotated = AnnotatedText.parse(entity);
+    return (annotated.size() == 0) ? null : annotated.getWikid(0);
   }
 
   /**
@@ -21,7 +21,7 @@ import it.uniroma3.main.util.Ranking;
  */
 public class RelationsResolver {
 
-  private static KeyValueIndex indexKG;
+  private KeyValueIndex indexKG;
   private CleanDBPediaRelations cleaner;
 
   /**
@@ -124,7 +124,7 @@ public class RelationsResolver {
   /**
    * @return the indexKG
    */
-  public static KeyValueIndex getIndexKG() {
+  public KeyValueIndex getIndexKG() {
     return indexKG;
   }
 
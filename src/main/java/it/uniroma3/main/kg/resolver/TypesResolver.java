@@ -6,8 +6,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import it.uniroma3.config.Configuration;
@@ -30,17 +32,23 @@ public class TypesResolver {
    * find a type in the right language dictionary. TODO: we should add the inter-languages mapping
    * here (...)
    */
-  private static KeyValueIndex indexOriginal_ref;
-  private static KeyValueIndex indexAirpedia_ref;
+  private KeyValueIndex indexOriginal_ref;
+  private KeyValueIndex indexAirpedia_ref;
 
-  private static KeyValueIndex indexOriginal;
-  private static KeyValueIndex indexAirpedia;
+  private KeyValueIndex indexOriginal;
+  private KeyValueIndex indexAirpedia;
 
-  private static KeyValueIndex indexSDTyped;
-  private static KeyValueIndex indexLHD;
-  private static KeyValueIndex indexDBTax;
+  private KeyValueIndex indexSDTyped;
+  private KeyValueIndex indexLHD;
+  private KeyValueIndex indexDBTax;
 
-  private static Ontology ontology;
+  private Ontology ontology;
+
+  /*
+   * the english indexes are opened once and shared (read-only) by all the languages that are
+   * running in the process, by path.
+   */
+  private static Map<String, KeyValueIndex> sharedIndexes = new HashMap<String, KeyValueIndex>();
 
   /**
    * 
@@ -55,9 +63,9 @@ public class TypesResolver {
      */
     switch (language) {
       case en:
-        indexOriginal = getIndexOrCreate(Configuration.getTypesIndex(),
+        indexOriginal = getSharedIndex(Configuration.getTypesIndex(),
             Configuration.getSourceMainInstanceTypes());
-        indexAirpedia = getIndexOrCreate(Configuration.getAirpediaIndex(),
+        indexAirpedia = getSharedIndex(Configuration.getAirpediaIndex(),
             Configuration.getSourceAirpediaTypes());
         indexSDTyped = getIndexOrCreate(Configuration.getSDTypesIndex(),
             Configuration.getSourceSDTypedInstanceTypes());
@@ -78,8 +86,8 @@ public class TypesResolver {
             Configuration.getSourceSDTypedInstanceTypes());
         indexLHD = getIndexOrCreate(Configuration.getLHDTypesIndex(),
             Configuration.getSourceLHDInstanceTypes());
-        indexOriginal_ref = getIndex(Configuration.getTypesIndex_Ref());
-        indexAirpedia_ref = getIndex(Configuration.getAirpediaIndex_Ref());
+        indexOriginal_ref = getSharedIndex(Configuration.getTypesIndex_Ref(), null);
+        indexAirpedia_ref = getSharedIndex(Configuration.getAirpediaIndex_Ref(), null);
         break;
 
       default:
@@ -87,23 +95,34 @@ public class TypesResolver {
             Configuration.getSourceMainInstanceTypes());
         indexAirpedia = getIndexOrCreate(Configuration.getAirpediaIndex(),
             Configuration.getSourceAirpediaTypes());
-        indexOriginal_ref = getIndex(Configuration.getTypesIndex_Ref());
-        indexAirpedia_ref = getIndex(Configuration.getAirpediaIndex_Ref());
+        indexOriginal_ref = getSharedIndex(Configuration.getTypesIndex_Ref(), null);
+        indexAirpedia_ref = getSharedIndex(Configuration.getAirpediaIndex_Ref(), null);
         break;
     }
   }
 
   /**
-   * Returns a KeyValueIndex given the path. If the exists does not exist returns null.
+   * Returns the shared KeyValueIndex given the path. If it does not exist it is created from the
+   * source, or null is returned if there is no source.
    * 
    * @param indexPath
+   * @param sourcePath
    * @return
    */
-  private KeyValueIndex getIndex(String indexPath) {
-    KeyValueIndex index = null;
-    if (new File(indexPath).exists())
-      index = new KeyValueIndex(indexPath);
-    return index;
+  private KeyValueIndex getSharedIndex(String indexPath, String sourcePath) {
+    String key = new File(indexPath).getAbsolutePath();
+    synchronized (sharedIndexes) {
+      KeyValueIndex index = sharedIndexes.get(key);
+      if (index == null) {
+        if (sourcePath != null)
+          index = getIndexOrCreate(indexPath, sourcePath);
+        else if (new File(indexPath).exists())
+          index = new KeyValueIndex(indexPath);
+        if (index != null)
+          sharedIndexes.put(key, index);
+      }
+      return index;
+    }
   }
 
   /**
@@ -292,7 +311,7 @@ public class TypesResolver {
     try {
       BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
           new FileOutputStream("/Users/matteo/Desktop/dbpedia_ontology.tsv"), "UTF-8"));
-      indexOriginal.matchAllPairs().stream().forEach(s -> {
+      t.getIndexOriginal().matchAllPairs().stream().forEach(s -> {
         try {
           String result = java.net.URLDecoder.decode(s, "UTF-8");
           bw.write(result + "\n");
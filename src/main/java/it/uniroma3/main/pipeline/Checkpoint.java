@@ -0,0 +1,116 @@
+package it.uniroma3.main.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import it.uniroma3.main.bean.WikiArticle;
+
+/**
+ * Keeps track of the pages of the dump that have been completely processed, i.e. their triples
+ * are in the DB. Since the pages complete out of order, we keep the number of pages that are all
+ * done from the beginning of the dump (pages) and the (few) pages done after them.
+ *
+ * The pages completed after the last checkpoint are kept with their article type and revision, so
+ * that the statistics and the revisions can be stored in the DB together with the triples.
+ *
+ * @author matteo
+ *
+ */
+public class Checkpoint {
+
+  private int pages;
+  private TreeSet<Integer> done;
+  private List<String[]> articles;
+
+  /**
+   * A checkpoint at the beginning of the dump.
+   */
+  public Checkpoint() {
+    this(0, "");
+  }
+
+  /**
+   *
+   * @param pages
+   * @param done comma separated list of the pages done after pages
+   */
+  public Checkpoint(int pages, String done) {
+    this.pages = pages;
+    this.done = new TreeSet<Integer>();
+    this.articles = new ArrayList<String[]>();
+    for (String page : done.split(",")) {
+      if (!page.isEmpty())
+        this.done.add(Integer.parseInt(page));
+    }
+  }
+
+  /**
+   *
+   * @param page
+   * @return
+   */
+  public synchronized boolean isDone(int page) {
+    return page < pages || done.contains(page);
+  }
+
+  /**
+   * Marks the page as done. The article is null if the page could not be parsed.
+   *
+   * @param page
+   * @param article
+   */
+  public synchronized void complete(int page, WikiArticle article) {
+    if (article != null)
+      articles.add(new String[] {String.valueOf(page), article.getType().name(),
+          article.getWikid(), article.getNamespace(), article.getRevision(), article.getSha1()});
+    done.add(page);
+    while (done.remove(pages))
+      pages++;
+  }
+
+  /**
+   * Returns the current state and starts a new block of completed articles.
+   *
+   * @return
+   */
+  public synchronized Checkpoint take() {
+    Checkpoint current = new Checkpoint(pages, getDone());
+    current.articles = this.articles;
+    this.articles = new ArrayList<String[]>();
+    return current;
+  }
+
+  /**
+   * Number of pages that are all done from the beginning of the dump.
+   *
+   * @return
+   */
+  public synchronized int getPages() {
+    return pages;
+  }
+
+  /**
+   * Pages done after getPages(), comma separated.
+   *
+   * @return
+   */
+  public synchronized String getDone() {
+    StringBuilder sb = new StringBuilder();
+    for (int page : done) {
+      if (sb.length() > 0)
+        sb.append(",");
+      sb.append(page);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Articles completed in this block: page, type, wikid, namespace, revision and sha1.
+   *
+   * @return
+   */
+  public synchronized List<String[]> getArticles() {
+    return articles;
+  }
+
+}
@@ -0,0 +1,119 @@
+package it.uniroma3.main.pipeline;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import it.uniroma3.main.pipeline.watchdog.BudgetExceededException;
+import it.uniroma3.main.util.NamedThreadFactory;
+
+/**
+ * Splits the work of a very long article (its blocks, or its sections) among a shared pool of
+ * threads, so that a single long article does not keep a thread of the stage busy while the others
+ * wait for it at the end of the chunk. The thread of the stage does not wait idle: it runs the
+ * parts that the pool did not take yet, from the longest one.
+ *
+ * The results are given back in the order of the parts, so the article is the same as when it is
+ * processed by a single thread. If the thread of the stage is interrupted (i.e. the article is
+ * over budget) the parts still running are interrupted too.
+ *
+ * @author matteo
+ *
+ */
+public class FanOut {
+
+  private int minChars;
+  private ExecutorService executor;
+  private LongAdder splits;
+  private LongAdder parts;
+
+  /**
+   *
+   * @param threads
+   * @param minChars the length of the articles that are split, 0 to never split them
+   */
+  public FanOut(int threads, int minChars) {
+    this.minChars = minChars;
+    this.splits = new LongAdder();
+    this.parts = new LongAdder();
+    // the threads are created on the first use, and get the context of the thread of the stage
+    if (minChars > 0 && threads > 0)
+      this.executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("fan-out"));
+  }
+
+  /**
+   * Returns true if an article of the given length is split among the threads.
+   *
+   * @param chars
+   * @return
+   */
+  public boolean isLarge(int chars) {
+    return executor != null && chars >= minChars;
+  }
+
+  /**
+   * Applies the task to all the parts in parallel, and returns the results in the order of the
+   * parts. The parts are started from the longest one.
+   *
+   * @param items
+   * @param size
+   * @param task
+   * @return
+   */
+  public <T, R> List<R> map(List<T> items, ToIntFunction<T> size, Function<T, R> task) {
+    List<FutureTask<R>> futures = new ArrayList<FutureTask<R>>(items.size());
+    for (T item : items)
+      futures.add(new FutureTask<R>(() -> task.apply(item)));
+    List<Integer> order = new ArrayList<Integer>(items.size());
+    for (int i = 0; i < items.size(); i++)
+      order.add(i);
+    order.sort(Comparator.comparingInt((Integer i) -> size.applyAsInt(items.get(i))).reversed());
+    splits.increment();
+    parts.add(items.size());
+
+    try {
+      for (int i : order)
+        executor.execute(futures.get(i));
+      // the parts not taken by the pool yet run here (a part already started is skipped)
+      for (int i : order)
+        futures.get(i).run();
+      List<R> results = new ArrayList<R>(items.size());
+      for (FutureTask<R> future : futures)
+        results.add(future.get());
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BudgetExceededException();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new RuntimeException(e.getCause());
+    } finally {
+      for (FutureTask<R> future : futures)
+        future.cancel(true);
+    }
+  }
+
+  /**
+   * Stops the threads.
+   */
+  public void close() {
+    if (executor != null)
+      executor.shutdownNow();
+  }
+
+  /**
+   * Prints how many times the articles were split (once in ED and once in TE), and in how many
+   * parts.
+   */
+  public void printStats() {
+    System.out.printf("\t%-30s %d splits, %d parts\n", "Fanned out:", splits.sum(), parts.sum());
+  }
+
+}
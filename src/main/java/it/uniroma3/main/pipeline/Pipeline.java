@@ -1,20 +1,40 @@
 package it.uniroma3.main.pipeline;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import com.google.gson.stream.JsonReader;
 import it.uniroma3.config.Configuration;
 import it.uniroma3.config.Lector;
+import it.uniroma3.config.WikiLanguage.Lang;
 import it.uniroma3.main.bean.WikiArticle;
 import it.uniroma3.main.bean.WikiArticle.ArticleType;
+import it.uniroma3.main.pipeline.articleparser.PageTriage;
 import it.uniroma3.main.pipeline.articleparser.Statistics;
 import it.uniroma3.main.pipeline.factsextractor.FactsExtractor;
-import it.uniroma3.main.util.inout.XMLReader;
+import it.uniroma3.main.pipeline.metrics.PipelineMetrics;
+import it.uniroma3.main.pipeline.metrics.PipelineMetrics.Step;
+import it.uniroma3.main.pipeline.metrics.Stragglers;
+import it.uniroma3.main.pipeline.triplesextractor.ArticleTriples;
+import it.uniroma3.main.pipeline.watchdog.Watchdog;
+import it.uniroma3.main.util.Pair;
+import it.uniroma3.main.util.inout.DumpReader;
 import it.uniroma3.model.model.Model;
 import it.uniroma3.model.model.Model.ModelType;
 
@@ -26,8 +46,21 @@ import it.uniroma3.model.model.Model.ModelType;
 public class Pipeline {
 
   private Statistics stats;
-  private XMLReader dumpFileReader;
+  private DumpReader dumpFileReader;
   private PrintStream augmentedDumpWriter;
+  /* wikids of the articles in the checkpoint, only when resuming */
+  private Set<String> done;
+  private Checkpoint checkpoint;
+  private ReadWriteLock blockLock;
+  private PipelineMetrics metrics;
+  private Stragglers stragglers;
+  private Watchdog watchdog;
+  private PageTriage triage;
+  private int triaged;
+
+  /* sha1 of the articles already in the DB, only in the incremental extraction */
+  private Map<String, String> revisions;
+  private int unchanged;
 
 
   /**
@@ -35,24 +68,142 @@ public class Pipeline {
    * @param configFile
    */
   public Pipeline(String dumpFile, String parsedDump, String augmentedDump) {
+    this(dumpFile, parsedDump, augmentedDump, false);
+  }
+
+  /**
+   * When resuming, the pipeline restarts from the last checkpoint in the model DB: the pages
+   * already done are skipped and the augmented dump is appended.
+   * 
+   * @param dumpFile
+   * @param parsedDump
+   * @param augmentedDump
+   * @param resume
+   */
+  public Pipeline(String dumpFile, String parsedDump, String augmentedDump, boolean resume) {
     System.out.println("\nComplete Pipeline (it takes many hours on whole dump)");
     System.out.println("-----------------------------------------------------");
     this.stats = new Statistics();
-    this.dumpFileReader = new XMLReader(dumpFile);
+    this.dumpFileReader = DumpReader.getDumpReader(dumpFile);
+    this.blockLock = new ReentrantReadWriteLock();
+    this.metrics =
+        new PipelineMetrics(Configuration.getLanguageCode(), Configuration.getSlowestArticles());
+    this.stragglers = new Stragglers();
+    this.watchdog = new Watchdog(Configuration.getQuarantineArticlesFile());
+    this.checkpoint = new Checkpoint();
+    if (Configuration.triagePages())
+      this.triage = new PageTriage();
+    if (resume) {
+      Checkpoint last = Lector.getDbmodel(false).readCheckpoint();
+      if (last == null) {
+        System.out.println("\tNo checkpoint found, starting from the beginning.");
+        Lector.getDbmodel(false).createDB();
+        resume = false;
+      } else {
+        this.checkpoint = last;
+        done = new HashSet<String>();
+        for (String[] article : Lector.getDbmodel(false).readArticleStats()) {
+          stats.addArticleToStats(ArticleType.valueOf(article[0]), article[1], article[2]);
+          done.add(article[1]);
+        }
+        System.out.println("\tResuming after page " + last.getPages() + ".");
+      }
+    }
 
     if (augmentedDump != null) {
       try {
         File outputAugmented = new File(augmentedDump);
         outputAugmented.getParentFile().mkdirs();
+        if (resume && outputAugmented.exists())
+          keepDone(outputAugmented, done);
         this.augmentedDumpWriter = new PrintStream(
-            new FileOutputStream(outputAugmented.getAbsolutePath()), false, "UTF-8");
-      } catch (UnsupportedEncodingException | FileNotFoundException e) {
-        e.printStackTrace();
+            new FileOutputStream(outputAugmented.getAbsolutePath(), resume), false, "UTF-8");
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot write the augmented dump " + augmentedDump, e);
       }
     }
   }
 
   /**
+   * Keeps in the augmented dump only the articles of the checkpoint. The articles written after
+   * the last block are processed again when resuming, and would be written twice. The lines that
+   * can not be parsed (e.g. the last one, cut by a crash) are dropped too.
+   * 
+   * @param augmented
+   * @param done wikids of the articles in the checkpoint
+   * @throws IOException
+   */
+  private static void keepDone(File augmented, Set<String> done) throws IOException {
+    File tmp = new File(augmented.getPath() + ".tmp");
+    int dropped = 0;
+    int malformed = 0;
+    try (BufferedReader in = Files.newBufferedReader(augmented.toPath(), StandardCharsets.UTF_8);
+        PrintStream out = new PrintStream(new FileOutputStream(tmp), false, "UTF-8")) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String wikid = getWikid(line);
+        if (wikid == null)
+          malformed++;
+        else if (done.contains(wikid))
+          out.println(line);
+        else
+          dropped++;
+      }
+    }
+    Files.move(tmp.toPath(), augmented.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    System.out.println("\tArticles of the augmented dump after the checkpoint: " + dropped);
+    if (malformed > 0)
+      System.out.println("\tMalformed lines of the augmented dump dropped: " + malformed);
+  }
+
+  /**
+   * Returns the wikid of the article of a line of the augmented dump, or null if the line can not
+   * be parsed. The wikid is the first field, there is no need to parse the whole article.
+   * 
+   * @param line
+   * @return
+   */
+  private static String getWikid(String line) {
+    try (JsonReader json = new JsonReader(new StringReader(line))) {
+      json.beginObject();
+      json.nextName();
+      return json.nextString();
+    } catch (IOException | IllegalStateException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Extracts only the pages that changed since the extraction already in the model DB (i.e. a
+   * different sha1 of the revision) or that are new. Their rows in the DB are replaced, and the
+   * pages that are not in the dump anymore are deleted.
+   */
+  public void incremental() {
+    this.revisions = Lector.getDbmodel(false).readRevisions();
+    Lector.getDbmodel(false).createWikidIndexes();
+    System.out.println("\tIncremental extraction over " + revisions.size() + " articles.");
+  }
+
+  /**
+   * Returns true if the page did not change since the last extraction. The page is removed from
+   * the revisions, so that at the end of the dump we are left with the deleted ones.
+   * 
+   * @param page
+   * @return
+   */
+  private boolean isUnchanged(String page) {
+    if (revisions == null)
+      return false;
+    String previous = revisions.remove(Lector.getXmlParser().extractsWikid(page));
+    if (previous == null || previous.isEmpty())
+      return false;
+    return previous.equals(Lector.getXmlParser().extractsSha1(page));
+  }
+
+  /**
+   * Runs the pipeline as a chain of stages (AP -> ED -> WR -> TE), each one with its own threads.
+   * The articles flow from a stage to the next one through bounded queues, and the triples are
+   * written in the DB every chunckSize triplified articles.
    * 
    * @param totArticle
    * @param chunckSize
@@ -60,60 +211,186 @@ public class Pipeline {
    */
   public void runPipeline(int totArticle, int chunckSize, String pipelineSteps) {
     List<String> lines;
+    boolean exhausted = false;
     int cont = 0;
-    int contChunk = 0;
+    int page = 0;
     // change it, if we need to process the whole dump
     if (totArticle == -1)
       totArticle = Integer.MAX_VALUE;
 
     long total_start_time = System.currentTimeMillis();
+    int queueSize = Configuration.getStageQueueSize();
+    AtomicInteger triplified = new AtomicInteger(0);
+    metrics.startExport(Configuration.getMetricsFolder(), Configuration.getMetricsInterval());
+    int parserBudget = Configuration.getParserBudget();
+    int detectorBudget = Configuration.getDetectorBudget();
+    int triplifierBudget = Configuration.getTriplifierBudget();
+    boolean longestFirst = Configuration.longestFirst();
 
-    while (!(lines = dumpFileReader.nextChunk(chunckSize)).isEmpty() && cont < totArticle) {
-      contChunk += 1;
-      System.out.print("\t" + contChunk + ") Running next: " + lines.size() + " articles.");
-      cont += lines.size();
-
-      // article parser
-      long start_pars_time = System.currentTimeMillis();
-      List<WikiArticle> chunk =
-          lines.parallelStream()
-          .map(s -> Lector.getWikiParser().createArticleFromXml(s))
-          .map(s -> stats.addArticleToStats(s)).filter(s -> s.getType() == ArticleType.ARTICLE)
-          .collect(Collectors.toList());
-      long end_pars_time = System.currentTimeMillis();
-      long pars_time = TimeUnit.MILLISECONDS.toSeconds(end_pars_time - start_pars_time);
-      System.out.print("\tParsed in: " + pars_time + " sec.");
-
-      // detect entities in articles
-      long start_aug_time = System.currentTimeMillis();
-      chunk.parallelStream()
-      .map(s -> Lector.getEntitiesFinder().increaseEvidence(s))
-      .map(s -> Lector.getEntitiesTagger().augmentEvidence(s)).collect(Collectors.toList());
-      long end_aug_time = System.currentTimeMillis();
-      long aug_time = TimeUnit.MILLISECONDS.toSeconds(end_aug_time - start_aug_time);
-      System.out.print("\tAugmented in: " + aug_time + " sec.");
-
-      // write articles with entities
-      if (!Configuration.inMemoryProcess()) {
-        long start_aug_wrt_time = System.currentTimeMillis();
-        chunk.parallelStream().forEach(s -> augmentedDumpWriter.println(s.toJson()));
-        long end_aug_wrt_time = System.currentTimeMillis();
-        long aug_wrt_time = TimeUnit.MILLISECONDS.toSeconds(end_aug_wrt_time - start_aug_wrt_time);
-        System.out.print("\tStored in: " + aug_wrt_time + " sec.");
-      }
+    // article parser
+    Stage<Pair<Integer, String>, Pair<Integer, WikiArticle>> parser =
+        new Stage<Pair<Integer, String>, Pair<Integer, WikiArticle>>("AP",
+            Configuration.getParserThreads(), queueSize, s -> {
+              String wikid = Lector.getXmlParser().extractsWikid(s.value);
+              WikiArticle article = watchdog.run("AP", wikid, s.key, parserBudget, () -> {
+                long start = System.nanoTime();
+                WikiArticle parsed = Lector.getWikiParser().createArticleFromXml(s.value);
+                metrics.record(Step.PARSE, wikid, start);
+                return parsed;
+              });
+              if (article == null) {
+                complete(s.key, null);
+                return null;
+              }
+              stats.addArticleToStats(article);
+              if (article.getType() == ArticleType.ARTICLE)
+                return Pair.make(s.key, article);
+              complete(s.key, article);
+              return null;
+            });
+    parser.onFailure(s -> complete(s.key, null));
+
+    // find the seeds of the articles, tagging their first sentences in batches (only in english):
+    // the articles of a batch that fails go to ED anyway, which finds the seeds left one by one
+    Stage<?, Pair<Integer, WikiArticle>> parsed = parser;
+    if (Lector.getWikiLang().getLang().equals(Lang.en)) {
+      Stage<Pair<Integer, WikiArticle>, Pair<Integer, WikiArticle>> seeder =
+          parser.thenBatched("SD", Configuration.getSeedThreads(), queueSize, chunckSize, s -> {
+            List<WikiArticle> articles = new ArrayList<WikiArticle>(s.size());
+            for (Pair<Integer, WikiArticle> article : s)
+              articles.add(article.value);
+            Lector.getEntitiesFinder().findSeeds(articles);
+          });
+      seeder.withThreadHooks(Lector::bindEDComponents, Lector::releaseEDComponents);
+      parsed = seeder;
+    }
 
-      // extract triples from articles and write to db
-      long start_tripl_time = System.currentTimeMillis();
-      chunk.parallelStream().forEach(s -> Lector.getTriplifier().extractTriples(s));
-      Lector.getTriplifier().updateBlock(); // write to db
-      long end_tripl_time = System.currentTimeMillis();
-      long tripl_time = TimeUnit.MILLISECONDS.toSeconds(end_tripl_time - start_tripl_time);
-      System.out.print("\tTriplified in: " + tripl_time + " sec.\t");
+    // detect entities in articles
+    Stage<Pair<Integer, WikiArticle>, Pair<Integer, WikiArticle>> last =
+        parsed.then("ED", Configuration.getDetectorThreads(), queueSize, s -> {
+          String wikid = s.value.getWikid();
+          WikiArticle article = watchdog.run("ED", wikid, s.key, detectorBudget, () -> {
+            long start = System.nanoTime();
+            Lector.getEntitiesFinder().increaseEvidence(s.value);
+            metrics.record(Step.ENTITY_FINDING, wikid, start);
+            start = System.nanoTime();
+            Lector.getEntitiesTagger().augmentEvidence(s.value);
+            metrics.record(Step.ENTITY_REPLACEMENT, wikid, start);
+            return s.value;
+          });
+          if (article == null) {
+            complete(s.key, s.value);
+            return null;
+          }
+          return s;
+        });
+    last.onFailure(s -> complete(s.key, s.value));
+    last.withThreadHooks(Lector::bindEDComponents, Lector::releaseEDComponents);
 
-      System.out.println("\tReading next batch.");
-      lines.clear();
+    // write articles with entities
+    if (!Configuration.inMemoryProcess() && augmentedDumpWriter != null) {
+      last = last.then("WR", Configuration.getWriterThreads(), queueSize, s -> {
+        augmentedDumpWriter.println(s.value.toJson());
+        return s;
+      });
+      last.onFailure(s -> complete(s.key, s.value));
     }
 
+    // extract triples from articles and write to db
+    last.then("TE", Configuration.getTriplifierThreads(), queueSize, s -> {
+      String wikid = s.value.getWikid();
+      ArticleTriples triples = null;
+      try {
+        triples = watchdog.run("TE", wikid, s.key, triplifierBudget, () -> {
+          long start = System.nanoTime();
+          ArticleTriples created = Lector.getTriplifier().createTriples(s.value);
+          metrics.record(Step.TRIPLIFICATION, wikid, start);
+          return created;
+        });
+      } finally {
+        blockLock.readLock().lock();
+        try {
+          if (triples != null) {
+            Lector.getTriplifier().addTriples(s.value, triples);
+            metrics.articleDone();
+          }
+        } finally {
+          complete(s.key, s.value);
+          blockLock.readLock().unlock();
+        }
+      }
+      if (triplified.incrementAndGet() % chunckSize == 0) {
+        updateBlock();
+        printProgress(parser, triplified.get(), total_start_time);
+      }
+      return null;
+    });
+
+    parser.start();
+    try {
+      while (!(lines = dumpFileReader.nextChunk(chunckSize)).isEmpty() && cont < totArticle) {
+        cont += lines.size();
+        List<Pair<Integer, String>> chunk = new ArrayList<Pair<Integer, String>>(lines.size());
+        for (String s : lines) {
+          if (isUnchanged(s)) {
+            unchanged++;
+            checkpoint.complete(page, null);
+          } else if (!inShard(page, chunckSize))
+            checkpoint.complete(page, null);
+          else if (!checkpoint.isDone(page)) {
+            WikiArticle skipped = (triage == null) ? null : triage.triage(s);
+            if (skipped == null) {
+              chunk.add(Pair.make(page, s));
+            } else {
+              triaged++;
+              stats.addArticleToStats(skipped);
+              checkpoint.complete(page, skipped);
+            }
+          }
+          page++;
+        }
+        // the longest pages first, so that the chunk does not end waiting for one of them
+        if (longestFirst)
+          chunk.sort((a, b) -> Integer.compare(b.value.length(), a.value.length()));
+        List<Integer> pages = new ArrayList<Integer>(chunk.size());
+        for (Pair<Integer, String> p : chunk)
+          pages.add(p.key);
+        stragglers.track(pages);
+        for (Pair<Integer, String> p : chunk)
+          parser.put(p);
+      }
+      // the pages not seen are deleted only if the dump really ended (not e.g. a cut file)
+      exhausted = lines.isEmpty() && dumpFileReader.reachedEnd();
+      parser.finish();
+      parser.await();
+    } catch (InterruptedException e) {
+      parser.stop();
+      Thread.currentThread().interrupt();
+    }
+    updateBlock(); // write the last block to db
+    if (revisions != null) {
+      System.out.println("\tUnchanged pages: " + unchanged);
+      // the articles left were not found in the dump (unless we did not read it all)
+      if (exhausted && !Thread.currentThread().isInterrupted()) {
+        Lector.getDbmodel(false).removeArticles(revisions.keySet());
+        System.out.println("\tDeleted pages: " + revisions.size());
+      } else {
+        System.out.println("\tThe end of the dump was not reached, no page is deleted.");
+      }
+    }
+    printProgress(parser, triplified.get(), total_start_time);
+    metrics.stopExport();
+    watchdog.close();
+
+    System.out.println("\nStages");
+    System.out.println("---------------");
+    for (Stage<?, ?> stage = parser; stage != null; stage = stage.getNext())
+      stage.printStats();
+    System.out.println("\tQuarantined articles: " + watchdog.getQuarantined());
+    System.out.println("\tPages skipped by the triage: " + triaged);
+    stragglers.printStats();
+    Lector.getFanOut().printStats();
+
     System.out.println("\nExecution time");
     System.out.println("---------------");
     long total_end_time = System.currentTimeMillis();
@@ -121,19 +398,86 @@ public class Pipeline {
     System.out.println(TimeUnit.MILLISECONDS.toMinutes(total_duration) + " minutes --> "
         + TimeUnit.MILLISECONDS.toHours(total_duration) + " hours\n");
 
+    metrics.printStats();
     stats.printStats();
     stats.writeDetailsFile();
     Lector.getTriplifier().printStats();
+    if (Configuration.useDBpediaSpotlight())
+      Lector.getDBSpot().getClient().printStats();
 
     dumpFileReader.close();
-    augmentedDumpWriter.close();
+    if (augmentedDumpWriter != null)
+      augmentedDumpWriter.close();
+
+  }
+
+  /**
+   * When the pipeline runs as a worker of a sharded extraction, the ranges of chunckSize pages are
+   * dealt in turn to the shards: returns true if the page belongs to the shard of this worker. If
+   * the reader already reads only the segments of the shard (multistream dumps), all its pages
+   * belong to the shard; otherwise every worker reads and decompresses the whole dump.
+   * 
+   * @param page
+   * @param chunckSize
+   * @return
+   */
+  private boolean inShard(int page, int chunckSize) {
+    int shard = Configuration.getShard();
+    return shard < 0 || dumpFileReader.readsShard()
+        || (page / chunckSize) % Configuration.getShards() == shard;
+  }
+
+  /**
+   * The page is done, whatever the stage where it ended.
+   * 
+   * @param page
+   * @param article
+   */
+  private void complete(int page, WikiArticle article) {
+    checkpoint.complete(page, article);
+    stragglers.complete(page);
+  }
 
+  /**
+   * Writes the triples in the DB together with the checkpoint. No article can be in the middle of
+   * the triplification meanwhile, so that the checkpoint contains exactly the articles whose
+   * triples are in the block.
+   */
+  private void updateBlock() {
+    blockLock.writeLock().lock();
+    try {
+      if (augmentedDumpWriter != null)
+        augmentedDumpWriter.flush();
+      long start = System.nanoTime();
+      int triples = Lector.getTriplifier().updateBlock(checkpoint.take(), revisions != null);
+      metrics.recordBlock(start, triples);
+    } finally {
+      blockLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Prints the number of triplified articles, with the queue depth and the utilization of each
+   * stage.
+   * 
+   * @param first
+   * @param triplified
+   * @param startTime
+   */
+  private void printProgress(Stage<?, ?> first, int triplified, long startTime) {
+    long elapsed = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startTime);
+    StringBuilder line = new StringBuilder();
+    line.append("\tTriplified " + triplified + " articles in " + elapsed + " sec.");
+    line.append(String.format(" (%.1f art/s)", metrics.getArticlesPerSecond()));
+    for (Stage<?, ?> stage = first; stage != null; stage = stage.getNext())
+      line.append("\t" + stage.getStatus());
+    System.out.println(line.toString());
   }
 
   /**
    * 
    */
-  public void extractNovelFacts() {
+  public static void extractNovelFacts() {
     System.out.println("\nModel creation");
     System.out.println("-----------------");
     // here we derive model table
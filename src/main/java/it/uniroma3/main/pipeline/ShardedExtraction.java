@@ -0,0 +1,173 @@
+package it.uniroma3.main.pipeline;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import it.uniroma3.config.Configuration;
+import it.uniroma3.config.Lector;
+import it.uniroma3.model.db.DBModel;
+
+/**
+ * Runs the extraction of a language in several worker processes (JVMs), each one with its own
+ * model DB. With a multistream bz2 dump, every worker reads and decompresses only its own segments
+ * of the dump. With any other dump the ranges of chunckSize pages are dealt in turn to the
+ * workers, but every worker still reads and decompresses the whole dump: N workers cost N times
+ * the decompression and the splitting of the dump. When all the workers are done, their DBs are
+ * merged in the model DB of the language, and the model and the facts are derived from it as
+ * usual. If a DB can not be merged the extraction stops, rather than deriving the model from a
+ * part of the data.
+ *
+ * The workers are launched with the same JVM options and the same command line of this process,
+ * plus the parameters of their shard. Their output goes in the lector folder (shardN.log).
+ *
+ * @author matteo
+ *
+ */
+public class ShardedExtraction {
+
+  private String[] args;
+  private int shards;
+
+  /**
+   *
+   * @param args the command line of this process
+   */
+  public ShardedExtraction(String[] args) {
+    this.args = args;
+    this.shards = Configuration.getShards();
+  }
+
+  /**
+   * Extracts the language of the current thread.
+   */
+  public void run() {
+    System.out.println("\nSharded Pipeline (" + shards + " workers)");
+    System.out.println("-----------------------------------------------------");
+    long start_time = System.currentTimeMillis();
+
+    List<Process> workers = new ArrayList<Process>();
+    try {
+      for (int shard = 0; shard < shards; shard++)
+        workers.add(startWorker(shard));
+    } catch (IOException e) {
+      e.printStackTrace();
+      workers.forEach(Process::destroy);
+      return;
+    }
+
+    boolean failed = false;
+    for (int shard = 0; shard < shards; shard++) {
+      try {
+        int exit = workers.get(shard).waitFor();
+        System.out.printf("\t%-30s %s\n", "Shard " + shard + ":",
+            (exit == 0) ? "done" : "FAILED (exit " + exit + "), see "
+                + Configuration.getShardLog(shard));
+        failed |= exit != 0;
+      } catch (InterruptedException e) {
+        workers.forEach(Process::destroy);
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    long end_time = System.currentTimeMillis();
+    System.out.println("\tWorkers done in "
+        + TimeUnit.MILLISECONDS.toSeconds(end_time - start_time) + " sec.");
+    if (failed) {
+      System.out.println("\tSome shards failed, the DBs are not merged.");
+      return;
+    }
+
+    Lector.init("TE");
+    merge();
+    Pipeline.extractNovelFacts();
+  }
+
+  /**
+   * Launches the worker of the shard.
+   *
+   * @param shard
+   * @return
+   * @throws IOException
+   */
+  private Process startWorker(int shard) throws IOException {
+    List<String> command = new ArrayList<String>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (!option.startsWith("-Xmx"))
+        command.add(option);
+    }
+    command.add("-Xmx" + Configuration.getShardHeap());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("it.uniroma3.main.Main");
+    for (String arg : args)
+      command.add(arg);
+    if (args.length == 0)
+      command.add("./config.properties");
+    command.add("task=shardworker");
+    command.add("languages=" + Configuration.getLanguageCode());
+    command.add("language=" + Configuration.getLanguageCode());
+    command.add("shards=" + shards);
+    command.add("shard=" + shard);
+    // the DB of the shard must survive the worker
+    command.add("inMemory=false");
+
+    File log = new File(Configuration.getShardLog(shard));
+    ProcessBuilder pb = new ProcessBuilder(command);
+    pb.redirectErrorStream(true);
+    pb.redirectOutput(log);
+    Process p = pb.start();
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        p.destroy();
+      }
+    });
+    return p;
+  }
+
+  /**
+   * Merges the DBs of the shards in the model DB and appends their augmented dumps.
+   */
+  private void merge() {
+    System.out.println("\nMerging shards");
+    System.out.println("-----------------");
+    long start_time = System.currentTimeMillis();
+    DBModel dbmodel = Lector.getDbmodel(true);
+    for (int shard = 0; shard < shards; shard++)
+      dbmodel.mergeShard(Configuration.getShardFile(Configuration.getDBModel(), shard));
+
+    List<String> dumps = new ArrayList<String>();
+    for (int shard = 0; shard < shards; shard++)
+      dumps.add(Configuration.getShardFile(Configuration.getAugmentedArticlesFile(), shard));
+    concat(dumps, Configuration.getAugmentedArticlesFile());
+
+    long end_time = System.currentTimeMillis();
+    System.out.println("\tMerged " + shards + " shards in "
+        + TimeUnit.MILLISECONDS.toSeconds(end_time - start_time) + " sec.");
+  }
+
+  /**
+   * Writes the files, one after the other, in the destination.
+   *
+   * @param files
+   * @param destination
+   */
+  private static void concat(List<String> files, String destination) {
+    try (OutputStream out = new FileOutputStream(destination)) {
+      for (String file : files) {
+        if (new File(file).exists())
+          Files.copy(new File(file).toPath(), out);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot merge the augmented dumps of the shards", e);
+    }
+  }
+
+}
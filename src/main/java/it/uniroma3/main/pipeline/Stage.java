@@ -0,0 +1,396 @@
+package it.uniroma3.main.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import it.uniroma3.main.util.NamedThreadFactory;
+
+/**
+ * A step of the pipeline that runs on its own pool of threads. The items are taken from a bounded input
+ * queue, processed, and put in the input queue of the next stage: when the next stage is slower,
+ * its queue fills up and the threads of this stage wait (back-pressure).
+ *
+ * A task that returns null drops the item, i.e. it does not go to the next stage. An item whose
+ * task fails is dropped as well. A batched stage, instead, gives to its task all the items that
+ * are waiting in the queue (up to a batch size), and then passes all of them to the next stage,
+ * also when its task fails.
+ *
+ * @author matteo
+ *
+ * @param <I> type of the items in input
+ * @param <O> type of the items in output
+ */
+public class Stage<I, O> {
+
+  /* marks the end of the input, one for each thread of the stage */
+  private static final Object END = new Object();
+
+  private String name;
+  private int threads;
+  private BlockingQueue<Object> input;
+  private Function<I, O> task;
+  private Consumer<List<I>> batchTask;
+  private int batchSize;
+  private Consumer<I> failureHandler;
+  private Stage<O, ?> next;
+
+  private ExecutorService pool;
+  private Runnable onThreadStart;
+  private Runnable onThreadExit;
+  private AtomicInteger alive;
+  private long startTime;
+  private volatile long endTime;
+
+  private LongAdder busyTime;
+  private LongAdder processed;
+  private LongAdder depthSum;
+  private LongAdder depthSamples;
+  private LongAccumulator depthMax;
+
+  /**
+   *
+   * @param name
+   * @param threads
+   * @param capacity
+   * @param task
+   */
+  public Stage(String name, int threads, int capacity, Function<I, O> task) {
+    this.name = name;
+    this.threads = Math.max(1, threads);
+    this.input = new ArrayBlockingQueue<Object>(Math.max(1, capacity));
+    this.task = task;
+    this.alive = new AtomicInteger(this.threads);
+    this.busyTime = new LongAdder();
+    this.processed = new LongAdder();
+    this.depthSum = new LongAdder();
+    this.depthSamples = new LongAdder();
+    this.depthMax = new LongAccumulator(Long::max, 0);
+  }
+
+  /**
+   * Connects a new stage after this one and returns it.
+   *
+   * @param name
+   * @param threads
+   * @param capacity
+   * @param task
+   * @return
+   */
+  public <R> Stage<O, R> then(String name, int threads, int capacity, Function<O, R> task) {
+    Stage<O, R> stage = new Stage<O, R>(name, threads, capacity, task);
+    this.next = stage;
+    return stage;
+  }
+
+  /**
+   * Connects a new batched stage after this one and returns it. The task processes the items of
+   * each batch in place, and they all go to the next stage, also when the task fails: its work
+   * must be something that the next stage can do again on the items it finds not done.
+   *
+   * @param name
+   * @param threads
+   * @param capacity
+   * @param batchSize
+   * @param task
+   * @return
+   */
+  public Stage<O, O> thenBatched(String name, int threads, int capacity, int batchSize,
+      Consumer<List<O>> task) {
+    Stage<O, O> stage = new Stage<O, O>(name, threads, capacity, null);
+    stage.batchTask = task;
+    stage.batchSize = Math.max(1, batchSize);
+    this.next = stage;
+    return stage;
+  }
+
+  /**
+   * Sets what to do with the items whose task throws an exception (after printing it).
+   *
+   * @param handler
+   * @return
+   */
+  public Stage<I, O> onFailure(Consumer<I> handler) {
+    this.failureHandler = handler;
+    return this;
+  }
+
+  /**
+   * Sets what each thread of the stage runs when it starts (before its first item) and when it
+   * ends, e.g. to bind and release its thread-local components.
+   *
+   * @param onStart
+   * @param onExit
+   * @return
+   */
+  public Stage<I, O> withThreadHooks(Runnable onStart, Runnable onExit) {
+    this.onThreadStart = onStart;
+    this.onThreadExit = onExit;
+    return this;
+  }
+
+  /**
+   * Starts the pool of threads of this stage and of all the following ones.
+   */
+  public void start() {
+    this.startTime = System.nanoTime();
+    this.pool = Executors.newFixedThreadPool(threads,
+        new NamedThreadFactory("stage-" + name, onThreadStart, onThreadExit));
+    for (int i = 0; i < threads; i++)
+      pool.execute(this::work);
+    pool.shutdown();
+    if (next != null)
+      next.start();
+  }
+
+  /**
+   * Gives an item to the stage, waiting if its queue is full.
+   *
+   * @param item
+   * @throws InterruptedException
+   */
+  public void put(I item) throws InterruptedException {
+    input.put(item);
+    int depth = input.size();
+    depthSum.add(depth);
+    depthSamples.increment();
+    depthMax.accumulate(depth);
+  }
+
+  /**
+   * Tells the stage that no more items will come. When its threads are done, the following stage
+   * is finished as well.
+   *
+   * @throws InterruptedException
+   */
+  public void finish() throws InterruptedException {
+    for (int i = 0; i < threads; i++)
+      input.put(END);
+  }
+
+  /**
+   * Waits until this stage and all the following ones are done.
+   *
+   * @throws InterruptedException
+   */
+  public void await() throws InterruptedException {
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    if (next != null)
+      next.await();
+  }
+
+  /**
+   * Stops the threads of this stage and of all the following ones, without waiting for them.
+   */
+  public void stop() {
+    if (pool != null)
+      pool.shutdownNow();
+    if (next != null)
+      next.stop();
+  }
+
+  /**
+   * The loop of each thread. The last thread that ends finishes the following stage, also when it
+   * ends with an error, so that the pipeline never waits for a stage that is gone.
+   */
+  private void work() {
+    boolean stopped = false;
+    try {
+      if (batchTask == null)
+        processItems();
+      else
+        processBatches();
+    } catch (InterruptedException e) {
+      stopped = true;
+      Thread.currentThread().interrupt();
+    } finally {
+      if (alive.decrementAndGet() == 0 && !stopped) {
+        endTime = System.nanoTime();
+        try {
+          if (next != null)
+            next.finish();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Processes the items one by one, until the end of the input.
+   *
+   * @throws InterruptedException
+   */
+  @SuppressWarnings("unchecked")
+  private void processItems() throws InterruptedException {
+    Object item;
+    while ((item = input.take()) != END) {
+      long start = System.nanoTime();
+      O out = null;
+      try {
+        out = task.apply((I) item);
+      } catch (RuntimeException | Error e) {
+        // an Error of a single item (e.g. a StackOverflowError in a regex) does not stop the stage
+        e.printStackTrace();
+        if (failureHandler != null)
+          failureHandler.accept((I) item);
+      }
+      busyTime.add(System.nanoTime() - start);
+      processed.increment();
+      if (out != null && next != null)
+        next.put(out);
+    }
+  }
+
+  /**
+   * Processes the items in batches, with the ones that are waiting in the queue, until the end of
+   * the input.
+   *
+   * @throws InterruptedException
+   */
+  @SuppressWarnings("unchecked")
+  private void processBatches() throws InterruptedException {
+    List<Object> drained = new ArrayList<Object>(batchSize);
+    boolean end = false;
+    while (!end) {
+      drained.clear();
+      drained.add(input.take());
+      input.drainTo(drained, batchSize - 1);
+      List<I> batch = new ArrayList<I>(drained.size());
+      int ends = 0;
+      for (Object item : drained) {
+        if (item == END)
+          ends++;
+        else
+          batch.add((I) item);
+      }
+      // one end is for this thread, the others are given back to the other threads
+      end = ends > 0;
+      for (int i = 1; i < ends; i++)
+        input.put(END);
+      if (batch.isEmpty())
+        continue;
+
+      long start = System.nanoTime();
+      try {
+        batchTask.accept(batch);
+      } catch (RuntimeException | Error e) {
+        // the items go on anyway, the next stage does again what the batch did not
+        e.printStackTrace();
+      }
+      busyTime.add(System.nanoTime() - start);
+      processed.add(batch.size());
+      if (next != null) {
+        for (I item : batch)
+          next.put((O) item);
+      }
+    }
+  }
+
+  /**
+   *
+   * @return
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public Stage<O, ?> getNext() {
+    return next;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public long getProcessed() {
+    return processed.sum();
+  }
+
+  /**
+   *
+   * @return
+   */
+  public int getQueueDepth() {
+    return input.size();
+  }
+
+  /**
+   *
+   * @return
+   */
+  public int getQueueCapacity() {
+    return input.size() + input.remainingCapacity();
+  }
+
+  /**
+   * Average size of the queue, as seen by the items when they enter it.
+   *
+   * @return
+   */
+  public double getAverageQueueDepth() {
+    long samples = depthSamples.sum();
+    return (samples == 0) ? 0 : (double) depthSum.sum() / samples;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public long getMaxQueueDepth() {
+    return depthMax.get();
+  }
+
+  /**
+   * Fraction of the time in which the threads of the stage have been busy, from its start to now
+   * (or to its end).
+   *
+   * @return
+   */
+  public double getUtilization() {
+    long end = (endTime == 0) ? System.nanoTime() : endTime;
+    long elapsed = end - startTime;
+    return (elapsed <= 0) ? 0 : (double) busyTime.sum() / ((double) elapsed * threads);
+  }
+
+  /**
+   * Short description of the state of the stage, for the progress lines.
+   *
+   * @return
+   */
+  public String getStatus() {
+    return String.format("%s q=%d/%d %.0f%%", name, getQueueDepth(), getQueueCapacity(),
+        getUtilization() * 100);
+  }
+
+  /**
+   * Prints the details of the stage, for the final report.
+   */
+  public void printStats() {
+    System.out.printf(
+        "\t%-4s threads: %-3d processed: %-9d queue avg: %-8.1f max: %-6d busy: %.1f%%\n", name,
+        threads, getProcessed(), getAverageQueueDepth(), getMaxQueueDepth(),
+        getUtilization() * 100);
+  }
+
+}
@@ -97,61 +97,78 @@ public class ArticleTyper {
     if (checkIsDate(article))
       return ArticleType.DATE;
 
+    /* Filter to capture articles of the other namespaces */
+    ArticleType namespaceType = findNamespaceType(article.getWikid());
+    if (namespaceType != null)
+      return namespaceType;
+
+    /* Filter to capture LIST articles */
+    for (String listHook : Lector.getWikiLang().getListIdentifiers())
+      if (article.getWikid().startsWith(listHook)) {
+        return ArticleType.LIST;
+      }
+
+    /* Filter to capture DRAFT articles (hard-coded) */
+    if (article.getWikid().startsWith("Draft:")
+        || article.getWikid().startsWith("Parroquia_Junquillal")) {
+      return ArticleType.DRAFT;
+    }
+
+    return ArticleType.ARTICLE;
+  }
+
+  /**
+   * Find the ArticleType of the pages of the other namespaces (portal, project, file, help,
+   * category, template and discussion) using the prefix of the wikid. Returns null for the other
+   * pages.
+   * 
+   * @param wikid
+   * @return
+   */
+  public ArticleType findNamespaceType(String wikid) {
     /* Filter to capture WIKIPEDIA portal articles */
     for (String portalHook : Lector.getWikiLang().getPortalIdentifiers())
-      if (article.getWikid().startsWith(portalHook + ":")) {
+      if (wikid.startsWith(portalHook + ":")) {
         return ArticleType.PORTAL;
       }
 
     /* Filter to capture WIKIPEDIA projet articles */
     for (String projectHook : Lector.getWikiLang().getProjectIdentifiers())
-      if (article.getWikid().startsWith(projectHook + ":")) {
+      if (wikid.startsWith(projectHook + ":")) {
         return ArticleType.PROJECT;
       }
 
     /* Filter to capture FILE articles */
     for (String fileHook : Lector.getWikiLang().getFileIdentifiers())
-      if (article.getWikid().startsWith(fileHook + ":")) {
+      if (wikid.startsWith(fileHook + ":")) {
         return ArticleType.FILE;
       }
 
     /* Filter to capture HELP articles */
     for (String helpHook : Lector.getWikiLang().getHelpIdentifiers())
-      if (article.getWikid().startsWith(helpHook + ":")) {
+      if (wikid.startsWith(helpHook + ":")) {
         return ArticleType.HELP;
       }
 
     /* Filter to capture CATEGORY articles */
     for (String categoryHook : Lector.getWikiLang().getCategoryIdentifiers())
-      if (article.getWikid().startsWith(categoryHook + ":")) {
+      if (wikid.startsWith(categoryHook + ":")) {
         return ArticleType.CATEGORY;
       }
 
     /* Filter to capture TEMPLATE articles */
     for (String templateHook : Lector.getWikiLang().getTemplateIdentifiers())
-      if (article.getWikid().startsWith(templateHook + ":")) {
+      if (wikid.startsWith(templateHook + ":")) {
         return ArticleType.TEMPLATE;
       }
 
     /* Filter to capture DISCUSSION articles */
     for (String discussionHook : Lector.getWikiLang().getDiscussionIdentifiers())
-      if (article.getWikid().startsWith(discussionHook + ":")) {
+      if (wikid.startsWith(discussionHook + ":")) {
         return ArticleType.DISCUSSION;
       }
 
-    /* Filter to capture LIST articles */
-    for (String listHook : Lector.getWikiLang().getListIdentifiers())
-      if (article.getWikid().startsWith(listHook)) {
-        return ArticleType.LIST;
-      }
-
-    /* Filter to capture DRAFT articles (hard-coded) */
-    if (article.getWikid().startsWith("Draft:")
-        || article.getWikid().startsWith("Parroquia_Junquillal")) {
-      return ArticleType.DRAFT;
-    }
-
-    return ArticleType.ARTICLE;
+    return null;
   }
 
 }
@@ -1,5 +1,6 @@
 package it.uniroma3.main.pipeline.articleparser;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -16,6 +17,12 @@ import it.uniroma3.config.Lector;
  */
 public class BlockParser {
 
+  // h1, h2, h3 and h4
+  private static final Pattern[] SECTIONS = {Pattern.compile("(?m)^==\\s?([^=]+)\\s?==\\s?$"),
+      Pattern.compile("(?m)^===\\s?([^=]+)\\s?===\\s?$"),
+      Pattern.compile("(?m)^====\\s?([^=]+)\\s?====\\s?$"),
+      Pattern.compile("(?m)^=====\\s?([^=]+)\\s?=====\\s?$")};
+
   private Cleaner cleaner;
 
   /**
@@ -40,73 +47,48 @@ public class BlockParser {
   }
 
   /**
-   * Fragment the article in multiple (sub)sections.
+   * Fragment the article in multiple (sub)sections. The sections are views on the text of the
+   * article, nothing is copied.
    * 
    * @param text
    * @return
    * @throws Exception
    */
-  public Map<String, String> fragmentArticle(String text) {
+  public Map<String, SectionView> fragmentArticle(String text) {
     /*
      * Then, fragment the article in blocks
      */
     String ABSTRACT = "#Abstract";
-    String regex_first = "(?m)^==\\s?([^=]+)\\s?==\\s?$"; // h1
-    String regex_second = "(?m)^===\\s?([^=]+)\\s?===\\s?$"; // h2
-    String regex_third = "(?m)^====\\s?([^=]+)\\s?====\\s?$"; // h3
-    String regex_fourth = "(?m)^=====\\s?([^=]+)\\s?=====\\s?$"; // h4
 
     // content --> first sections
-    Map<String, String> first_sections = getBlocksFromContent(text, regex_first, ABSTRACT, "#");
-
-    // first sections --> second sections
-    Map<String, String> second_sections = new LinkedHashMap<String, String>();
-    for (Map.Entry<String, String> entry : first_sections.entrySet()) {
-      String head = entry.getKey();
-      String cont = entry.getValue();
-      Map<String, String> tmp = getBlocksFromContent(cont, regex_second, ABSTRACT, "#");
-      for (Map.Entry<String, String> entries : tmp.entrySet()) {
-        if (!entries.getKey().equals(ABSTRACT))
-          second_sections.put(entries.getKey(), entries.getValue());
-        else
-          second_sections.put(head, entries.getValue());
-      }
-    }
-
-    // second sections --> third sections
-    Map<String, String> third_sections = new LinkedHashMap<String, String>();
-    for (Map.Entry<String, String> entry : second_sections.entrySet()) {
-      String head = entry.getKey();
-      String cont = entry.getValue();
-      Map<String, String> tmp = getBlocksFromContent(cont, regex_third, ABSTRACT, "#");
-      for (Map.Entry<String, String> entries : tmp.entrySet()) {
-        if (!entries.getKey().equals(ABSTRACT))
-          third_sections.put(entries.getKey(), entries.getValue());
-        else
-          third_sections.put(head, entries.getValue());
-      }
-    }
-
-    // second sections --> third sections
-    Map<String, String> fourth_sections = new LinkedHashMap<String, String>();
-    for (Map.Entry<String, String> entry : third_sections.entrySet()) {
-      String head = entry.getKey();
-      String cont = entry.getValue();
-      Map<String, String> tmp = getBlocksFromContent(cont, regex_fourth, ABSTRACT, "#");
-      for (Map.Entry<String, String> entries : tmp.entrySet()) {
-        if (!entries.getKey().equals(ABSTRACT))
-          fourth_sections.put(entries.getKey(), entries.getValue());
-        else
-          fourth_sections.put(head, entries.getValue());
+    Map<String, SectionView> sections =
+        getBlocksFromContent(new SectionView(text), SECTIONS[0], ABSTRACT, "#");
+
+    // first sections --> second sections --> third sections --> fourth sections
+    for (int level = 1; level < SECTIONS.length; level++) {
+      Map<String, SectionView> subsections = new LinkedHashMap<String, SectionView>();
+      for (Map.Entry<String, SectionView> entry : sections.entrySet()) {
+        String head = entry.getKey();
+        Map<String, SectionView> tmp =
+            getBlocksFromContent(entry.getValue(), SECTIONS[level], ABSTRACT, "#");
+        for (Map.Entry<String, SectionView> entries : tmp.entrySet()) {
+          if (!entries.getKey().equals(ABSTRACT))
+            subsections.put(entries.getKey(), entries.getValue());
+          else
+            subsections.put(head, entries.getValue());
+        }
       }
+      sections = subsections;
     }
 
-    return fourth_sections;
+    return sections;
   }
 
   /**
    * Splits a piece of content in multiple sub-sections based on the regex in input. The regex
-   * capture sub-sections from paragraphs such as h1, h2, h3,.. .
+   * capture sub-sections from paragraphs such as h1, h2, h3,.. . The sub-sections are split as
+   * String.split would do (trailing empty sections are dropped), but they are views on the same
+   * text.
    * 
    * @param content
    * @param regex
@@ -114,38 +96,38 @@ public class BlockParser {
    * @param separator
    * @return
    */
-private Map<String, String> getBlocksFromContent(String content, String regex, String nameFirst,
-      String separator) {
-    Map<String, String> subsections = new LinkedHashMap<String, String>();
-
-    Pattern SECTIONS = Pattern.compile(regex);
-    Matcher m_sec = SECTIONS.matcher(content);
-    int subsections_count = 0;
-    // for sure there is at least one subsection
-    String[] list_subsection = content.split(regex);
-
-    try{
-      // insert the abstract
-      subsections.put(nameFirst, list_subsection[subsections_count]);
-    }catch(java.lang.ArrayIndexOutOfBoundsException e){
-      // no abstract, skip the article
-      return subsections;
-    }
-
-    // if there is at least one (sub)section in the article...
+  private Map<String, SectionView> getBlocksFromContent(SectionView content, Pattern regex,
+      String nameFirst, String separator) {
+    Map<String, SectionView> subsections = new LinkedHashMap<String, SectionView>();
+
+    Matcher m_sec = regex.matcher(content.getText()).region(content.getStart(), content.getEnd());
+    List<SectionView> list_subsection = new ArrayList<SectionView>();
+    List<String> headers = new ArrayList<String>();
+    int index = content.getStart();
     while (m_sec.find()) {
-      subsections_count += 1;
-
+      list_subsection.add(new SectionView(content.getText(), index, m_sec.start()));
+      index = m_sec.end();
       // get the title of the section (removing possible wikilinks from the titles) and normalize it
       // (adapting for the urls)
-      String title_block = m_sec.group(0).replaceAll("=", "").trim().replaceAll(" ", "_");
-      String header = separator + title_block;
+      String title_block = m_sec.group(0).replace("=", "").trim().replace(" ", "_");
+      headers.add(separator + title_block);
+    }
+    list_subsection.add(new SectionView(content.getText(), index, content.getEnd()));
+    // as String.split, without headers the content is kept even if empty
+    while (!headers.isEmpty() && !list_subsection.isEmpty()
+        && list_subsection.get(list_subsection.size() - 1).length() == 0)
+      list_subsection.remove(list_subsection.size() - 1);
+
+    // no abstract, skip the article
+    if (list_subsection.isEmpty())
+      return subsections;
 
-      // insert the other sections
-      if (list_subsection.length > subsections_count)
-        subsections.put(header, list_subsection[subsections_count]);
+    // insert the abstract
+    subsections.put(nameFirst, list_subsection.get(0));
 
-    }
+    // insert the other sections
+    for (int count = 1; count < list_subsection.size(); count++)
+      subsections.put(headers.get(count - 1), list_subsection.get(count));
     return subsections;
   }
 
@@ -193,7 +175,8 @@ private Map<String, String> getBlocksFromContent(String content, String regex, S
    * @param fragmentedArticle
    * @return
    */
-  public Map<String, List<String>> extractTables(Map<String, String> fragmentedArticle) {
+  public Map<String, List<String>> extractTables(
+      Map<String, ? extends CharSequence> fragmentedArticle) {
     return cleaner.retrieveTables(fragmentedArticle);
   }
 
@@ -202,7 +185,8 @@ private Map<String, String> getBlocksFromContent(String content, String regex, S
    * @param fragmentedArticle
    * @return
    */
-  public Map<String, List<String>> extractLists(Map<String, String> fragmentedArticle) {
+  public Map<String, List<String>> extractLists(
+      Map<String, ? extends CharSequence> fragmentedArticle) {
     return cleaner.retrieveLists(fragmentedArticle);
   }
 
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import it.uniroma3.config.Lector;
@@ -25,6 +26,8 @@ public class Cleaner {
   private static final int DEFAULT = 0;
   private static final int CLOSE = 1;
   private static final int OPEN = 2;
+  private static final Map<String, Pattern> SEARCH_PATTERNS =
+      new ConcurrentHashMap<String, Pattern>();
 
   /**
    * Returns a list of all the composite structures in the page.
@@ -40,33 +43,28 @@ public class Cleaner {
    */
   public List<String> retrieveAll(String page, String initialDoubleCharacterLabel,
       String finalDoubleCharacterLabel) {
-
     List<String> structureList = new ArrayList<String>();
-    String init = initialDoubleCharacterLabel;
-    Pattern search_init = Pattern.compile(Pattern.quote(init));
-    Matcher m = search_init.matcher(page);
-    int i, cur;
-
-    boolean matched = true;
-    if (m.find()) {
-      matched = true;
-      while (matched) {
-        m = search_init.matcher(page);
-        if (m.find()) {
-          i = m.start();
-          cur = retrieveBalancedSpan(i + init.length(), page, initialDoubleCharacterLabel,
-              finalDoubleCharacterLabel);
-          structureList.add(page.substring(i, cur));
-          page = page.substring(cur);
-          cur = i + 1;
-        } else {
-          matched = false;
-        }
-      }
-    }
+    for (int[] span : retrieveAllSpans(page, initialDoubleCharacterLabel,
+        finalDoubleCharacterLabel))
+      structureList.add(page.substring(span[0], span[1]));
     return structureList;
   }
 
+  /**
+   * Returns the offsets (begin and end) of all the composite structures in the page. The page is
+   * scanned once, from left to right.
+   * 
+   * @param page
+   * @param initialDoubleCharacterLabel
+   * @param finalDoubleCharacterLabel
+   * @return
+   */
+  public List<int[]> retrieveAllSpans(String page, String initialDoubleCharacterLabel,
+      String finalDoubleCharacterLabel) {
+    return retrieveSpans(page, getSearchPattern(initialDoubleCharacterLabel, null),
+        initialDoubleCharacterLabel, finalDoubleCharacterLabel);
+  }
+
   /**
    * Returns a list of composite structures. If not specified as a parameter, it captures all the
    * span of text between the initialDoubleCharacterLabel and finalDoubleCharacterLabel.
@@ -90,28 +88,10 @@ public class Cleaner {
       keywords.add("");
 
     for (String keyword : keywords) {
-      String init = initialDoubleCharacterLabel + keyword;
-      Pattern search_init = Pattern.compile(Pattern.quote(init) + "(?=\\b)");
-      Matcher m = search_init.matcher(page);
-      int i, cur;
-
-      boolean matched = true;
-      if (m.find()) {
-        matched = true;
-        while (matched) {
-          m = search_init.matcher(page);
-          if (m.find()) {
-            i = m.start();
-            cur = retrieveBalancedSpan(i + init.length(), page, initialDoubleCharacterLabel,
-                finalDoubleCharacterLabel);
-            structureList.add(page.substring(i, cur));
-            page = page.substring(cur);
-            cur = i + 1;
-          } else {
-            matched = false;
-          }
-        }
-      }
+      Pattern search = getSearchPattern(initialDoubleCharacterLabel, keyword);
+      for (int[] span : retrieveSpans(page, search, initialDoubleCharacterLabel,
+          finalDoubleCharacterLabel))
+        structureList.add(page.substring(span[0], span[1]));
     }
 
     if (structureList.isEmpty())
@@ -140,26 +120,9 @@ public class Cleaner {
       keywords.add("");
 
     for (String keyword : keywords) {
-      String init = initialDoubleCharacterLabel + keyword;
-      Pattern search_init = Pattern.compile(Pattern.quote(init) + "(?=\\b)");
-      Matcher m = search_init.matcher(blockOfContent);
-      boolean matched = true;
-      int i, cur;
-      if (m.find()) {
-        matched = true;
-        while (matched) {
-          m = search_init.matcher(blockOfContent);
-          if (m.find()) {
-            i = m.start();
-            cur = retrieveBalancedSpan(i + init.length(), blockOfContent,
-                initialDoubleCharacterLabel, finalDoubleCharacterLabel);
-            blockOfContent = blockOfContent.substring(0, i).trim() + blockOfContent.substring(cur);
-            cur = i + 1;
-          } else {
-            matched = false;
-          }
-        }
-      }
+      Pattern search = getSearchPattern(initialDoubleCharacterLabel, keyword);
+      blockOfContent = removeSpans(blockOfContent, search, initialDoubleCharacterLabel,
+          finalDoubleCharacterLabel);
     }
     return blockOfContent;
   }
@@ -179,27 +142,104 @@ public class Cleaner {
    */
   public String cleanBlockOfContent(String blockOfContent, String initialDoubleCharacterLabel,
       String finalDoubleCharacterLabel) {
-    String init = initialDoubleCharacterLabel;
-    Pattern search_init = Pattern.compile(Pattern.quote(init));
-    Matcher m = search_init.matcher(blockOfContent);
-    boolean matched = true;
-    int i, cur;
-    if (m.find()) {
-      matched = true;
-      while (matched) {
-        m = search_init.matcher(blockOfContent);
-        if (m.find()) {
-          i = m.start();
-          cur = retrieveBalancedSpan(i + init.length(), blockOfContent, initialDoubleCharacterLabel,
-              finalDoubleCharacterLabel);
-          blockOfContent = blockOfContent.substring(0, i).trim() + blockOfContent.substring(cur);
-          cur = i + 1;
-        } else {
-          matched = false;
-        }
+    return removeSpans(blockOfContent, getSearchPattern(initialDoubleCharacterLabel, null),
+        initialDoubleCharacterLabel, finalDoubleCharacterLabel);
+  }
+
+  /**
+   * Returns the pattern that finds the beginning of the structures: the initial label, followed
+   * by the keyword as a whole word (if the keyword is not null).
+   * 
+   * @param initialDoubleCharacterLabel
+   * @param keyword
+   * @return
+   */
+  private static Pattern getSearchPattern(String initialDoubleCharacterLabel, String keyword) {
+    String regex = (keyword == null) ? Pattern.quote(initialDoubleCharacterLabel)
+        : Pattern.quote(initialDoubleCharacterLabel + keyword) + "(?=\\b)";
+    return SEARCH_PATTERNS.computeIfAbsent(regex, Pattern::compile);
+  }
+
+  /**
+   * Finds the structures in a single scan: each search starts where the previous structure ends.
+   * 
+   * @param page
+   * @param search
+   * @param initialDoubleCharacterLabel
+   * @param finalDoubleCharacterLabel
+   * @return
+   */
+  private List<int[]> retrieveSpans(String page, Pattern search,
+      String initialDoubleCharacterLabel, String finalDoubleCharacterLabel) {
+    List<int[]> spans = new ArrayList<int[]>();
+    Matcher m = search.matcher(page);
+    int cur = 0;
+    while (cur < page.length() && m.find(cur)) {
+      cur = retrieveBalancedSpan(m.end(), page, initialDoubleCharacterLabel,
+          finalDoubleCharacterLabel);
+      spans.add(new int[] {m.start(), cur});
+    }
+    return spans;
+  }
+
+  /**
+   * Removes the structures with a single splice of the text, trimming the text that precedes each
+   * of them. If the splice forms a new beginning of a structure across the cut, the scan goes on
+   * from there, as if the text had been searched again from the start.
+   * 
+   * @param page
+   * @param search
+   * @param initialDoubleCharacterLabel
+   * @param finalDoubleCharacterLabel
+   * @return
+   */
+  private String removeSpans(String page, Pattern search, String initialDoubleCharacterLabel,
+      String finalDoubleCharacterLabel) {
+    Matcher m = search.matcher(page);
+    if (!m.find())
+      return page;
+    StringBuilder out = new StringBuilder(page.length());
+    int label = search.pattern().length(); // an upper bound of the length of a match
+    int prev = 0;
+    int from = 0;
+    while (from < page.length() && m.find(from)) {
+      int cur = retrieveBalancedSpan(m.end(), page, initialDoubleCharacterLabel,
+          finalDoubleCharacterLabel);
+      out.append(page, prev, m.start());
+      trim(out);
+      prev = cur;
+      from = cur;
+
+      int tail = Math.max(0, out.length() - label);
+      String window =
+          out.substring(tail) + page.substring(cur, Math.min(page.length(), cur + label));
+      Matcher across = search.matcher(window);
+      if (across.find() && across.start() < out.length() - tail) {
+        from = tail + across.start();
+        page = out.append(page, cur, page.length()).toString();
+        out.setLength(0);
+        prev = 0;
+        m = search.matcher(page);
       }
     }
-    return blockOfContent;
+    return out.append(page, prev, page.length()).toString();
+  }
+
+  /**
+   * Same of String.trim() on a builder.
+   * 
+   * @param sb
+   */
+  private static void trim(StringBuilder sb) {
+    int end = sb.length();
+    while (end > 0 && sb.charAt(end - 1) <= ' ')
+      end--;
+    sb.setLength(end);
+    int begin = 0;
+    while (begin < end && sb.charAt(begin) <= ' ')
+      begin++;
+    if (begin > 0)
+      sb.delete(0, begin);
   }
 
   /**
@@ -271,10 +311,11 @@ public class Cleaner {
    * @param blocks
    * @return
    */
-  public Map<String, List<String>> retrieveTables(Map<String, String> blocks) {
+  public Map<String, List<String>> retrieveTables(Map<String, ? extends CharSequence> blocks) {
     Map<String, List<String>> tablesContent = new LinkedHashMap<String, List<String>>();
-    for (Map.Entry<String, String> block : blocks.entrySet()) {
-      List<String> tables = retrieveAll(block.getValue(), "{|", "|}"); // retrieve tables
+    for (Map.Entry<String, ? extends CharSequence> block : blocks.entrySet()) {
+      // retrieve tables
+      List<String> tables = retrieveAll(block.getValue().toString(), "{|", "|}");
       // add only if there is some textual content
       if (!tables.isEmpty())
         tablesContent.put(block.getKey(), tables);
@@ -293,10 +334,10 @@ public class Cleaner {
    * @param blocks
    * @return
    */
-  public Map<String, List<String>> retrieveLists(Map<String, String> blocks) {
+  public Map<String, List<String>> retrieveLists(Map<String, ? extends CharSequence> blocks) {
     Map<String, List<String>> listContent = new LinkedHashMap<String, List<String>>();
     Pattern LISTS = Pattern.compile("(?m)^(;|#|\\*|:)(?:(?!\\n).)++");
-    for (Map.Entry<String, String> block : blocks.entrySet()) {
+    for (Map.Entry<String, ? extends CharSequence> block : blocks.entrySet()) {
       Matcher m = LISTS.matcher(block.getValue());
       while (m.find()) {
         if (!listContent.containsKey(block.getKey()))
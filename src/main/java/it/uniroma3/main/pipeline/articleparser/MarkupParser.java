@@ -8,6 +8,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import it.uniroma3.config.Configuration;
 import it.uniroma3.config.Lector;
+import it.uniroma3.main.bean.AnnotatedText;
 import it.uniroma3.main.bean.WikiArticle;
 import it.uniroma3.main.util.inout.TSVReader;
 
@@ -259,15 +260,7 @@ public class MarkupParser {
    * @return
    */
   public String removeAllWikilinks(String originalText) {
-    Pattern WIKILINK = Pattern.compile(WIKID_REGEX);
-    Matcher m = WIKILINK.matcher(originalText);
-    StringBuffer cleanText = new StringBuffer();
-    while (m.find()) {
-      String renderedName = m.group(3);
-      m.appendReplacement(cleanText, Matcher.quoteReplacement(renderedName));
-    }
-    m.appendTail(cleanText);
-    return cleanText.toString();
+    return AnnotatedText.parse(originalText).getText();
   }
 
 
@@ -0,0 +1,61 @@
+package it.uniroma3.main.pipeline.articleparser;
+
+import it.uniroma3.config.Lector;
+import it.uniroma3.main.bean.WikiArticle;
+import it.uniroma3.main.bean.WikiArticle.ArticleType;
+
+/**
+ * Decides, before the page is parsed, if it is surely not an ARTICLE: redirects (the page has the
+ * redirect tag) and pages of the other namespaces recognized by the prefix of the title. It only
+ * looks at the header of the page, the text is never copied.
+ *
+ * The pages that pass the triage are typed as usual by the ArticleTyper.
+ *
+ * @author matteo
+ *
+ */
+public class PageTriage {
+
+  /**
+   * Returns the skipped page, as a WikiArticle with its type and without the markup, or null if
+   * the page has to be parsed.
+   *
+   * @param page
+   * @return
+   */
+  public WikiArticle triage(String page) {
+    int revision = page.indexOf("<revision>");
+    String header = (revision == -1) ? page : page.substring(0, revision);
+
+    ArticleType type = null;
+    String wikid = Lector.getXmlParser().extractsWikid(header);
+    String namespace = Lector.getXmlParser().getFieldFromXmlPage(header, "ns");
+    if (header.contains("<redirect"))
+      type = ArticleType.REDIRECT;
+    else if (!namespace.equals("0"))
+      type = findNamespaceType(wikid);
+    if (type == null)
+      return null;
+
+    WikiArticle article = new WikiArticle(wikid, Lector.getXmlParser().getFieldFromXmlPage(header,
+        "id"), Lector.getTextParser().getTitle(wikid), namespace, Lector.getWikiLang().getLang(),
+        "");
+    article.setType(type);
+    article.setRevision(Lector.getXmlParser().extractsRevision(page));
+    article.setSha1(Lector.getXmlParser().extractsSha1(page));
+    return article;
+  }
+
+  /**
+   *
+   * @param wikid
+   * @return
+   */
+  private ArticleType findNamespaceType(String wikid) {
+    ArticleType type = Lector.getArticleTyper().findNamespaceType(wikid);
+    if (type == null && wikid.startsWith("Draft:"))
+      type = ArticleType.DRAFT;
+    return type;
+  }
+
+}
@@ -0,0 +1,88 @@
+package it.uniroma3.main.pipeline.articleparser;
+
+/**
+ * A section of an article seen as a slice of the markup of the whole article: it is only a pair
+ * of offsets on the same buffer, the text is copied only by toString(), i.e. when a stage needs
+ * to rewrite it.
+ *
+ * @author matteo
+ *
+ */
+public class SectionView implements CharSequence {
+
+  private final String text;
+  private final int start;
+  private final int end;
+
+  /**
+   *
+   * @param text
+   * @param start
+   * @param end
+   */
+  public SectionView(String text, int start, int end) {
+    this.text = text;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   *
+   * @param text
+   */
+  public SectionView(String text) {
+    this(text, 0, text.length());
+  }
+
+  @Override
+  public int length() {
+    return end - start;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length())
+      throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+    return text.charAt(start + index);
+  }
+
+  @Override
+  public SectionView subSequence(int from, int to) {
+    if (from < 0 || to > length() || from > to)
+      throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + length());
+    return new SectionView(text, start + from, start + to);
+  }
+
+  /**
+   * The buffer of the whole article.
+   *
+   * @return
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Offset of the section in the buffer.
+   *
+   * @return
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * Offset of the end of the section in the buffer (excluded).
+   *
+   * @return
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  @Override
+  public String toString() {
+    return text.substring(start, end);
+  }
+
+}
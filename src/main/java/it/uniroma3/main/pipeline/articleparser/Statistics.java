@@ -29,12 +29,22 @@ public class Statistics {
    * 
    * @param a
    */
-  public synchronized WikiArticle addArticleToStats(WikiArticle a) {
-    ArticleType type = a.getType();
+  public WikiArticle addArticleToStats(WikiArticle a) {
+    addArticleToStats(a.getType(), a.getWikid(), a.getNamespace());
+    return a;
+  }
+
+  /**
+   * Adds an article processed in a previous run (e.g. before a resume).
+   * 
+   * @param type
+   * @param wikid
+   * @param namespace
+   */
+  public synchronized void addArticleToStats(ArticleType type, String wikid, String namespace) {
     if (!countTypes.containsKey(type))
       countTypes.put(type, new LinkedList<String>());
-    countTypes.get(type).add(a.getWikid() + "\t" + a.getNamespace());
-    return a;
+    countTypes.get(type).add(wikid + "\t" + namespace);
   }
 
   /**
@@ -6,8 +6,8 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringEscapeUtils;
+import it.uniroma3.config.Configuration;
 import it.uniroma3.config.Lector;
-import it.uniroma3.main.util.nlp.StupidNLP;
 
 /**
  * 
@@ -17,6 +17,7 @@ import it.uniroma3.main.util.nlp.StupidNLP;
 public class TextParser {
 
   private Cleaner cleaner;
+  private WikiTextLexer lexer;
   private static Pattern INTER_WIKI_LINKS;
   private static Pattern EXTERNAL_LINKS;
   private static Pattern EXTERNAL_LINKS_WITH_TEXT;
@@ -43,6 +44,7 @@ public class TextParser {
    */
   public TextParser() {
     this.cleaner = new Cleaner();
+    this.lexer = new WikiTextLexer();
     INTER_WIKI_LINKS = Pattern.compile("\\[\\[[a-z\\-]+:[^|\\]]+\\]\\]");
     EXTERNAL_LINKS = Pattern.compile("\\[http[^\\s]+\\]");
     EXTERNAL_LINKS_WITH_TEXT = Pattern.compile("\\[http[^\\s]+((\\s)[^\\]]+)?\\]");
@@ -113,6 +115,42 @@ public class TextParser {
     return cleanBlock;
   }
 
+  /**
+   * It does fixSomeTemplates and removeNoise, with the regexes or with the WikiTextLexer depending
+   * on the configuration. In the diff mode both are used: the differences are printed and the
+   * output of the regexes is returned.
+   * 
+   * @param block
+   * @return
+   */
+  public String fixTemplatesAndRemoveNoise(String block) {
+    switch (Configuration.getTextCleaner()) {
+      case "regex":
+        return removeNoise(fixSomeTemplates(block));
+      case "diff":
+        String expected = removeNoise(fixSomeTemplates(block));
+        lexer.compare(expected, lexNoise(block));
+        return expected;
+      default:
+        return lexNoise(block);
+    }
+  }
+
+  /**
+   * Same of fixSomeTemplates followed by removeNoise, but the templates, the refs, the tags and the
+   * links are handled by the WikiTextLexer in a single scan.
+   * 
+   * @param block
+   * @return
+   */
+  public String lexNoise(String block) {
+    String cleanBlock = StringEscapeUtils.unescapeHtml4(StringEscapeUtils.unescapeHtml4(block));
+    cleanBlock = lexer.clean(cleanBlock, Lector.getWikiLang().getCategoryIdentifiers());
+    cleanBlock = removeIndentation(cleanBlock);
+    cleanBlock = cleaner.cleanBlockOfContentFromSpecific(cleanBlock, "[[", "image", "]]");
+    return cleanBlock;
+  }
+
   /**
    * This methods removes wikilinks that are not named entities, or that are empty after the
    * removing of wikilinks with templates.
@@ -370,8 +408,8 @@ public class TextParser {
                                                                                   // wikilinks:
                                                                                   // <SE-ORG<...>>
                                                                                   // become ...
-      firstSentence = StupidNLP.splitInSentence(firstSentence).get(0); // here we use a "light"
-                                                                       // sentence splitter
+      // here we use a "light" sentence splitter
+      firstSentence = Lector.getSentenceSplitter().splitInSentence(firstSentence).get(0);
     } catch (Exception e) {
     }
     return firstSentence;
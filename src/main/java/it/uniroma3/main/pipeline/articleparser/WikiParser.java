@@ -1,5 +1,6 @@
 package it.uniroma3.main.pipeline.articleparser;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import it.uniroma3.config.Configuration;
 import it.uniroma3.config.Lector;
@@ -36,6 +37,8 @@ public class WikiParser {
     String originalMarkup = Lector.getXmlParser().getWikiMarkup(page);
     WikiArticle article = new WikiArticle(wikid, id, title, namespace,
         Lector.getWikiLang().getLang(), originalMarkup);
+    article.setRevision(Lector.getXmlParser().extractsRevision(page));
+    article.setSha1(Lector.getXmlParser().extractsSha1(page));
 
     try {
       /*
@@ -78,10 +81,10 @@ public class WikiParser {
    */
   private WikiArticle processArticle(WikiArticle article) {
     /*
-     * (1) blocks is a map of contents of sections keyed by their header. The section in the first
-     * position is the #Abstract.
+     * (1) sections is a map of contents of sections keyed by their header. The section in the
+     * first position is the #Abstract. The sections are views on the markup of the article.
      */
-    Map<String, String> blocks =
+    Map<String, SectionView> sections =
         Lector.getBlockParser().fragmentArticle(article.getOriginalMarkup());
 
     /* ********************* */
@@ -92,56 +95,47 @@ public class WikiParser {
      * For now: - TABLES - LISTS
      */
     if (Configuration.extractTables())
-      article.setTables(Lector.getBlockParser().extractTables(blocks));
+      article.setTables(Lector.getBlockParser().extractTables(sections));
 
     if (Configuration.extractLists())
-      article.setLists(Lector.getBlockParser().extractLists(blocks));
+      article.setLists(Lector.getBlockParser().extractLists(sections));
 
     /* ********************* */
 
     /*
-     * Remove the noise.
+     * Each section goes through all the steps below before the next one: its text is copied when
+     * the noise is removed and put in the blocks only at the end.
      */
-    for (Map.Entry<String, String> block : blocks.entrySet()) {
-      String blockContent = Lector.getTextParser().fixSomeTemplates(block.getValue()); // we try to
-                                                                                       // fix easy
-                                                                                       // templates
-      blockContent = Lector.getTextParser().removeNoise(blockContent);
+    Map<String, String> blocks = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, SectionView> section : sections.entrySet()) {
+      /*
+       * Remove the noise.
+       */
+      // we try to fix easy templates and we remove the noise
+      String blockContent =
+          Lector.getTextParser().fixTemplatesAndRemoveNoise(section.getValue().toString());
       blockContent = Lector.getTextParser().removeUselessWikilinks(blockContent); // commonsense
                                                                                   // wikilinks
-      blocks.put(block.getKey(), blockContent);
-    }
-    /* ********************* */
+      /*
+       * Harvest all the wikilinks from the WHOLE article, setting the variable in the WikiArticle
+       * object.
+       */
+      if (!Configuration.getOnlyTextWikilinks())
+        blockContent = Lector.getMarkupParser().harvestAllWikilinks(blockContent, article);
 
-    /*
-     * Harvest all the wikilinks from the WHOLE article, setting the variable in the WikiArticle
-     * object.
-     */
-    if (!Configuration.getOnlyTextWikilinks()) {
-      for (Map.Entry<String, String> block : blocks.entrySet()) {
-        blocks.put(block.getKey(),
-            Lector.getMarkupParser().harvestAllWikilinks(block.getValue(), article));
-      }
-    }
-    /* ********************* */
+      /*
+       * Textual cleaning of the articles, essentially from: - lists - tables - infobox - etc.
+       */
+      blockContent = Lector.getTextParser().removeStructuredContents(blockContent);
 
-    /*
-     * Textual cleaning of the articles, essentially from: - lists - tables - infobox - etc.
-     */
-    for (Map.Entry<String, String> block : blocks.entrySet()) {
-      blocks.put(block.getKey(), Lector.getTextParser().removeStructuredContents(block.getValue()));
-    }
-    /* ********************* */
+      /*
+       * Harvest all the wikilinks from the TEXT article, setting the variable in the WikiArticle
+       * object.
+       */
+      if (Configuration.getOnlyTextWikilinks())
+        blockContent = Lector.getMarkupParser().harvestAllWikilinks(blockContent, article);
 
-    /*
-     * Harvest all the wikilinks from the TEXT article, setting the variable in the WikiArticle
-     * object.
-     */
-    if (Configuration.getOnlyTextWikilinks()) {
-      for (Map.Entry<String, String> block : blocks.entrySet()) {
-        blocks.put(block.getKey(),
-            Lector.getMarkupParser().harvestAllWikilinks(block.getValue(), article));
-      }
+      blocks.put(section.getKey(), blockContent);
     }
     /* ********************* */
 
@@ -0,0 +1,522 @@
+package it.uniroma3.main.pipeline.articleparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import it.uniroma3.config.Configuration;
+import it.uniroma3.config.Lector;
+
+/**
+ * A streaming lexer that does in a single scan of a block what the chain of regexes of the
+ * TextParser does in fixSomeTemplates and in the first steps of removeNoise: it resolves the
+ * convert and lang templates and it removes refs, comments, math, galleries, HTML tags, category,
+ * inter-wiki and external links. The clean text is written in a single builder.
+ *
+ * Every construct is recognized with the same rules of the corresponding regex. Since the regexes
+ * are applied one after the other, an external link is scanned on the text they would see, with
+ * the inter-wiki links already replaced by a space and the templates already resolved. Other
+ * overlaps are not emulated, so the results can still differ: the differences are reported by the
+ * "diff" mode of the TextParser and by the main of this class, which compares the two on the
+ * articles of the dump and on random blocks of well-formed constructs.
+ *
+ * @author matteo
+ *
+ */
+public class WikiTextLexer {
+
+  private AtomicInteger checked;
+  private AtomicInteger differences;
+
+  /**
+   *
+   */
+  public WikiTextLexer() {
+    this.checked = new AtomicInteger(0);
+    this.differences = new AtomicInteger(0);
+  }
+
+  /**
+   * Cleans the block, which is expected to be already unescaped.
+   *
+   * @param text
+   * @param categories the category identifiers of the language
+   * @return
+   */
+  public String clean(String text, List<String> categories) {
+    StringBuilder out = new StringBuilder(text.length());
+    // the closing parts of the templates and links whose content is still being scanned
+    Deque<int[]> closings = new ArrayDeque<int[]>();
+    int n = text.length();
+    int i = 0;
+    while (i < n) {
+      if (!closings.isEmpty() && i >= closings.peek()[0]) {
+        i = Math.max(i, closings.pop()[1]);
+        continue;
+      }
+      char c = text.charAt(i);
+      int next = -1;
+      switch (c) {
+        case '{':
+          next = template(text, i, out, closings);
+          break;
+        case '[':
+          next = link(text, i, out, categories, closings);
+          break;
+        case '<':
+          next = tag(text, i);
+          break;
+        case '_':
+          next = text.startsWith("__NOTOC__", i) ? i + 9 : -1;
+          break;
+        default:
+          break;
+      }
+      if (next < 0) {
+        out.append(c);
+        i++;
+      } else {
+        i = next;
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * Resolves the convert and lang templates: the head of the template is skipped, the closing is
+   * registered and the position of the content is returned. Returns -1 for other templates.
+   *
+   * @param text
+   * @param i
+   * @param out
+   * @param closings
+   * @return
+   */
+  private int template(String text, int i, StringBuilder out, Deque<int[]> closings) {
+    if (!text.startsWith("{{", i))
+      return -1;
+    int n = text.length();
+
+    // {{convert|(\d+)|([^|]+)}} and {{convert|(\d+)|([^|]+)|[^}]+}}
+    if (text.startsWith("{{convert|", i)) {
+      int digits = i + 10;
+      int j = digits;
+      while (j < n && text.charAt(j) >= '0' && text.charAt(j) <= '9')
+        j++;
+      if (j > digits && j < n && text.charAt(j) == '|') {
+        int unit = j + 1;
+        int pipe = text.indexOf('|', unit);
+        int end = (pipe < 0) ? n : pipe;
+        int close = text.lastIndexOf("}}", end - 2);
+        if (close > unit) {
+          out.append(text, digits, j).append(' ');
+          closings.push(new int[] {close, close + 2});
+          return unit;
+        }
+        if (pipe > unit) {
+          close = text.indexOf('}', pipe + 1);
+          if (close > pipe + 1 && close + 1 < n && text.charAt(close + 1) == '}') {
+            out.append(text, digits, j).append(' ');
+            closings.push(new int[] {pipe, close + 2});
+            return unit;
+          }
+        }
+      }
+    }
+
+    // {{lang|[^|]+|([^{|]+)}} and {{lang-[^|]+|([^{|]+)}}
+    if (text.regionMatches(true, i, "{{lang|", 0, 7)
+        || text.regionMatches(true, i, "{{lang-", 0, 7)) {
+      int pipe = text.indexOf('|', i + 7);
+      if (pipe > i + 7) {
+        int content = pipe + 1;
+        int end = content;
+        while (end < n && text.charAt(end) != '{' && text.charAt(end) != '|')
+          end++;
+        int close = text.lastIndexOf("}}", end - 2);
+        if (close > content) {
+          closings.push(new int[] {close, close + 2});
+          return content;
+        }
+      }
+    }
+
+    // {{Nihongo|([^|]+)|[^{}]+?}}
+    if (text.regionMatches(true, i, "{{Nihongo|", 0, 10)) {
+      int content = i + 10;
+      int pipe = text.indexOf('|', content);
+      if (pipe > content) {
+        int close = pipe + 1;
+        while (close < n && text.charAt(close) != '{' && text.charAt(close) != '}')
+          close++;
+        if (close > pipe + 1 && close + 1 < n && text.charAt(close) == '}'
+            && text.charAt(close + 1) == '}') {
+          closings.push(new int[] {pipe, close + 2});
+          return content;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Skips inter-wiki links (replaced by a space), category links and external links. Of the
+   * external links with a text only the text is kept. Returns -1 for other links.
+   *
+   * @param text
+   * @param i
+   * @param out
+   * @param categories
+   * @param closings
+   * @return
+   */
+  private int link(String text, int i, StringBuilder out, List<String> categories,
+      Deque<int[]> closings) {
+    int n = text.length();
+    if (text.startsWith("[[", i)) {
+      int end = interWiki(text, i);
+      if (end >= 0) {
+        out.append(' ');
+        return end;
+      }
+      // [[Category:[^\]]*]]
+      for (String keyword : categories) {
+        int name = i + 2 + keyword.length();
+        if (text.startsWith(keyword, i + 2) && name < n && text.charAt(name) == ':') {
+          int k = text.indexOf(']', name + 1);
+          if (k > 0 && k + 1 < n && text.charAt(k + 1) == ']')
+            return k + 2;
+        }
+      }
+      return -1;
+    }
+
+    if (text.startsWith("[http", i)) {
+      // the regexes see the inter-wiki links already replaced by a space and the templates already
+      // resolved: the run of the URL is scanned on that text
+      int j = i + 5;
+      int run = 0;
+      int bracket = -1; // the last ] of the run
+      int[] bracketIn = null; // the closing of the template that contains it
+      int[] template = null; // the closing of the template whose content is being scanned
+      String head = null; // what a template writes after the whitespace that ends the run
+      int content = -1;
+      while (j < n) {
+        if (template != null && j == template[0]) {
+          j = template[1];
+          template = null;
+          continue;
+        }
+        char c = text.charAt(j);
+        if (isWhitespace(c) || (c == '[' && interWiki(text, j) >= 0))
+          break;
+        if (c == '{' && template == null) {
+          StringBuilder written = new StringBuilder();
+          Deque<int[]> closing = new ArrayDeque<int[]>();
+          int start = template(text, j, written, closing);
+          if (start >= 0) {
+            template = closing.peek();
+            int w = 0;
+            while (w < written.length() && !isWhitespace(written.charAt(w)))
+              w++;
+            run += w;
+            if (w < written.length()) {
+              head = written.substring(w);
+              content = start;
+              break;
+            }
+            j = start;
+            continue;
+          }
+        }
+        if (c == ']') {
+          bracket = j;
+          bracketIn = template;
+        }
+        run++;
+        j++;
+      }
+      if (run == 0)
+        return -1;
+      // [http[^\s]+]
+      if (bracket > i + 5) {
+        if (bracketIn != null)
+          closings.push(bracketIn);
+        return bracket + 1;
+      }
+      // [http[^\s]+(\s[^\]]+)]
+      if (j < n) {
+        int after;
+        if (head != null)
+          after = content;
+        else if (isWhitespace(text.charAt(j)))
+          after = j + 1;
+        else
+          after = interWiki(text, j);
+        int k = closingBracket(text, after, template);
+        if (k > after) {
+          int[] link = new int[] {k, k + 1};
+          if (template != null && template[0] < k) {
+            closings.push(link);
+            closings.push(template);
+          } else {
+            if (template != null)
+              closings.push(template);
+            closings.push(link);
+          }
+          if (head == null)
+            return j;
+          out.append(head);
+          return content;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the first ] from the given position that the regexes see, i.e. not in an inter-wiki
+   * link nor in the closing of the template, or -1.
+   *
+   * @param text
+   * @param from
+   * @param template
+   * @return
+   */
+  private static int closingBracket(String text, int from, int[] template) {
+    int n = text.length();
+    for (int k = from; k < n; k++) {
+      if (template != null && k == template[0])
+        k = template[1];
+      if (k >= n)
+        break;
+      int end;
+      if (text.charAt(k) == '[' && (end = interWiki(text, k)) >= 0)
+        k = end - 1;
+      else if (text.charAt(k) == ']')
+        return k;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the end of the inter-wiki link ([[[a-z\-]+:[^|\]]+]]) at i, or -1.
+   *
+   * @param text
+   * @param i
+   * @return
+   */
+  private static int interWiki(String text, int i) {
+    if (!text.startsWith("[[", i))
+      return -1;
+    int n = text.length();
+    int j = i + 2;
+    while (j < n && ((text.charAt(j) >= 'a' && text.charAt(j) <= 'z') || text.charAt(j) == '-'))
+      j++;
+    if (j > i + 2 && j < n && text.charAt(j) == ':') {
+      int k = j + 1;
+      while (k < n && text.charAt(k) != '|' && text.charAt(k) != ']')
+        k++;
+      if (k > j + 1 && k + 1 < n && text.charAt(k) == ']' && text.charAt(k + 1) == ']')
+        return k + 2;
+    }
+    return -1;
+  }
+
+  /**
+   * Skips comments, refs, math, galleries and any other HTML tag. Returns -1 if there is no tag.
+   *
+   * @param text
+   * @param i
+   * @return
+   */
+  private int tag(String text, int i) {
+    int end;
+    if (text.startsWith("<!--", i) && (end = text.indexOf("-->", i + 4)) >= 0)
+      return end + 3;
+    if (text.startsWith("<br", i)) {
+      int j = i + 3;
+      while (j < text.length() && text.charAt(j) == ' ')
+        j++;
+      if (text.startsWith("/>", j))
+        return j + 2;
+    }
+    if ((end = element(text, i, "ref", false)) >= 0)
+      return end;
+    if ((end = element(text, i, "math", false)) >= 0)
+      return end;
+    if ((end = element(text, i, "gallery", true)) >= 0)
+      return end;
+    // <[^>]+>
+    end = text.indexOf('>', i + 1);
+    return (end > i + 1) ? end + 1 : -1;
+  }
+
+  /**
+   * Returns the end of the element with the given name, either self-closing (<name[^/]+/>) or
+   * with its closing tag (<name.*?</name>). Returns -1 if it is not the element.
+   *
+   * @param text
+   * @param i
+   * @param name
+   * @param ignoreCaseClosing
+   * @return
+   */
+  private static int element(String text, int i, String name, boolean ignoreCaseClosing) {
+    if (!text.startsWith(name, i + 1))
+      return -1;
+    int from = i + 1 + name.length();
+    int slash = text.indexOf('/', from);
+    if (slash > from && text.startsWith(">", slash + 1))
+      return slash + 2;
+    String closing = "</" + name + ">";
+    int end = ignoreCaseClosing ? indexOfIgnoreCase(text, closing, from)
+        : text.indexOf(closing, from);
+    return (end < 0) ? -1 : end + closing.length();
+  }
+
+  /**
+   *
+   * @param text
+   * @param s
+   * @param from
+   * @return
+   */
+  private static int indexOfIgnoreCase(String text, String s, int from) {
+    for (int i = from; i <= text.length() - s.length(); i++) {
+      if (text.regionMatches(true, i, s, 0, s.length()))
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * The whitespaces of \s.
+   *
+   * @param c
+   * @return
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  /**
+   * Compares the output of the lexer with the one of the regexes, and prints the first position in
+   * which they differ. Returns true if they are equal.
+   *
+   * @param expected the output of the regexes
+   * @param actual the output of the lexer
+   * @return
+   */
+  public boolean compare(String expected, String actual) {
+    checked.incrementAndGet();
+    if (expected.equals(actual))
+      return true;
+    differences.incrementAndGet();
+    int p = 0;
+    while (p < expected.length() && p < actual.length() && expected.charAt(p) == actual.charAt(p))
+      p++;
+    System.out.printf("\t%-30s %s\n", "Lexer differs at char " + p + ":",
+        "regex \"" + excerpt(expected, p) + "\", lexer \"" + excerpt(actual, p) + "\"");
+    return false;
+  }
+
+  /**
+   *
+   * @param s
+   * @param p
+   * @return
+   */
+  private static String excerpt(String s, int p) {
+    return s.substring(Math.max(0, p - 20), Math.min(s.length(), p + 40)).replace("\n", "\\n");
+  }
+
+  /**
+   *
+   * @return
+   */
+  public int getChecked() {
+    return checked.get();
+  }
+
+  /**
+   *
+   * @return
+   */
+  public int getDifferences() {
+    return differences.get();
+  }
+
+  /**
+   * Differential check of the lexer against the regexes, on the blocks of the given articles (XML
+   * pages, by default the ones in src/test/resources), and on random blocks of well-formed
+   * constructs, the ones that follow an external link first. It also prints the time of both.
+   *
+   * @param args
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    Configuration.init(new String[0]);
+    Configuration.updateParameter("language", "en");
+    Configuration.updateParameter("dataFile", "/Users/matteo/Desktop/data_small");
+    Lector.init("AP");
+
+    File[] files = Arrays.stream(args).map(File::new).toArray(File[]::new);
+    if (files.length == 0)
+      files = new File("src/test/resources").listFiles((dir, name) -> name.endsWith(".xml"));
+    TextParser textParser = Lector.getTextParser();
+    XMLParser xmlParser = Lector.getXmlParser();
+    WikiTextLexer lexer = new WikiTextLexer();
+    long regexTime = 0;
+    long lexerTime = 0;
+    for (File file : files) {
+      String page = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+      String wikid = xmlParser.extractsWikid(page);
+      Map<String, SectionView> blocks =
+          Lector.getBlockParser().fragmentArticle(xmlParser.getWikiMarkup(page));
+      int before = lexer.getDifferences();
+      for (SectionView section : blocks.values()) {
+        String block = section.toString();
+        long start = System.nanoTime();
+        String expected = textParser.removeNoise(textParser.fixSomeTemplates(block));
+        regexTime += System.nanoTime() - start;
+        start = System.nanoTime();
+        String actual = textParser.lexNoise(block);
+        lexerTime += System.nanoTime() - start;
+        lexer.compare(expected, actual);
+      }
+      System.out.printf("\t%-30s %s\n", wikid + ":", blocks.size() + " blocks, "
+          + (lexer.getDifferences() - before) + " differences");
+    }
+    System.out.printf("\t%-30s %d of %d\n", "Blocks that differ:", lexer.getDifferences(),
+        lexer.getChecked());
+
+    String[] constructs = {"Hello", "Paris", " ", "\n", "[http://a.b]", "[http://a.b text]",
+        "[http://a.b/c?d=e]", "{{convert|5|mi|km}}", "{{convert|12|km|mi|abbr=on}}",
+        "{{lang|fr|Bonjour}}", "{{lang-fr|la Seine}}", "{{Nihongo|Tokyo|東京}}", "[[fr:Paris]]",
+        "[[Paris]]", "[[Paris|the city]]", "<ref>a note</ref>", "<ref name=x/>", "<br/>",
+        "<!-- comment -->", "<b>bold</b>", "[[Category:Cities]]", "''", "(1990)", "."};
+    WikiTextLexer fuzz = new WikiTextLexer();
+    Random random = new Random(42);
+    for (int b = 0; b < 100000; b++) {
+      StringBuilder block = new StringBuilder(constructs[4 + random.nextInt(3)]);
+      for (int c = random.nextInt(6); c >= 0; c--)
+        block.append(constructs[random.nextInt(constructs.length)]);
+      String expected = textParser.removeNoise(textParser.fixSomeTemplates(block.toString()));
+      fuzz.compare(expected, textParser.lexNoise(block.toString()));
+    }
+    System.out.printf("\t%-30s %d of %d\n", "Random blocks that differ:", fuzz.getDifferences(),
+        fuzz.getChecked());
+    System.out.printf("\t%-30s %.1f ms\n", "Regex chain:", regexTime / 1e6);
+    System.out.printf("\t%-30s %.1f ms\n", "Lexer:", lexerTime / 1e6);
+    Lector.close();
+  }
+
+}
@@ -25,6 +25,29 @@ public class XMLParser {
     return getFieldFromXmlPage(page, "title").replaceAll(" ", "_");
   }
 
+  /**
+   * It extracts the id of the revision of the page, i.e. the field "id" inside "revision".
+   * 
+   * @param page
+   * @return
+   */
+  public String extractsRevision(String page) {
+    int revision = page.indexOf("<revision>");
+    if (revision == -1)
+      return "";
+    return getFieldFromXmlPage(page, "id", revision);
+  }
+
+  /**
+   * It extracts the sha1 of the text of the revision, from the field "sha1" in the xml.
+   * 
+   * @param page
+   * @return
+   */
+  public String extractsSha1(String page) {
+    return getFieldFromXmlPage(page, "sha1");
+  }
+
   /**
    * Parse the XML and returns the content of the field given as a parameter. E.g. <title> content
    * </title>, <id> content </id>, <ns> content </ns>
@@ -34,10 +57,22 @@ public class XMLParser {
    * @return
    */
   public String getFieldFromXmlPage(String content, String field) {
+    return getFieldFromXmlPage(content, field, 0);
+  }
+
+  /**
+   * Same as above, looking for the field after the given position.
+   * 
+   * @param content
+   * @param field
+   * @param from
+   * @return
+   */
+  private String getFieldFromXmlPage(String content, String field, int from) {
     String XML_START_TAG_FIELD = "<" + field + ">";
     String XML_END_TAG_FIELD = "</" + field + ">";
-    int start = content.indexOf(XML_START_TAG_FIELD);
-    int end = content.indexOf(XML_END_TAG_FIELD);
+    int start = content.indexOf(XML_START_TAG_FIELD, from);
+    int end = content.indexOf(XML_END_TAG_FIELD, from);
     if (start == -1 || end == -1 || start + XML_START_TAG_FIELD.length() > end) {
       logger.error("Field " + field + " not available the article.");
       return "";
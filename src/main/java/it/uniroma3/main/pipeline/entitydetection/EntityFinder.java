@@ -34,6 +34,50 @@ public class EntityFinder {
     return Lector.getFsm().findSeed(article.getFirstSentence());
   }
 
+  /**
+   * Finds the seeds of the articles all together, tagging their first sentences in a batch. The
+   * first sentences are stored in the articles. An article whose first sentence can not be found
+   * is left out of the batch, and if the batch fails all the seeds are left: in both cases they
+   * are found one article at a time in increaseEvidence.
+   * 
+   * @param articles
+   */
+  public void findSeeds(List<WikiArticle> articles) {
+    List<WikiArticle> withSentence = new ArrayList<WikiArticle>(articles.size());
+    List<String> sentences = new ArrayList<String>(articles.size());
+    for (WikiArticle article : articles) {
+      try {
+        article.setFirstSentence(obtainFirstSentence(article));
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+        article.setFirstSentence(null);
+        continue;
+      }
+      if (!article.getFirstSentence().equals("-")) {
+        withSentence.add(article);
+        sentences.add(article.getFirstSentence());
+      }
+    }
+    try {
+      List<List<String>> seeds = Lector.getFsm().findSeeds(sentences);
+      for (int i = 0; i < withSentence.size(); i++)
+        withSentence.get(i).setSeeds(seeds.get(i));
+    } catch (RuntimeException | StackOverflowError e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * The first clean sentence of the article.
+   * 
+   * @param article
+   * @return
+   */
+  private String obtainFirstSentence(WikiArticle article) {
+    return Lector.getTextParser().obtainCleanFirstSentence(
+        Lector.getBlockParser().getAbstractSection(article.getBlocks()));
+  }
+
   /**
    * Run a simple nationality-detector on the first sentence.
    * 
@@ -55,35 +99,14 @@ public class EntityFinder {
    * @return
    */
   private String findPronoun(WikiArticle article, double THRESHOLD) {
-    Multiset<String> pronounsStatsTmp = TreeMultiset.create();
     Multiset<String> pronounsStats = TreeMultiset.create();
     List<String> possiblePronouns =
         Arrays.asList("He", "She", "It", "They", "His", "Her", "Their", "Its");
 
     /*
-     * for each pronoun in the list, create a specific pattern to use
-     */
-    Map<String, List<String>> regexesPronouns =
-        new HashMap<String, List<String>>(possiblePronouns.size() * 2);
-    for (String pronoun : possiblePronouns) {
-      List<String> regexes = new ArrayList<String>(2);
-      if (!pronoun.equals("It"))
-        regexes.add("(?<=, )(?<!<[A-Z-]<)\\b" + pronoun.toLowerCase() + "\\b(?![^<]*?>>)");
-      regexes.add("(?<=\\. |\\n)(?<!<[A-Z-]<)\\b" + pronoun + "\\b(?![^<]*?>>)");
-      regexesPronouns.put(pronoun, regexes);
-    }
-
-    /*
-     * collect the stats of the pronouns from each sentence of the article, using the patterns
-     * created above. While there is a match with that specific regex add the pronoun in the stats.
+     * collect the stats of the pronouns from the whole article, with a single scan of its words
      */
-    for (Map.Entry<String, List<String>> regexes : regexesPronouns.entrySet()) {
-      for (String pattern : regexes.getValue()) {
-        Matcher m = Pattern.compile(pattern).matcher(article.getWholeText());
-        while (m.find())
-          pronounsStatsTmp.add(regexes.getKey());
-      }
-    }
+    Multiset<String> pronounsStatsTmp = countPronouns(article.getWholeText(), possiblePronouns);
 
     /*
      * group the stats of the pronouns by personal and impersonal pronouns and use reinforcements to
@@ -148,6 +171,78 @@ public class EntityFinder {
   }
 
   /**
+   * Counts the pronouns of the text with a single scan of its words. A pronoun is counted in lower
+   * case after a comma (except "it"), and capitalized at the beginning of a sentence or of a line.
+   * It is not counted if it is inside an entity (<<..>>).
+   * 
+   * @param text
+   * @param possiblePronouns
+   * @return
+   */
+  static Multiset<String> countPronouns(String text, List<String> possiblePronouns) {
+    Multiset<String> pronounsStats = TreeMultiset.create();
+    Map<String, String> forms = new HashMap<String, String>(possiblePronouns.size() * 2);
+    for (String pronoun : possiblePronouns) {
+      if (!pronoun.equals("It"))
+        forms.put(pronoun.toLowerCase(), pronoun);
+      forms.put(pronoun, pronoun);
+    }
+    int nextOpen = 0; // next '<' after the current word, or -1
+    int nextClose = 0; // next ">>" after the current word, or -1
+    int start = 0;
+    while (start < text.length()) {
+      if (!isWordChar(text.charAt(start)) || (start > 0 && isWordChar(text.charAt(start - 1)))) {
+        start++;
+        continue;
+      }
+      int end = start;
+      while (end < text.length() && isWordChar(text.charAt(end)))
+        end++;
+      String pronoun = forms.get(text.substring(start, end));
+      if (pronoun != null && followsPronounContext(text, start, pronoun)) {
+        if (nextOpen != -1 && nextOpen < end)
+          nextOpen = text.indexOf('<', end);
+        if (nextClose != -1 && nextClose < end)
+          nextClose = text.indexOf(">>", end);
+        boolean insideEntity = nextClose != -1 && (nextOpen == -1 || nextClose < nextOpen);
+        if (!insideEntity)
+          pronounsStats.add(pronoun);
+      }
+      start = end;
+    }
+    return pronounsStats;
+  }
+
+  /**
+   * Returns true if the word at the given position is preceded by the context of the pronoun: a
+   * comma for the lower case form, the end of a sentence or a new line for the capitalized one.
+   * 
+   * @param text
+   * @param start
+   * @param pronoun
+   * @return
+   */
+  private static boolean followsPronounContext(String text, int start, String pronoun) {
+    if (text.startsWith(pronoun, start))
+      return (start >= 1 && text.charAt(start - 1) == '\n')
+          || (start >= 2 && text.startsWith(". ", start - 2));
+    return start >= 2 && text.startsWith(", ", start - 2);
+  }
+
+  /**
+   * Same characters of the \\b of the regexes.
+   * 
+   * @param c
+   * @return
+   */
+  private static boolean isWordChar(char c) {
+    return c == '_' || Character.isLetterOrDigit(c);
+  }
+
+  /**
+   * For each sentence and each name (title and aliases), it adds to the stats the longest
+   * sequences of words that they have in common. The words are mapped to integers once, and each
+   * sentence is walked once for all the names.
    * 
    * @param article
    * @return
@@ -157,12 +252,23 @@ public class EntityFinder {
     List<String> names = new ArrayList<String>();
     names.add(article.getTitle());
     names.addAll(article.getAliases());
+
+    Map<String, Integer> vocabulary = new HashMap<String, Integer>();
+    List<String[]> nameWords = new ArrayList<String[]>(names.size());
+    List<int[]> nameIds = new ArrayList<int[]>(names.size());
+    for (String wholeName : names) {
+      wholeName = wholeName.replaceAll("(\\s|_)?'*(\\([^\\(]*?\\))'*", "");
+      nameWords.add(wholeName.split("\\s"));
+      nameIds.add(toIds(wholeName.toLowerCase().split("\\s"), vocabulary));
+    }
+
     for (Map.Entry<String, String> block : article.getBlocks().entrySet()) {
       for (String sentence : block.getValue().split("(\\.\\s|\\.\\n)")) {
-        for (String wholeName : names) {
-          wholeName = wholeName.replaceAll("(\\s|_)?'*(\\([^\\(]*?\\))'*", "");
+        int[] sentenceIds = toIds(sentence.toLowerCase().split("\\s"), vocabulary);
+        for (int n = 0; n < names.size(); n++) {
           // update stats with subsequences
-          for (String lcs : longestCommonSubstrings(wholeName, sentence)) {
+          for (String lcs : longestCommonSubstrings(nameIds.get(n), nameWords.get(n),
+              sentenceIds)) {
             // we consider only substrings with at least one capital letter
             if (!lcs.toLowerCase().equals(lcs))
               subnamesStats.add(lcs);
@@ -175,35 +281,53 @@ public class EntityFinder {
 
   /**
    * 
-   * @param s
-   * @param t
+   * @param words
+   * @param vocabulary
    * @return
    */
-  private Set<String> longestCommonSubstrings(String s, String t) {
-    String[] sAr = s.toLowerCase().split("\\s");
-    String[] tAr = t.toLowerCase().split("\\s");
-    int[][] table = new int[sAr.length][tAr.length];
-    int longest = 0;
-    Set<String> result = new HashSet<String>();
+  private static int[] toIds(String[] words, Map<String, Integer> vocabulary) {
+    int[] ids = new int[words.length];
+    for (int i = 0; i < words.length; i++)
+      ids[i] = vocabulary.computeIfAbsent(words[i], w -> vocabulary.size());
+    return ids;
+  }
 
-    for (int i = 0; i < sAr.length; i++) {
-      for (int j = 0; j < tAr.length; j++) {
-        if (!sAr[i].equals(tAr[j])) {
+  /**
+   * Returns the longest sequences of words of the name (with their case) that are also in the
+   * sentence. The sentence is walked once, keeping for each word of the name the length of the
+   * common sequence that ends there.
+   * 
+   * @param name the ids of the lower case words of the name
+   * @param nameWords the words of the name
+   * @param sentence the ids of the lower case words of the sentence
+   * @return
+   */
+  private static Set<String> longestCommonSubstrings(int[] name, String[] nameWords,
+      int[] sentence) {
+    int[] run = new int[name.length];
+    int longest = 0;
+    Set<Integer> ends = new HashSet<Integer>();
+    for (int j = 0; j < sentence.length; j++) {
+      for (int i = name.length - 1; i >= 0; i--) {
+        if (name[i] != sentence[j]) {
+          run[i] = 0;
           continue;
         }
-        table[i][j] = (i == 0 || j == 0) ? 1 : 1 + table[i - 1][j - 1];
-        if (table[i][j] > longest) {
-          longest = table[i][j];
-          result.clear();
+        run[i] = (i == 0 || j == 0) ? 1 : 1 + run[i - 1];
+        if (run[i] > longest) {
+          longest = run[i];
+          ends.clear();
         }
-        if (table[i][j] == longest)
-          result.add(String.join(" ", Arrays.copyOfRange(s.split("\\s"), i - longest + 1, i + 1)));
+        if (run[i] == longest)
+          ends.add(i);
       }
     }
+    Set<String> result = new HashSet<String>();
+    for (int end : ends)
+      result.add(String.join(" ", Arrays.copyOfRange(nameWords, end - longest + 1, end + 1)));
     return result;
   }
 
-
   /**
    * 
    * @param wikid
@@ -244,16 +368,16 @@ public class EntityFinder {
        * Store the first clean sentence of the article and clean it, in order to extract seed types
        * and run NLP tools.
        */
-      String firstSentence = Lector.getTextParser().obtainCleanFirstSentence(
-          Lector.getBlockParser().getAbstractSection(article.getBlocks()));
-      article.setFirstSentence(firstSentence);
+      if (article.getFirstSentence() == null)
+        article.setFirstSentence(obtainFirstSentence(article));
       article.setNationality(findNationality(article));
 
       /*
-       * Pronouns and seeds are used only in ENGLISH.
+       * Pronouns and seeds are used only in ENGLISH. The seeds may have been found already, with
+       * the ones of the other articles of the chunk.
        */
       if (Lector.getWikiLang().getLang().equals(Lang.en)) {
-        if (!article.getFirstSentence().equals("-"))
+        if (!article.getFirstSentence().equals("-") && article.getSeeds() == null)
           article.setSeeds(findSeeds(article));
         article.setPronoun(findPronoun(article, Configuration.getPronounThreshold()));
       }
@@ -1,18 +1,30 @@
 package it.uniroma3.main.pipeline.entitydetection;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import it.uniroma3.config.Configuration;
 import it.uniroma3.config.Lector;
+import it.uniroma3.main.bean.AnnotatedText;
 import it.uniroma3.main.bean.WikiArticle;
+import it.uniroma3.main.pipeline.watchdog.BudgetExceededException;
+import it.uniroma3.main.pipeline.watchdog.InterruptibleCharSequence;
+import it.uniroma3.main.util.AhoCorasick;
 import it.uniroma3.main.util.Pair;
-import it.uniroma3.main.util.nlp.StupidNLP;
 
 /**
  * 
@@ -21,6 +33,23 @@ import it.uniroma3.main.util.nlp.StupidNLP;
  */
 public class EntityReplacement {
 
+  private boolean prefilter;
+
+  /**
+   * 
+   */
+  public EntityReplacement() {
+    this(true);
+  }
+
+  /**
+   * 
+   * @param prefilter if false, every regex is run on every block
+   */
+  public EntityReplacement(boolean prefilter) {
+    this.prefilter = prefilter;
+  }
+
   /**
    * To match a name it has to be in a sentence surrounded by two boarders (\\b) that are not square
    * bracket, _ or pipe | (which are terms that are inside a wiki-link).
@@ -168,11 +197,10 @@ public class EntityReplacement {
    * @throws Exception
    */
   private static String applyRegex(WikiArticle article, String sentence, String replacement,
-      String pattern) throws Exception {
+      Pattern pattern) throws Exception {
     StringBuffer tmp = new StringBuffer();
     try {
-      Pattern p = Pattern.compile(pattern);
-      Matcher m = p.matcher(sentence);
+      Matcher m = pattern.matcher(new InterruptibleCharSequence(sentence));
       while (m.find()) {
         // we attached the part of text before the entities (m.group(1)) and then the entity
         // replaced.
@@ -180,6 +208,8 @@ public class EntityReplacement {
             Matcher.quoteReplacement(m.group(1)) + Matcher.quoteReplacement(replacement));
       }
       m.appendTail(tmp);
+    } catch (BudgetExceededException e) {
+      throw e;
     } catch (Exception e) {
       e.printStackTrace();
       throw new Exception();
@@ -187,6 +217,24 @@ public class EntityReplacement {
     return tmp.toString();
   }
 
+  /**
+   * Returns the name quoted in the regex, or null if it can not be used to skip the regex (the
+   * regex does not quote exactly one name, or the name could match across an entity already
+   * replaced).
+   * 
+   * @param regex
+   * @return
+   */
+  private static String getQuotedName(String regex) {
+    int start = regex.indexOf("\\Q");
+    int end = regex.indexOf("\\E", start + 2);
+    if (start < 0 || end < 0 || regex.indexOf("\\Q", end) >= 0)
+      return null;
+    String name = regex.substring(start + 2, end);
+    if (name.isEmpty() || name.indexOf('<') >= 0 || name.indexOf('>') >= 0)
+      return null;
+    return name;
+  }
 
   /**
    * 
@@ -233,18 +281,43 @@ public class EntityReplacement {
       Collections.sort(regex2entity, new PatternComparator());
 
       /*
-       * Run everything!
+       * Compile them once, and collect the names in an automaton. A regex can match only if its
+       * name is in the block before any replacement (the replaced entities are not matched again),
+       * so the names in the block are found with a single scan and the other regexes are skipped.
        */
-      for (Map.Entry<String, String> block : article.getBlocks().entrySet()) {
-        for (Pair<String, String> regex : regex2entity) {
+      List<Pattern> patterns = new ArrayList<Pattern>(regex2entity.size());
+      int[] nameOf = new int[regex2entity.size()];
+      Map<String, Integer> names = new HashMap<String, Integer>();
+      for (int r = 0; r < regex2entity.size(); r++) {
+        patterns.add(Pattern.compile(regex2entity.get(r).key));
+        String name = prefilter ? getQuotedName(regex2entity.get(r).key) : null;
+        nameOf[r] = (name == null) ? -1 : names.computeIfAbsent(name, n -> names.size());
+      }
+      String[] keywords = new String[names.size()];
+      for (Map.Entry<String, Integer> name : names.entrySet())
+        keywords[name.getValue()] = name.getKey();
+      AhoCorasick automaton = new AhoCorasick(Arrays.asList(keywords));
+
+      /*
+       * Run everything! The blocks of a very long article are shared among the threads of the
+       * fan out, and their results are put back in the order of the blocks.
+       */
+      Function<Map.Entry<String, String>, Pair<String, List<AnnotatedText>>> replace = block -> {
+        String text = block.getValue();
+        BitSet inBlock = automaton.search(text);
+        for (int r = 0; r < regex2entity.size(); r++) {
+          if (nameOf[r] >= 0 && !inBlock.get(nameOf[r]))
+            continue;
+          Pair<String, String> regex = regex2entity.get(r);
           try {
 
-            article.getBlocks().put(block.getKey(),
-                applyRegex(article, block.getValue(), regex.value, regex.key));
+            text = applyRegex(article, text, regex.value, patterns.get(r));
 
+          } catch (BudgetExceededException e) {
+            throw e;
           } catch (Exception e) {
             System.out.println("Exception in:	" + article.getWikid());
-            System.out.println("Sentence:	" + block.getValue());
+            System.out.println("Sentence:	" + text);
             System.out.println("occurred for entity:	" + regex.value);
             System.out.println("using the regex:	" + regex.key);
             System.out.println("--------------------------------------------------");
@@ -257,16 +330,36 @@ public class EntityReplacement {
          * missing entities and split the sentences inside that method, otherwise split the
          * sentences only.
          */
-        if (Configuration.useDBpediaSpotlight())
-          article.getSentences().put(block.getKey(),
-              Lector.getDBSpot().annotateText(block.getValue(), article.getWikid()));
-        else
-          article.getSentences().put(block.getKey(), StupidNLP.splitInSentence(block.getValue()));
-        // article.getSentences().put(block.getKey(),
-        // Lector.getNLPExpert().processBlock(block.getValue()));
-
+        if (Configuration.useDBpediaSpotlight()) {
+          List<AnnotatedText> sentences = new ArrayList<AnnotatedText>();
+          for (String sentence : Lector.annotateWithSpotlight(text, article.getWikid()))
+            sentences.add(AnnotatedText.parse(sentence));
+          return Pair.make(text, sentences);
+        }
+        // Lector.getNLPExpert().processBlock(text)
+        return Pair.make(text,
+            Lector.getSentenceSplitter().splitInSentence(AnnotatedText.parse(text)));
+      };
 
+      List<Map.Entry<String, String>> blocks =
+          new ArrayList<Map.Entry<String, String>>(article.getBlocks().entrySet());
+      int chars = 0;
+      for (Map.Entry<String, String> block : blocks)
+        chars += block.getValue().length();
+      List<Pair<String, List<AnnotatedText>>> replaced;
+      if (Lector.getFanOut().isLarge(chars)) {
+        replaced = Lector.getFanOut().map(blocks, block -> block.getValue().length(), replace);
+      } else {
+        replaced = new ArrayList<Pair<String, List<AnnotatedText>>>(blocks.size());
+        for (Map.Entry<String, String> block : blocks)
+          replaced.add(replace.apply(block));
+      }
+      for (int b = 0; b < blocks.size(); b++) {
+        article.getBlocks().put(blocks.get(b).getKey(), replaced.get(b).key);
+        article.getSentences().put(blocks.get(b).getKey(), replaced.get(b).value);
       }
+    } catch (BudgetExceededException e) {
+      throw e;
     } catch (Exception e) {
       e.printStackTrace();
       System.out.println(
@@ -276,4 +369,59 @@ public class EntityReplacement {
     return article;
 
   }
+
+  /**
+   * Benchmark of the entity replacement with and without the automaton, on the articles given as
+   * XML pages (by default the ones in src/test/resources). It checks that the blocks are the same.
+   * 
+   * @param args
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    Configuration.init(new String[0]);
+    Configuration.updateParameter("language", "en");
+    Configuration.updateParameter("dataFile", "/Users/matteo/Desktop/data_small");
+    Lector.init("AP-ED");
+    Lector.bindEDComponents();
+    int rounds = 20;
+
+    File[] files = Arrays.stream(args).map(File::new).toArray(File[]::new);
+    if (files.length == 0)
+      files = new File("src/test/resources").listFiles((dir, name) -> name.endsWith(".xml"));
+    EntityReplacement regexes = new EntityReplacement(false);
+    EntityReplacement automaton = new EntityReplacement(true);
+    long regexTime = 0;
+    long automatonTime = 0;
+    for (File file : files) {
+      String page = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+      WikiArticle article = Lector.getWikiParser().createArticleFromXml(page);
+      Lector.getEntitiesFinder().increaseEvidence(article);
+      Map<String, String> blocks = new LinkedHashMap<String, String>(article.getBlocks());
+
+      Map<String, String> expected = null;
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        article.getBlocks().putAll(blocks);
+        expected = new LinkedHashMap<String, String>(regexes.augmentEvidence(article).getBlocks());
+      }
+      long regex = System.nanoTime() - start;
+      Map<String, String> actual = null;
+      start = System.nanoTime();
+      for (int i = 0; i < rounds; i++) {
+        article.getBlocks().putAll(blocks);
+        actual = new LinkedHashMap<String, String>(automaton.augmentEvidence(article).getBlocks());
+      }
+      long automata = System.nanoTime() - start;
+      regexTime += regex;
+      automatonTime += automata;
+      System.out.printf("\t%-30s %s\n", article.getWikid() + ":",
+          String.format("%.2f ms regexes, %.2f ms automaton, %s", regex / 1e6 / rounds,
+              automata / 1e6 / rounds, expected.equals(actual) ? "same blocks" : "DIFFERENT"));
+    }
+    System.out.printf("\t%-30s %.2f ms\n", "Regexes (per round):", regexTime / 1e6 / rounds);
+    System.out.printf("\t%-30s %.2f ms\n", "Automaton (per round):",
+        automatonTime / 1e6 / rounds);
+    Lector.releaseEDComponents();
+    Lector.close();
+  }
 }
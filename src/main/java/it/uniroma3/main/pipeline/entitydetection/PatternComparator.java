@@ -12,6 +12,8 @@ import it.uniroma3.main.util.Pair;
  */
 public class PatternComparator implements Comparator<Pair<String, String>> {
 
+  private static final Pattern REGEXCONTENT = Pattern.compile("^.*\\Q(.+)\\E.*$");
+
   @Override
   public int compare(Pair<String, String> p1, Pair<String, String> p2) {
     String o1 = normalizePattern(p1.key);
@@ -30,7 +32,6 @@ public class PatternComparator implements Comparator<Pair<String, String>> {
    * @return
    */
   public String normalizePattern(String regex) {
-    Pattern REGEXCONTENT = Pattern.compile("^.*\\Q(.+)\\E.*$");
     Matcher m = REGEXCONTENT.matcher(regex);
     if (m.find()) {
       if (m.group(1) != null)
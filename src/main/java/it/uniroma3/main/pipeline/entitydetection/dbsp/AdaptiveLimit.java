@@ -0,0 +1,82 @@
+package it.uniroma3.main.pipeline.entitydetection.dbsp;
+
+/**
+ * Caps the requests in flight to DBPedia Spotlight with a limit that adapts to the server
+ * (additive increase, multiplicative decrease): the limit grows by one after a window of limit
+ * requests that went well, and is halved when a request fails or when the server slows down,
+ * i.e. its time per char becomes more than twice the average of the last requests.
+ *
+ * @author matteo
+ *
+ */
+public class AdaptiveLimit {
+
+  /* the smaller requests are charged as this size, since their fixed cost dominates */
+  private static final int MIN_CHARS = 1000;
+  /* weight of the last request in the average, and requests needed before trusting it */
+  private static final double WEIGHT = 0.1;
+  private static final int WARMUP = 10;
+
+  private final int max;
+  private int limit;
+  private int inFlight;
+  private int successes;
+  private int samples;
+  private double averageNanosPerChar;
+
+  /**
+   *
+   * @param initial
+   * @param max
+   */
+  public AdaptiveLimit(int initial, int max) {
+    this.max = Math.max(1, max);
+    this.limit = Math.max(1, Math.min(initial, this.max));
+  }
+
+  /**
+   * Waits until a request can be sent.
+   *
+   * @throws InterruptedException
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while (inFlight >= limit)
+      wait();
+    inFlight++;
+  }
+
+  /**
+   * Releases the request, with its outcome.
+   *
+   * @param success
+   * @param nanos time of the request
+   * @param chars size of the request
+   */
+  public synchronized void release(boolean success, long nanos, int chars) {
+    inFlight--;
+    double nanosPerChar = (double) nanos / Math.max(MIN_CHARS, chars);
+    boolean slower = samples >= WARMUP && nanosPerChar > 2 * averageNanosPerChar;
+    if (success) {
+      samples++;
+      averageNanosPerChar = (samples == 1) ? nanosPerChar
+          : (1 - WEIGHT) * averageNanosPerChar + WEIGHT * nanosPerChar;
+    }
+    if (!success || slower) {
+      limit = Math.max(1, limit / 2);
+      successes = 0;
+    } else if (++successes >= limit) {
+      limit = Math.min(max, limit + 1);
+      successes = 0;
+    }
+    notifyAll();
+  }
+
+  /**
+   *
+   * @return
+   */
+  public synchronized int getLimit() {
+    return limit;
+  }
+
+}
@@ -17,6 +17,9 @@ public class Annotation {
   @SerializedName("@@similarityScore")
   private double similarityScore;
 
+  @SerializedName("@offset")
+  private int offset;
+
   /**
    * @return the uri
    */
@@ -73,6 +76,20 @@ public class Annotation {
     this.similarityScore = similarityScore;
   }
 
+  /**
+   * @return the offset of the surface form in the text that was annotated
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * @param offset the offset to set
+   */
+  public void setOffset(int offset) {
+    this.offset = offset;
+  }
+
   /**
    * 
    */
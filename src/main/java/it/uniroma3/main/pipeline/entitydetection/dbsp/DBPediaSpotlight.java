@@ -1,46 +1,31 @@
 package it.uniroma3.main.pipeline.entitydetection.dbsp;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
-import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpStatus;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.lang3.StringUtils;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonSyntaxException;
 import it.uniroma3.config.Configuration;
+import it.uniroma3.config.Lector;
 import it.uniroma3.main.pipeline.entitydetection.PatternComparator;
 import it.uniroma3.main.pipeline.entitydetection.EntityReplacement;
 import it.uniroma3.main.util.Pair;
 import it.uniroma3.main.util.inout.TSVReader;
-import it.uniroma3.main.util.nlp.StupidNLP;
 
 /**
+ * Annotates the sentences of a block with the entities found by DBPedia Spotlight. The requests
+ * are made by the (shared) SpotlightClient, all the sentences of the block at once.
+ * 
  * @author matteo
  */
 public class DBPediaSpotlight {
 
-  private HttpClient client;
-  private double confidence;
-  private int support;
+  private SpotlightClient client;
 
   private Set<String> blacklist_wikilinks; // this is a list of all the wikilinks that we do not
                                            // want to highlight as entities
@@ -49,13 +34,10 @@ public class DBPediaSpotlight {
 
 
   /**
-   * @param confidence
-   * @param support
+   * @param client
    */
-  public DBPediaSpotlight(double confidence, int support) {
-    this.confidence = confidence;
-    this.support = support;
-    client = new HttpClient(new MultiThreadedHttpConnectionManager());
+  public DBPediaSpotlight(SpotlightClient client) {
+    this.client = client;
 
     this.blacklist_wikilinks = new HashSet<String>();
     this.blacklist_wikilinks
@@ -67,87 +49,30 @@ public class DBPediaSpotlight {
   }
 
   /**
-   * Creates the request to the DBPediaSpotlight service.
-   *
-   * @param text
-   * @return
+   * @return the client
    */
-  private JsonObject getAnnotatedText(String text) {
-    JsonObject response = null; // Read the response body.
-    GetMethod getMethod = null;
-    // we do not want to process long sentences.
-    if (text.length() < 600) {
-      try {
-        getMethod = new GetMethod(Configuration.getSpotlightLocalURL() + "/annotate/?"
-            + "confidence=" + this.confidence + "&support=" + this.support + "&text="
-            + URLEncoder.encode(stripNonValidXMLCharacters(text), "utf-8"));
-
-        getMethod.addRequestHeader(new Header("Accept", "application/json"));
-        getMethod.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
-            new DefaultHttpMethodRetryHandler(3, false));
-
-        // Execute the method.
-        int statusCode = client.executeMethod(getMethod);
-        if (statusCode == HttpStatus.SC_OK) {
-          InputStream responseBody = getMethod.getResponseBodyAsStream();
-          response = new JsonParser().parse(new InputStreamReader(responseBody)).getAsJsonObject();
-        }
-
-      } catch (IOException e) {
-        e.printStackTrace();
-      } finally {
-        getMethod.releaseConnection();
-      }
-    }
-    return response;
+  public SpotlightClient getClient() {
+    return client;
   }
 
   /**
-   * This method ensures that the output String has only valid XML unicode characters.
+   * Keeps the annotations that are worth: capitalized (or numbers) and not blacklisted.
    * 
-   * @param inputText
+   * @param annotations
    * @return
    */
-  private static String stripNonValidXMLCharacters(String inputText) {
-    StringBuffer out = new StringBuffer();
-    char c;
-    if (inputText == null || ("".equals(inputText)))
-      return "";
-    for (int i = 0; i < inputText.length(); i++) {
-      c = inputText.charAt(i);
-      if ((c == 0x9) || (c == 0xA) || (c == 0xD) || ((c >= 0x20) && (c <= 0xD7FF))
-          || ((c >= 0xE000) && (c <= 0xFFFD)) || ((c >= 0x10000) && (c <= 0x10FFFF)))
-        out.append(c);
-    }
-    return out.toString();
-  }
-
-  /**
-   * @param input
-   * @return
-   */
-  private List<Annotation> process(String text) {
-    JsonObject response = getAnnotatedText(text);
+  private List<Annotation> filter(List<Annotation> annotations) {
     List<Annotation> annotatedEntities = new ArrayList<Annotation>();
-
-    if (response != null) {
-      JsonArray jarray = response.getAsJsonArray("Resources");
-      Gson gson = new Gson();
-      if (jarray != null)
-        for (JsonElement jres : jarray) {
-          try {
-            Annotation ann = gson.fromJson(jres, Annotation.class);
-            ann.setWikid();
-            if ((Character.isUpperCase(ann.getSurfaceForm().charAt(0))
-                || Character.isDigit(ann.getSurfaceForm().charAt(0)))
-                && !blacklist_wikilinks.contains(ann.getWikid())
-                && !blacklist_names.contains(ann.getSurfaceForm())
-                && !StringUtils.isNumeric(ann.getSurfaceForm())) {
-              annotatedEntities.add(ann);
-            }
-          } catch (JsonSyntaxException e) {
-          }
-        }
+    for (Annotation ann : annotations) {
+      if (ann.getSurfaceForm() == null || ann.getSurfaceForm().isEmpty())
+        continue;
+      if ((Character.isUpperCase(ann.getSurfaceForm().charAt(0))
+          || Character.isDigit(ann.getSurfaceForm().charAt(0)))
+          && !blacklist_wikilinks.contains(ann.getWikid())
+          && !blacklist_names.contains(ann.getSurfaceForm())
+          && !StringUtils.isNumeric(ann.getSurfaceForm())) {
+        annotatedEntities.add(ann);
+      }
     }
     return annotatedEntities;
   }
@@ -156,12 +81,12 @@ public class DBPediaSpotlight {
    * Returns a list of pairs composed by surface form and related entity. Entities are marked with
    * PE or SE based on the input PE given.
    *
-   * @param text
+   * @param found the annotations of Spotlight
    * @param PE
    * @return
    */
-  private List<Pair<String, String>> getAnnotations(String text, String PE) {
-    List<Annotation> annotations = process(text);
+  private List<Pair<String, String>> getAnnotations(List<Annotation> found, String PE) {
+    List<Annotation> annotations = filter(found);
     List<Pair<String, String>> textualAnnotations = new ArrayList<Pair<String, String>>();
     for (Annotation an : annotations) {
       if (an.getWikid().equals(PE))
@@ -227,13 +152,29 @@ public class DBPediaSpotlight {
    * @param block
    * @param PE
    * @return
+   * @throws InterruptedException
+   * @throws ExecutionException
    */
-  public List<String> annotateText(String block, String PE) {
+  public List<String> annotateText(String block, String PE)
+      throws InterruptedException, ExecutionException {
     List<String> sentences = new LinkedList<String>();
 
-    for (String sentence : StupidNLP.splitInSentence(block)) {
-      if (checkIsWorth(sentence)) {
-        List<Pair<String, String>> annotations = getAnnotations(sentence, PE);
+    // the sentences worth to process are sent together
+    List<String> split = Lector.getSentenceSplitter().splitInSentence(block);
+    boolean[] isWorth = new boolean[split.size()];
+    List<String> worth = new ArrayList<String>();
+    for (int i = 0; i < split.size(); i++) {
+      isWorth[i] = checkIsWorth(split.get(i));
+      if (isWorth[i])
+        worth.add(split.get(i));
+    }
+    List<List<Annotation>> found = client.annotate(worth).get();
+
+    int next = 0;
+    for (int i = 0; i < split.size(); i++) {
+      String sentence = split.get(i);
+      if (isWorth[i]) {
+        List<Pair<String, String>> annotations = getAnnotations(found.get(next++), PE);
         List<Pair<String, String>> regex2entity = new ArrayList<Pair<String, String>>();
         for (Pair<String, String> entity : annotations) {
           regex2entity.add(Pair.make(EntityReplacement.createRegexName(entity.key), entity.value));
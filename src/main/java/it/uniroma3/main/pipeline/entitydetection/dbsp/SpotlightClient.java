@@ -0,0 +1,354 @@
+package it.uniroma3.main.pipeline.entitydetection.dbsp;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import it.uniroma3.main.util.NamedThreadFactory;
+
+/**
+ * Asynchronous client of DBPedia Spotlight, shared by all the threads of ED.
+ *
+ * The sentences of a block can be sent in batches: the sentences of a batch are joined in a single
+ * text (up to batchChars chars) and the annotations of the response are dealt back to them by
+ * their offset. Since Spotlight uses the text around a surface form to disambiguate it, the
+ * annotations of a sentence can change with its batch: a batchChars shorter than any sentence
+ * sends one sentence per request. The requests run on the threads of the client, and the requests
+ * in flight are capped by an AdaptiveLimit. The annotations of each request are kept in a bounded
+ * LRU cache, keyed by the hash of its text, since many sentences repeat across the articles. Each
+ * request goes to a server of the SpotlightPool; a request that fails is tried again once, on
+ * another server.
+ *
+ * @author matteo
+ *
+ */
+public class SpotlightClient {
+
+  /* we do not want to process long sentences */
+  private static final int MAX_SENTENCE = 600;
+  /* between the sentences of a batch, so that no surface form spans two sentences */
+  private static final String SEPARATOR = "\n\n";
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private SpotlightPool pool;
+  private double confidence;
+  private int support;
+  private int batchChars;
+
+  private HttpClient client;
+  private ExecutorService requests;
+  private AdaptiveLimit limit;
+  private Cache<HashCode, List<List<Annotation>>> cache;
+
+  private LongAdder sentences;
+  private LongAdder sentSentences;
+  private LongAdder sentRequests;
+  private LongAdder failedRequests;
+
+  /**
+   *
+   * @param url the REST endpoint of Spotlight (e.g. http://localhost:2222/rest)
+   * @param confidence
+   * @param support
+   * @param threads maximum number of requests in flight
+   * @param batchChars
+   * @param cacheSize
+   */
+  public SpotlightClient(String url, double confidence, int support, int threads,
+      int batchChars, int cacheSize) {
+    this(new SpotlightPool(Collections.singletonList(url)), confidence, support, threads,
+        batchChars, cacheSize);
+  }
+
+  /**
+   *
+   * @param pool the servers of Spotlight
+   * @param confidence
+   * @param support
+   * @param threads maximum number of requests in flight
+   * @param batchChars
+   * @param cacheSize
+   */
+  public SpotlightClient(SpotlightPool pool, double confidence, int support, int threads,
+      int batchChars, int cacheSize) {
+    this.pool = pool;
+    this.confidence = confidence;
+    this.support = support;
+    this.batchChars = batchChars;
+    MultiThreadedHttpConnectionManager connections = new MultiThreadedHttpConnectionManager();
+    connections.getParams().setDefaultMaxConnectionsPerHost(threads);
+    connections.getParams().setMaxTotalConnections(threads);
+    this.client = new HttpClient(connections);
+    this.requests = Executors.newFixedThreadPool(threads, new NamedThreadFactory("spotlight"));
+    this.limit = new AdaptiveLimit(Math.max(1, threads / 2), threads);
+    this.cache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+    this.sentences = new LongAdder();
+    this.sentSentences = new LongAdder();
+    this.sentRequests = new LongAdder();
+    this.failedRequests = new LongAdder();
+  }
+
+  /**
+   * Annotates the sentences of a block, returning the annotations of each one (in the same order).
+   * The sentences that are too long are not annotated. The future completes when all the batches
+   * are back.
+   *
+   * @param texts
+   * @return
+   */
+  public CompletableFuture<List<List<Annotation>>> annotate(List<String> texts) {
+    sentences.add(texts.size());
+    List<List<Annotation>> annotations = new ArrayList<List<Annotation>>(texts.size());
+    List<CompletableFuture<Void>> batches = new ArrayList<CompletableFuture<Void>>();
+
+    List<Integer> batch = new ArrayList<Integer>();
+    int chars = 0;
+    for (int i = 0; i < texts.size(); i++) {
+      String text = stripNonValidXMLCharacters(texts.get(i));
+      annotations.add(Collections.<Annotation>emptyList());
+      if (texts.get(i).length() >= MAX_SENTENCE || text.isEmpty())
+        continue;
+      if (!batch.isEmpty() && chars + SEPARATOR.length() + text.length() > batchChars) {
+        batches.add(send(texts, batch, annotations));
+        batch = new ArrayList<Integer>();
+        chars = 0;
+      }
+      batch.add(i);
+      chars += (chars == 0) ? text.length() : SEPARATOR.length() + text.length();
+    }
+    if (!batch.isEmpty())
+      batches.add(send(texts, batch, annotations));
+
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[batches.size()]))
+        .thenApply(done -> annotations);
+  }
+
+  /**
+   * Sends a batch of sentences on the threads of the client, unless the same text is in the cache,
+   * and puts their annotations in the list.
+   *
+   * @param texts
+   * @param batch positions of the sentences of the batch
+   * @param annotations
+   * @return
+   */
+  private CompletableFuture<Void> send(List<String> texts, List<Integer> batch,
+      List<List<Annotation>> annotations) {
+    StringBuilder text = new StringBuilder();
+    int[] starts = new int[batch.size()];
+    for (int b = 0; b < batch.size(); b++) {
+      if (b > 0)
+        text.append(SEPARATOR);
+      starts[b] = text.length();
+      text.append(stripNonValidXMLCharacters(texts.get(batch.get(b))));
+    }
+    HashCode key = HASH.hashString(text, StandardCharsets.UTF_8);
+    List<List<Annotation>> cached = cache.getIfPresent(key);
+    if (cached != null) {
+      put(batch, cached, annotations);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    return CompletableFuture.runAsync(() -> {
+      List<List<Annotation>> found = request(text.toString(), starts);
+      boolean interrupted = Thread.currentThread().isInterrupted();
+      if (found == null && pool.getServers().size() > 1 && !interrupted)
+        found = request(text.toString(), starts);
+      if (found == null)
+        return;
+      sentSentences.add(batch.size());
+      cache.put(key, found);
+      put(batch, found, annotations);
+    }, requests);
+  }
+
+  /**
+   *
+   * @param batch
+   * @param found
+   * @param annotations
+   */
+  private static void put(List<Integer> batch, List<List<Annotation>> found,
+      List<List<Annotation>> annotations) {
+    synchronized (annotations) {
+      for (int b = 0; b < batch.size(); b++)
+        annotations.set(batch.get(b), found.get(b));
+    }
+  }
+
+  /**
+   * Sends the text to Spotlight, and deals its annotations to the sentences that start at the
+   * given offsets. Returns null if the request failed.
+   *
+   * @param text
+   * @param starts
+   * @return
+   */
+  private List<List<Annotation>> request(String text, int[] starts) {
+    try {
+      limit.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    long start = System.nanoTime();
+    boolean success = false;
+    SpotlightPool.Server server = pool.acquire();
+    PostMethod post = new PostMethod(server.getUrl() + "/annotate");
+    try {
+      post.addRequestHeader(new Header("Accept", "application/json"));
+      post.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
+          new DefaultHttpMethodRetryHandler(3, false));
+      post.getParams().setContentCharset("utf-8");
+      post.addParameter("text", text);
+      post.addParameter("confidence", String.valueOf(confidence));
+      post.addParameter("support", String.valueOf(support));
+      sentRequests.increment();
+
+      int statusCode = client.executeMethod(post);
+      if (statusCode != HttpStatus.SC_OK)
+        return null;
+      JsonObject response = new JsonParser()
+          .parse(new InputStreamReader(post.getResponseBodyAsStream(), StandardCharsets.UTF_8))
+          .getAsJsonObject();
+      success = true;
+      return deal(response, starts);
+
+    } catch (IOException | RuntimeException e) {
+      e.printStackTrace();
+      return null;
+    } finally {
+      post.releaseConnection();
+      pool.release(server, success);
+      if (!success)
+        failedRequests.increment();
+      limit.release(success, System.nanoTime() - start, text.length());
+    }
+  }
+
+  /**
+   * Deals the resources of the response to the sentences, by their offset.
+   *
+   * @param response
+   * @param starts
+   * @return
+   */
+  private static List<List<Annotation>> deal(JsonObject response, int[] starts) {
+    List<List<Annotation>> annotations = new ArrayList<List<Annotation>>(starts.length);
+    for (int b = 0; b < starts.length; b++)
+      annotations.add(new ArrayList<Annotation>());
+    JsonArray jarray = response.getAsJsonArray("Resources");
+    if (jarray == null)
+      return annotations;
+    Gson gson = new Gson();
+    for (JsonElement jres : jarray) {
+      try {
+        Annotation ann = gson.fromJson(jres, Annotation.class);
+        ann.setWikid();
+        int sentence = Arrays.binarySearch(starts, ann.getOffset());
+        if (sentence < 0)
+          sentence = -sentence - 2;
+        annotations.get(Math.max(0, sentence)).add(ann);
+      } catch (JsonSyntaxException e) {
+      }
+    }
+    return annotations;
+  }
+
+  /**
+   * This method ensures that the output String has only valid XML unicode characters.
+   *
+   * @param inputText
+   * @return
+   */
+  private static String stripNonValidXMLCharacters(String inputText) {
+    StringBuffer out = new StringBuffer();
+    char c;
+    if (inputText == null || ("".equals(inputText)))
+      return "";
+    for (int i = 0; i < inputText.length(); i++) {
+      c = inputText.charAt(i);
+      if ((c == 0x9) || (c == 0xA) || (c == 0xD) || ((c >= 0x20) && (c <= 0xD7FF))
+          || ((c >= 0xE000) && (c <= 0xFFFD)))
+        out.append(c);
+    }
+    return out.toString();
+  }
+
+  /**
+   *
+   * @return
+   */
+  public SpotlightPool getPool() {
+    return pool;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public double getHitRate() {
+    return cache.stats().hitRate();
+  }
+
+  /**
+   *
+   * @return
+   */
+  public long getRequests() {
+    return sentRequests.sum();
+  }
+
+  /**
+   * Stops the threads of the client.
+   */
+  public void close() {
+    requests.shutdownNow();
+  }
+
+  /**
+   * Prints the requests, the size of the batches and the hit rate of the cache.
+   */
+  public void printStats() {
+    CacheStats stats = cache.stats();
+    System.out.println("\nStats of DBPedia Spotlight");
+    System.out.println("----------------------------------");
+    System.out.printf("\t%-30s %s\n", "Sentences:", sentences.sum());
+    System.out.printf("\t%-30s %s\n", "Requests:", sentRequests.sum());
+    System.out.printf("\t%-30s %s\n", "Failed requests:", failedRequests.sum());
+    System.out.printf("\t%-30s %.2f\n", "Sentences per request:",
+        (double) sentSentences.sum() / Math.max(1, sentRequests.sum()));
+    System.out.printf("\t%-30s %.2f%% (%d hits, %d evicted)\n", "Cache hit rate:",
+        stats.hitRate() * 100, stats.hitCount(), stats.evictionCount());
+    System.out.printf("\t%-30s %s\n", "Requests in flight (limit):", limit.getLimit());
+    pool.printStats();
+  }
+
+}
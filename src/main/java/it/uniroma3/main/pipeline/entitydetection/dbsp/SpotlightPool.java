@@ -0,0 +1,401 @@
+package it.uniroma3.main.pipeline.entitydetection.dbsp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.SimpleHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import it.uniroma3.config.Configuration;
+import it.uniroma3.main.util.NamedThreadFactory;
+
+/**
+ * A pool of DBPedia Spotlight servers, each one on its own port. A single Spotlight JVM saturates
+ * well before the threads of the pipeline, so the requests are spread over several servers: each
+ * request goes to the healthy server with the fewest requests outstanding.
+ *
+ * The servers started by the pool (local processes of the Spotlight jar, or stubs) are checked
+ * periodically: a server that crashed or does not answer is restarted. When the pool is closed,
+ * the requests outstanding are given some time to complete before the servers are stopped. A
+ * single shutdown hook of the pool stops the processes that are running when the JVM exits, also
+ * the ones restarted by the checks.
+ *
+ * @author matteo
+ *
+ */
+public class SpotlightPool {
+
+  /* time given to the requests outstanding when the pool is closed */
+  private static final int DRAIN_SECONDS = 30;
+
+  /**
+   * A server of the pool.
+   */
+  public static class Server {
+    private final String url;
+    private final AtomicInteger outstanding;
+    private final LongAdder served;
+    private final AtomicInteger restarts;
+    private volatile boolean healthy;
+    private volatile Process process;
+    private StubSpotlightServer stub;
+
+    /**
+     *
+     * @param url
+     */
+    private Server(String url) {
+      this.url = url;
+      this.outstanding = new AtomicInteger();
+      this.served = new LongAdder();
+      this.restarts = new AtomicInteger();
+      this.healthy = true;
+    }
+
+    /**
+     * @return the url of the REST endpoint
+     */
+    public String getUrl() {
+      return url;
+    }
+
+    /**
+     *
+     * @return
+     */
+    private int getPort() {
+      return URI.create(url).getPort();
+    }
+  }
+
+  private List<Server> servers;
+  private String kind;
+  private ScheduledExecutorService checker;
+  private HttpClient healthClient;
+  private Thread shutdownHook;
+
+  /**
+   * A pool of servers that are already running, that are only checked and never restarted.
+   *
+   * @param urls
+   */
+  public SpotlightPool(List<String> urls) {
+    this(urls, null);
+  }
+
+  /**
+   *
+   * @param urls
+   * @param kind local, stub, or null if the servers are not started by the pool
+   */
+  private SpotlightPool(List<String> urls, String kind) {
+    this.kind = kind;
+    this.servers = new ArrayList<Server>();
+    for (String url : urls)
+      servers.add(new Server(url));
+    this.healthClient = new HttpClient(new SimpleHttpConnectionManager(true));
+    this.healthClient.getHttpConnectionManager().getParams().setConnectionTimeout(5000);
+    this.healthClient.getHttpConnectionManager().getParams().setSoTimeout(30000);
+    if (kind != null) {
+      this.shutdownHook = new Thread(() -> {
+        for (Server server : servers) {
+          Process p = server.process;
+          if (p != null)
+            p.destroy();
+        }
+      });
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+  }
+
+  /**
+   * Starts the servers on the given URLs, and waits until they are all up.
+   *
+   * @param urls
+   * @param kind local (the Spotlight jar) or stub
+   * @return
+   */
+  public static SpotlightPool start(List<String> urls, String kind) {
+    SpotlightPool pool = new SpotlightPool(urls, kind);
+    // the processes are launched together, and then waited for
+    for (Server server : pool.servers)
+      pool.launch(server);
+    for (Server server : pool.servers)
+      pool.waitStarted(server);
+    return pool;
+  }
+
+  /**
+   * Checks the servers every given seconds, restarting the ones that are down.
+   *
+   * @param seconds
+   */
+  public void startHealthChecks(int seconds) {
+    if (seconds <= 0)
+      return;
+    checker = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("spotlight-check"));
+    checker.scheduleWithFixedDelay(() -> {
+      for (Server server : servers)
+        check(server);
+    }, seconds, seconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Returns the healthy server with the fewest requests outstanding (any server, if none is
+   * healthy), counting the new request.
+   *
+   * @return
+   */
+  public Server acquire() {
+    Server best = null;
+    for (Server server : servers) {
+      if (best == null || (server.healthy && !best.healthy)
+          || (server.healthy == best.healthy
+              && server.outstanding.get() < best.outstanding.get()))
+        best = server;
+    }
+    best.outstanding.incrementAndGet();
+    return best;
+  }
+
+  /**
+   * Releases a request. A failed request marks the server as unhealthy, until the next check.
+   *
+   * @param server
+   * @param success
+   */
+  public void release(Server server, boolean success) {
+    server.outstanding.decrementAndGet();
+    server.served.increment();
+    if (!success)
+      server.healthy = false;
+  }
+
+  /**
+   * Checks that the server is alive and answers, restarting it if it is ours.
+   *
+   * @param server
+   */
+  private void check(Server server) {
+    boolean crashed = server.process != null && !server.process.isAlive();
+    boolean answers = !crashed && answers(server);
+    if (!answers && kind != null) {
+      System.out.println("\t-> DBPedia Spotlight on " + server.url + " is down, restarting it");
+      stop(server);
+      server.restarts.incrementAndGet();
+      launch(server);
+      waitStarted(server);
+      answers = answers(server);
+    }
+    server.healthy = answers;
+  }
+
+  /**
+   *
+   * @param server
+   * @return
+   */
+  private boolean answers(Server server) {
+    GetMethod get = new GetMethod(server.url + "/annotate?text=Berlin");
+    try {
+      get.addRequestHeader("Accept", "application/json");
+      return healthClient.executeMethod(get) == HttpStatus.SC_OK;
+    } catch (IOException e) {
+      return false;
+    } finally {
+      get.releaseConnection();
+    }
+  }
+
+  /**
+   * Starts the server, without waiting for it.
+   *
+   * @param server
+   */
+  private void launch(Server server) {
+    try {
+      if (kind.equals("stub")) {
+        server.stub = StubSpotlightServer.start(server.url);
+        return;
+      }
+      System.out.println("\t-> Loading DBPedia Spotlight on " + server.url);
+      ProcessBuilder pb = new ProcessBuilder("java", "-Xmx" + Configuration.getSpotlightHeap(),
+          "-Dfile.encoding=utf-8", "-jar", Configuration.getSpotlightJar(),
+          Configuration.getSpotlightModel(), server.url);
+      pb.redirectError(new File(Configuration.getSpotlightLocalERR(server.getPort())));
+      // the process is destroyed by the shutdown hook of the pool, if still running at the exit
+      server.process = pb.start();
+    } catch (IOException e) {
+      System.out.println("Problems with running local DBPedia Spotlight process!");
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Waits until the process of the server writes that it started.
+   *
+   * @param server
+   */
+  private void waitStarted(Server server) {
+    if (server.process == null)
+      return;
+    File log = new File(Configuration.getSpotlightLocalERR(server.getPort()));
+    try {
+      String last = "";
+      int maxChecks = 50;
+      while (!last.startsWith("Server started") && maxChecks > 0 && server.process.isAlive()) {
+        server.process.waitFor(5, TimeUnit.SECONDS);
+        if (log.exists()) {
+          try (BufferedReader logBR = new BufferedReader(new FileReader(log))) {
+            String line = null;
+            while ((line = logBR.readLine()) != null) {
+              last = line;
+            }
+          }
+        }
+        maxChecks -= 1;
+      }
+      if (log.exists()) {
+        log.delete();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   *
+   * @param server
+   */
+  private void stop(Server server) {
+    if (server.stub != null) {
+      server.stub.stop();
+      server.stub = null;
+    }
+    if (server.process != null) {
+      server.process.destroy();
+      try {
+        if (!server.process.waitFor(10, TimeUnit.SECONDS))
+          server.process.destroyForcibly();
+      } catch (InterruptedException e) {
+        server.process.destroyForcibly();
+        Thread.currentThread().interrupt();
+      }
+      server.process = null;
+    }
+  }
+
+  /**
+   * Stops the checks and, after the requests outstanding are done (or some time passed), the
+   * servers started by the pool.
+   */
+  public void close() {
+    if (checker != null)
+      checker.shutdownNow();
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(DRAIN_SECONDS);
+    try {
+      while (getOutstanding() > 0 && System.currentTimeMillis() < deadline)
+        Thread.sleep(100);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Server server : servers)
+      stop(server);
+    if (shutdownHook != null) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException e) {
+        // the JVM is already shutting down
+      }
+      shutdownHook = null;
+    }
+  }
+
+  /**
+   *
+   * @return
+   */
+  private int getOutstanding() {
+    int outstanding = 0;
+    for (Server server : servers)
+      outstanding += server.outstanding.get();
+    return outstanding;
+  }
+
+  /**
+   * @return the servers
+   */
+  public List<Server> getServers() {
+    return servers;
+  }
+
+  /**
+   * Prints, for each server, the requests served and the restarts.
+   */
+  public void printStats() {
+    for (Server server : servers)
+      System.out.printf("\t%-30s %d requests, %d restarts%s\n", server.url + ":",
+          server.served.sum(), server.restarts.get(), server.healthy ? "" : " (down)");
+  }
+
+  /**
+   * Checks the pool with three stubs: the requests are spread over the servers, and a stub that
+   * is stopped (as if it crashed) is found by the checks and restarted, while its requests go to
+   * the others.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    List<String> urls = new ArrayList<String>();
+    for (int i = 0; i < 3; i++)
+      urls.add("http://localhost:" + (22220 + i) + "/rest");
+    SpotlightPool pool = SpotlightPool.start(urls, "stub");
+    pool.startHealthChecks(1);
+    SpotlightClient client = new SpotlightClient(pool, 0.5, 0, 6, 300, 10);
+
+    client.annotate(sentences("first", 300)).get();
+    System.out.println("After the first round:");
+    pool.printStats();
+
+    pool.servers.get(1).stub.stop();
+    List<List<Annotation>> annotations = client.annotate(sentences("second", 300)).get();
+    int missing = 0;
+    for (List<Annotation> annotation : annotations)
+      missing += annotation.isEmpty() ? 1 : 0;
+    Thread.sleep(3000);
+    client.annotate(sentences("third", 300)).get();
+    System.out.println("After stopping " + urls.get(1) + " (" + missing
+        + " sentences not annotated):");
+    pool.printStats();
+
+    pool.close();
+    client.close();
+  }
+
+  /**
+   *
+   * @param round
+   * @param size
+   * @return
+   */
+  private static List<String> sentences(String round, int size) {
+    List<String> sentences = new ArrayList<String>();
+    for (int i = 0; i < size; i++)
+      sentences.add("Barack Obama met Angela Merkel in Berlin, the " + round + " time " + i + ".");
+    return sentences;
+  }
+
+}
@@ -0,0 +1,234 @@
+package it.uniroma3.main.pipeline.entitydetection.dbsp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import it.uniroma3.main.util.NamedThreadFactory;
+
+/**
+ * A local stand-in of DBPedia Spotlight, to run the entity detection with Spotlight offline and
+ * to check the client. It answers /annotate (GET or POST) as Spotlight does, annotating every
+ * sequence of capitalized words with the resource of the same name (e.g. "Barack Obama" ->
+ * Barack_Obama), with its offset in the text.
+ *
+ * @author matteo
+ *
+ */
+public class StubSpotlightServer {
+
+  private static final Pattern NAMES = Pattern.compile("\\p{Lu}\\w*(?: \\p{Lu}\\w*)*");
+
+  private HttpServer server;
+  private AtomicInteger requests;
+  private int delay;
+
+  /**
+   *
+   * @param port
+   * @param path path of the REST endpoint, e.g. /rest
+   * @param delay milliseconds spent by each request, to mimic the real server
+   * @throws IOException
+   */
+  public StubSpotlightServer(int port, String path, int delay) throws IOException {
+    this.requests = new AtomicInteger();
+    this.delay = delay;
+    // otherwise each response waits for the delayed ack of the client
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+    this.server.createContext(path + "/annotate", this::annotate);
+    this.server.setExecutor(Executors.newCachedThreadPool(new NamedThreadFactory("stub")));
+  }
+
+  /**
+   * Starts a stub on the host and port of the given URL (e.g. http://localhost:2222/rest).
+   *
+   * @param url
+   * @return
+   * @throws IOException
+   */
+  public static StubSpotlightServer start(String url) throws IOException {
+    URI uri = URI.create(url);
+    StubSpotlightServer stub = new StubSpotlightServer(uri.getPort(), uri.getPath(), 0);
+    stub.server.start();
+    return stub;
+  }
+
+  /**
+   * @return the port
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * @return the number of requests served
+   */
+  public int getRequests() {
+    return requests.get();
+  }
+
+  /**
+   *
+   */
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   *
+   * @param exchange
+   * @throws IOException
+   */
+  private void annotate(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (exchange.getRequestMethod().equalsIgnoreCase("POST"))
+      query = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+    String text = getParameters(query).getOrDefault("text", "");
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    JsonObject response = new JsonObject();
+    response.addProperty("@text", text);
+    JsonArray resources = new JsonArray();
+    Matcher m = NAMES.matcher(text);
+    while (m.find()) {
+      JsonObject resource = new JsonObject();
+      resource.addProperty("@URI", "http://dbpedia.org/resource/" + m.group().replace(' ', '_'));
+      resource.addProperty("@support", "100");
+      resource.addProperty("@surfaceForm", m.group());
+      resource.addProperty("@offset", String.valueOf(m.start()));
+      resource.addProperty("@similarityScore", "1.0");
+      resources.add(resource);
+    }
+    response.add("Resources", resources);
+
+    byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /**
+   *
+   * @param in
+   * @return
+   * @throws IOException
+   */
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1)
+      out.write(buffer, 0, read);
+    return out.toByteArray();
+  }
+
+  /**
+   *
+   * @param query
+   * @return
+   * @throws UnsupportedEncodingException
+   */
+  private static Map<String, String> getParameters(String query)
+      throws UnsupportedEncodingException {
+    Map<String, String> parameters = new HashMap<String, String>();
+    if (query == null)
+      return parameters;
+    for (String pair : query.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0)
+        parameters.put(URLDecoder.decode(pair.substring(0, eq), "utf-8"),
+            URLDecoder.decode(pair.substring(eq + 1), "utf-8"));
+    }
+    return parameters;
+  }
+
+  /**
+   * Checks the client against the stub: the batched annotations must be the same of the ones of
+   * the sentences sent one by one, and a second round must be served by the cache.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    StubSpotlightServer stub = new StubSpotlightServer(0, "/rest", 5);
+    stub.server.start();
+    String url = "http://localhost:" + stub.getPort() + "/rest";
+
+    List<String> sentences = new ArrayList<String>();
+    String[] base = {"Barack Obama met Angela Merkel in Berlin.",
+        "The meeting was held at the Federal Chancellery, near the Reichstag.",
+        "It was reported by The New York Times and by Der Spiegel.",
+        "no entities here, only lower case words."};
+    for (int i = 0; i < 200; i++)
+      sentences.add(base[i % base.length] + " Item " + i + " of the List.");
+
+    SpotlightClient single = new SpotlightClient(url, 0.5, 0, 4, 1, 1000);
+    SpotlightClient batched = new SpotlightClient(url, 0.5, 0, 4, 2000, 1000);
+    long start = System.nanoTime();
+    List<List<Annotation>> expected = single.annotate(sentences).get();
+    long singleTime = System.nanoTime() - start;
+    int singleRequests = stub.getRequests();
+    start = System.nanoTime();
+    List<List<Annotation>> actual = batched.annotate(sentences).get();
+    long batchedTime = System.nanoTime() - start;
+    int batchedRequests = stub.getRequests() - singleRequests;
+    batched.annotate(sentences).get();
+    int cachedRequests = stub.getRequests() - singleRequests - batchedRequests;
+
+    boolean same = true;
+    for (int i = 0; i < sentences.size(); i++)
+      same &= Arrays.equals(names(expected.get(i)), names(actual.get(i)));
+    System.out.printf("\t%-30s %s\n", "Annotations:", same ? "same" : "DIFFERENT");
+    System.out.printf("\t%-30s %d requests, %d ms\n", "One sentence per request:",
+        singleRequests, singleTime / 1000000);
+    System.out.printf("\t%-30s %d requests, %d ms\n", "Batched:", batchedRequests,
+        batchedTime / 1000000);
+    System.out.printf("\t%-30s %d requests\n", "Batched again (cache):", cachedRequests);
+    batched.printStats();
+    single.close();
+    batched.close();
+    stub.stop();
+  }
+
+  /**
+   *
+   * @param annotations
+   * @return
+   */
+  private static String[] names(List<Annotation> annotations) {
+    String[] names = new String[annotations.size()];
+    for (int i = 0; i < names.length; i++)
+      names[i] = annotations.get(i).getWikid() + "/" + annotations.get(i).getSurfaceForm();
+    return names;
+  }
+
+}
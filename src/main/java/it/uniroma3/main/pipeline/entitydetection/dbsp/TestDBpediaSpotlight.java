@@ -7,7 +7,7 @@ import it.uniroma3.config.WikiLanguage;
 public class TestDBpediaSpotlight {
 
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws Exception {
     Configuration.init(args);
     Configuration.updateParameter("dataFile", "/Users/matteo/Desktop/data_small");
     Configuration.updateParameter("language", "en");
@@ -22,7 +22,7 @@ public class TestDBpediaSpotlight {
 
   }
 
-  private static void testSpotlight(WikiLanguage wikiLang) {
+  private static void testSpotlight(WikiLanguage wikiLang) throws Exception {
     Lector.init("AP,ED");
     String text =
         "<<PE-TITLE><Azerbaijan><Azerbaijan>> (; Azərbaycan), officially the <<PE-ALIAS><Azerbaijan><Republic of "
@@ -2,11 +2,11 @@ package it.uniroma3.main.pipeline.entitydetection.fsm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
-import org.apache.commons.collections.map.MultiValueMap;
 import it.uniroma3.config.Configuration;
 import it.uniroma3.main.util.Token;
 import it.uniroma3.main.util.inout.TSVReader;
@@ -34,7 +34,9 @@ public class FSMSeed {
   private static final List<String> FINAL_LIST = Arrays.asList("VBG", "JJ", "CC", ",", "VB", "VBN",
       "VBD", "VBZ", "WP", "WDT", "WRB", "TO", "IN", ".");
 
-  private FSM finiteStateMachine;
+  /* the automaton does not depend on the thread, so it is compiled once */
+  private static final FSM finiteStateMachine = createFSM();
+
   private OpenNLP expert;
   private Set<String> stopwords; // we need them only for a post-processing filetering
 
@@ -43,7 +45,6 @@ public class FSMSeed {
    * @param expert
    */
   public FSMSeed(OpenNLP expert) {
-    this.finiteStateMachine = createFSM();
     this.expert = expert;
     this.stopwords = TSVReader.getFirstColumn2Set(Configuration.getStopwordsList());
   }
@@ -56,27 +57,27 @@ public class FSMSeed {
    * 
    * @return
    */
-  private FSM createFSM() {
+  private static FSM createFSM() {
     FSM fsm = new FSM();
     for (String symbol : R_LIST) {
       fsm.addTransition("S2", symbol, "S1");
       fsm.addTransition("S4", symbol, "S1");
-      fsm.addTransition("S3", symbol, fsm.ACCEPT);
+      fsm.addTransition("S3", symbol, FSM.ACCEPT_STATE);
     }
     for (String symbol : CD_LIST) {
-      fsm.addTransition(fsm.START, symbol, "S8");
+      fsm.addTransition(FSM.START_STATE, symbol, "S8");
       fsm.addTransition("S2", symbol, "S2");
     }
     for (String symbol : IN_LIST) {
-      fsm.addTransition("S8", symbol, fsm.START);
+      fsm.addTransition("S8", symbol, FSM.START_STATE);
     }
     for (String symbol : DT_LIST) {
-      fsm.addTransition(fsm.START, symbol, "S2");
+      fsm.addTransition(FSM.START_STATE, symbol, "S2");
       fsm.addTransition("S1", symbol, "S2");
       fsm.addTransition("S5", symbol, "S2");
     }
     for (String symbol : J_LIST) {
-      fsm.addTransition(fsm.START, symbol, "S4");
+      fsm.addTransition(FSM.START_STATE, symbol, "S4");
       fsm.addTransition("S1", symbol, "S4");
       fsm.addTransition("S2", symbol, "S4");
       fsm.addTransition("S3", symbol, "S4");
@@ -86,7 +87,7 @@ public class FSMSeed {
       fsm.addTransition("S7", symbol, "S4");
     }
     for (String symbol : N_LIST) {
-      fsm.addTransition(fsm.START, symbol, "S3");
+      fsm.addTransition(FSM.START_STATE, symbol, "S3");
       fsm.addTransition("S2", symbol, "S3");
       fsm.addTransition("S3", symbol, "S3");
       fsm.addTransition("S4", symbol, "S3");
@@ -96,7 +97,7 @@ public class FSMSeed {
       fsm.addTransition("S9", symbol, "S3");
     }
     for (String symbol : NS_LIST) {
-      fsm.addTransition(fsm.START, symbol, "S9");
+      fsm.addTransition(FSM.START_STATE, symbol, "S9");
       fsm.addTransition("S2", symbol, "S9");
       fsm.addTransition("S3", symbol, "S9");
       fsm.addTransition("S4", symbol, "S9");
@@ -106,7 +107,7 @@ public class FSMSeed {
       fsm.addTransition("S9", symbol, "S9");
     }
     for (String symbol : NP_LIST) {
-      fsm.addTransition(fsm.START, symbol, "S7");
+      fsm.addTransition(FSM.START_STATE, symbol, "S7");
       fsm.addTransition("S2", symbol, "S7");
       fsm.addTransition("S3", symbol, "S7");
       fsm.addTransition("S4", symbol, "S7");
@@ -122,7 +123,7 @@ public class FSMSeed {
     }
     for (String symbol : CC_LIST) {
       fsm.addTransition("S3", symbol, "S5");
-      fsm.addTransition("S3", symbol, fsm.ACCEPT);
+      fsm.addTransition("S3", symbol, FSM.ACCEPT_STATE);
       fsm.addTransition("S4", symbol, "S5");
       fsm.addTransition("S5", symbol, "S5");
       fsm.addTransition("S9", symbol, "S5");
@@ -130,11 +131,11 @@ public class FSMSeed {
     }
     for (String symbol : FINAL_LIST) {
       fsm.addTransition("S1", symbol, "S4");
-      fsm.addTransition("S3", symbol, fsm.ACCEPT);
-      fsm.addTransition("S9", symbol, fsm.ACCEPT);
+      fsm.addTransition("S3", symbol, FSM.ACCEPT_STATE);
+      fsm.addTransition("S9", symbol, FSM.ACCEPT_STATE);
     }
 
-    return fsm;
+    return fsm.compile();
   }
 
 
@@ -145,14 +146,37 @@ public class FSMSeed {
    * @return
    */
   public List<String> findSeed(String sentence) {
-    this.finiteStateMachine.reset();
+    return findSeed(expert.applyPOSTagger(sentence));
+  }
+
+  /**
+   * Return the seeds of each sentence, tagging all the sentences together.
+   * 
+   * @param sentences --> the first sentences of the articles.
+   * @return
+   */
+  public List<List<String>> findSeeds(List<String> sentences) {
+    List<List<String>> seeds = new ArrayList<List<String>>(sentences.size());
+    for (Token[] tokens : expert.applyPOSTagger(sentences))
+      seeds.add(findSeed(tokens));
+    return seeds;
+  }
+
+  /**
+   * Runs the automaton over the tagged sentence.
+   * 
+   * @param tagged
+   * @return
+   */
+  private List<String> findSeed(Token[] tagged) {
     List<String> seeds = new LinkedList<String>();
-    Token[] tokens = cutOutFirstPart(expert.applyPOSTagger(sentence));
+    Token[] tokens = cutOutFirstPart(tagged);
     String tmpToken = "-";
 
+    int state = FSM.START;
     for (Token token : tokens) {
-      this.finiteStateMachine.transition(token.getPOS());
-      if (this.finiteStateMachine.accepts())
+      state = finiteStateMachine.transition(state, token.getPOS());
+      if (finiteStateMachine.accepts(state))
         seeds.add(tmpToken);
       if (NS_LIST.contains(token.getPOS()))
         tmpToken = expert.getSingular(token.getRenderedToken(), token.getPOS());
@@ -198,34 +222,56 @@ public class FSMSeed {
   }
 
   /**
-   * Implementation of a simple finite state machine.
+   * Implementation of a simple finite state machine. The transitions are given on named states
+   * and symbols (it can be in more states at once), and then compiled into a deterministic one:
+   * each state is a set of the named states, and the transitions are an int table indexed by
+   * state and symbol.
    * 
    * @author matteo
    *
    */
-  public class FSM {
-    public final String START = "-";
-    public final String ACCEPT = "*1";
-    public MultiValueMap transitions; // this is a map that allows for repeated keys
-    public Set<String> states;
+  public static class FSM {
+    public static final String START_STATE = "-";
+    public static final String ACCEPT_STATE = "*1";
+
+    /* the first compiled state, the next one is the dead state (no named state) */
+    private static final int START = 0;
+    /* the symbols that have no transitions */
+    private static final int UNKNOWN = 0;
+
+    private Map<String, Integer> names;
+    private Map<String, Integer> symbols;
+    private List<int[]> arrows;
+
+    private int[][] table;
+    private boolean[] accepting;
 
     /**
      * Creates a new FSM.
      * 
      */
     public FSM() {
-      transitions = new MultiValueMap();
-      states = new TreeSet<String>();
-      reset();
+      this.names = new HashMap<String, Integer>();
+      this.symbols = new HashMap<String, Integer>();
+      this.arrows = new ArrayList<int[]>();
+      getId(names, START_STATE);
+      getId(names, ACCEPT_STATE);
+      symbols.put("", UNKNOWN);
     }
 
     /**
-     * Initializes an empty FSM.
      * 
+     * @param ids
+     * @param key
+     * @return
      */
-    public void reset() {
-      states.clear();
-      states.add(START);
+    private static int getId(Map<String, Integer> ids, String key) {
+      Integer id = ids.get(key);
+      if (id == null) {
+        id = ids.size();
+        ids.put(key, id);
+      }
+      return id;
     }
 
     /**
@@ -236,35 +282,75 @@ public class FSMSeed {
      * @param to
      */
     public void addTransition(String from, String symbol, String to) {
-      transitions.put(from + " + " + symbol, to);
+      arrows.add(new int[] {getId(names, from), getId(symbols, symbol), getId(names, to)});
     }
 
     /**
-     * The FSM is complete if states contains a terminal state.
+     * Compiles the transitions (subset construction), from the set with only the start state.
      * 
      * @return
      */
-    public boolean accepts() {
-      boolean isInAcceptanceState = states.contains(ACCEPT);
-      if (isInAcceptanceState)
-        states.remove(ACCEPT);
-      return isInAcceptanceState;
+    public FSM compile() {
+      // named states reached from each named state, with each symbol
+      long[][] reached = new long[names.size()][symbols.size()];
+      for (int[] arrow : arrows)
+        reached[arrow[0]][arrow[1]] |= 1L << arrow[2];
+
+      Map<Long, Integer> states = new HashMap<Long, Integer>();
+      List<Long> sets = new ArrayList<Long>();
+      for (long set : new long[] {1L << names.get(START_STATE), 0L}) {
+        states.put(set, sets.size());
+        sets.add(set);
+      }
+      List<int[]> rows = new ArrayList<int[]>();
+      for (int state = 0; state < sets.size(); state++) {
+        int[] row = new int[symbols.size()];
+        for (int symbol = 0; symbol < row.length; symbol++) {
+          long next = 0L;
+          long set = sets.get(state);
+          for (int name = 0; name < names.size(); name++) {
+            if ((set & (1L << name)) != 0)
+              next |= reached[name][symbol];
+          }
+          Integer id = states.get(next);
+          if (id == null) {
+            id = sets.size();
+            states.put(next, id);
+            sets.add(next);
+          }
+          row[symbol] = id;
+        }
+        rows.add(row);
+      }
+
+      this.table = rows.toArray(new int[rows.size()][]);
+      this.accepting = new boolean[sets.size()];
+      long accept = 1L << names.get(ACCEPT_STATE);
+      for (int state = 0; state < sets.size(); state++)
+        accepting[state] = (sets.get(state) & accept) != 0;
+      return this;
     }
 
     /**
-     * Changes the states of the FSM given the symbol in input.
+     * The state is complete if it contains a terminal state.
      * 
+     * @param state
+     * @return
+     */
+    public boolean accepts(int state) {
+      return accepting[state];
+    }
+
+    /**
+     * Returns the state of the FSM after the symbol in input.
+     * 
+     * @param state
      * @param symbol
+     * @return
      */
-    public void transition(String symbol) {
-      Set<String> newState = new TreeSet<String>();
-      for (String s1 : states) {
-        @SuppressWarnings("unchecked")
-        List<String> t = (List<String>) transitions.get(s1 + " + " + symbol);
-        if (t != null)
-          newState.addAll(t);
-      }
-      states = newState;
+    public int transition(int state, String symbol) {
+      Integer id = symbols.get(symbol);
+      return table[state][(id == null) ? UNKNOWN : id];
     }
   }
 
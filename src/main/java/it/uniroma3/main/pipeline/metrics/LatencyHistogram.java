@@ -0,0 +1,124 @@
+package it.uniroma3.main.pipeline.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of latencies, with fixed buckets (in seconds) that go from half a
+ * millisecond to five minutes. The buckets are the same of the Prometheus histograms, the
+ * percentiles are estimated interpolating inside the bucket.
+ *
+ * @author matteo
+ *
+ */
+public class LatencyHistogram {
+
+  /* upper bounds of the buckets, in seconds (the last bucket is +Inf) */
+  protected static final double[] BOUNDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1,
+      0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+  private AtomicLongArray buckets;
+  private LongAdder count;
+  private LongAdder sum; // nanoseconds
+  private LongAccumulator max; // nanoseconds
+
+  /**
+   *
+   */
+  public LatencyHistogram() {
+    this.buckets = new AtomicLongArray(BOUNDS.length + 1);
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+    this.max = new LongAccumulator(Long::max, 0);
+  }
+
+  /**
+   *
+   * @param nanos
+   */
+  public void record(long nanos) {
+    double seconds = nanos / 1e9;
+    int bucket = 0;
+    while (bucket < BOUNDS.length && seconds > BOUNDS[bucket])
+      bucket++;
+    buckets.incrementAndGet(bucket);
+    count.increment();
+    sum.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  /**
+   *
+   * @return
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Sum of all the latencies, in seconds.
+   *
+   * @return
+   */
+  public double getSum() {
+    return sum.sum() / 1e9;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public double getMax() {
+    return max.get() / 1e9;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public double getMean() {
+    long n = getCount();
+    return (n == 0) ? 0 : getSum() / n;
+  }
+
+  /**
+   * Number of latencies in each bucket (not cumulative).
+   *
+   * @return
+   */
+  public long[] getBuckets() {
+    long[] counts = new long[buckets.length()];
+    for (int i = 0; i < counts.length; i++)
+      counts[i] = buckets.get(i);
+    return counts;
+  }
+
+  /**
+   * Estimates the given percentile (0-100), in seconds.
+   *
+   * @param percentile
+   * @return
+   */
+  public double getPercentile(double percentile) {
+    long[] counts = getBuckets();
+    long total = 0;
+    for (long c : counts)
+      total += c;
+    if (total == 0)
+      return 0;
+    double rank = total * percentile / 100.0;
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0 && seen + counts[i] >= rank) {
+        double lower = (i == 0) ? 0 : BOUNDS[i - 1];
+        double upper = (i < BOUNDS.length) ? BOUNDS[i] : getMax();
+        double estimate = lower + (upper - lower) * (rank - seen) / counts[i];
+        return Math.min(estimate, getMax());
+      }
+      seen += counts[i];
+    }
+    return getMax();
+  }
+
+}
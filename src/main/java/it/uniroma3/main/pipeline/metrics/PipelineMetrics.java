@@ -0,0 +1,315 @@
+package it.uniroma3.main.pipeline.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import it.uniroma3.main.util.NamedThreadFactory;
+
+/**
+ * Collects the metrics of a run of the pipeline: the latency of each step for each article, the
+ * number of articles and triples processed and the slowest articles.
+ *
+ * The metrics are periodically written in the output folder as JSON (metrics.json) and in the
+ * Prometheus text format (metrics.prom). The files are replaced atomically, so they can be read
+ * at any time.
+ *
+ * @author matteo
+ *
+ */
+public class PipelineMetrics {
+
+  public enum Step {
+    PARSE, ENTITY_FINDING, ENTITY_REPLACEMENT, TRIPLIFICATION, DB_WRITE;
+
+    public String label() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  };
+
+  private String language;
+  private Map<Step, LatencyHistogram> histograms;
+  private SlowestArticles slowest;
+  private LongAdder articles;
+  private LongAdder triples;
+  private long startTime;
+  private volatile long endTime;
+
+  private ScheduledExecutorService exporter;
+  private File folder;
+
+  /**
+   *
+   * @param language
+   * @param slowestArticles how many of the slowest articles to keep
+   */
+  public PipelineMetrics(String language, int slowestArticles) {
+    this.language = language;
+    this.histograms = new EnumMap<Step, LatencyHistogram>(Step.class);
+    for (Step step : Step.values())
+      histograms.put(step, new LatencyHistogram());
+    this.slowest = new SlowestArticles(slowestArticles);
+    this.articles = new LongAdder();
+    this.triples = new LongAdder();
+    this.startTime = System.nanoTime();
+  }
+
+  /**
+   * Records the time spent by the article in the step, since start (from System.nanoTime()).
+   *
+   * @param step
+   * @param wikid
+   * @param start
+   */
+  public void record(Step step, String wikid, long start) {
+    long nanos = System.nanoTime() - start;
+    histograms.get(step).record(nanos);
+    slowest.offer(wikid, step.label(), nanos);
+  }
+
+  /**
+   * Records the time spent writing a block of triples in the DB.
+   *
+   * @param start
+   * @param writtenTriples
+   */
+  public void recordBlock(long start, int writtenTriples) {
+    histograms.get(Step.DB_WRITE).record(System.nanoTime() - start);
+    triples.add(writtenTriples);
+  }
+
+  /**
+   * Counts an article that went through the whole pipeline.
+   */
+  public void articleDone() {
+    articles.increment();
+  }
+
+  /**
+   *
+   * @param step
+   * @return
+   */
+  public LatencyHistogram getHistogram(Step step) {
+    return histograms.get(step);
+  }
+
+  /**
+   * Starts writing the metrics in the folder every interval seconds. With interval 0 they are
+   * written only when the run is over.
+   *
+   * @param folder
+   * @param interval
+   */
+  public void startExport(String folder, int interval) {
+    this.folder = new File(folder);
+    this.folder.mkdirs();
+    if (interval > 0) {
+      this.exporter =
+          Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("metrics-exporter"));
+      exporter.scheduleAtFixedRate(this::export, interval, interval, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Stops the periodic export and writes the final metrics. The rates are not updated anymore.
+   */
+  public void stopExport() {
+    this.endTime = System.nanoTime();
+    if (exporter != null)
+      exporter.shutdownNow();
+    if (folder != null)
+      export();
+  }
+
+  /**
+   * Writes the metrics files.
+   */
+  public synchronized void export() {
+    try {
+      write(new File(folder, "metrics.json"), toJson());
+      write(new File(folder, "metrics.prom"), toPrometheus());
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes a temporary file and then moves it on the destination.
+   *
+   * @param destination
+   * @param content
+   * @throws IOException
+   */
+  private static void write(File destination, String content) throws IOException {
+    File tmpFile = new File(destination.getParentFile(), "." + destination.getName() + ".tmp");
+    Path tmp = tmpFile.toPath();
+    try (Writer w = new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8)) {
+      w.write(content);
+    }
+    try {
+      Files.move(tmp, destination.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.move(tmp, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   *
+   * @return
+   */
+  private double getElapsed() {
+    long end = (endTime == 0) ? System.nanoTime() : endTime;
+    return (end - startTime) / 1e9;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public double getArticlesPerSecond() {
+    double elapsed = getElapsed();
+    return (elapsed == 0) ? 0 : articles.sum() / elapsed;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public double getTriplesPerSecond() {
+    double elapsed = getElapsed();
+    return (elapsed == 0) ? 0 : triples.sum() / elapsed;
+  }
+
+  /**
+   *
+   * @return
+   */
+  public String toJson() {
+    JsonObject json = new JsonObject();
+    json.addProperty("language", language);
+    json.addProperty("timestamp", System.currentTimeMillis());
+    json.addProperty("elapsed_seconds", getElapsed());
+    json.addProperty("articles", articles.sum());
+    json.addProperty("triples", triples.sum());
+    json.addProperty("articles_per_second", getArticlesPerSecond());
+    json.addProperty("triples_per_second", getTriplesPerSecond());
+
+    JsonObject steps = new JsonObject();
+    for (Map.Entry<Step, LatencyHistogram> entry : histograms.entrySet()) {
+      LatencyHistogram h = entry.getValue();
+      JsonObject step = new JsonObject();
+      step.addProperty("count", h.getCount());
+      step.addProperty("mean", h.getMean());
+      step.addProperty("p50", h.getPercentile(50));
+      step.addProperty("p90", h.getPercentile(90));
+      step.addProperty("p99", h.getPercentile(99));
+      step.addProperty("max", h.getMax());
+      JsonObject buckets = new JsonObject();
+      long[] counts = h.getBuckets();
+      for (int i = 0; i < counts.length; i++)
+        buckets.addProperty(bound(i), counts[i]);
+      step.add("buckets", buckets);
+      steps.add(entry.getKey().label(), step);
+    }
+    json.add("steps", steps);
+
+    JsonArray slow = new JsonArray();
+    for (SlowestArticles.Entry e : slowest.getSlowest()) {
+      JsonObject article = new JsonObject();
+      article.addProperty("wikid", e.wikid);
+      article.addProperty("step", e.step);
+      article.addProperty("seconds", e.nanos / 1e9);
+      slow.add(article);
+    }
+    json.add("slowest", slow);
+    return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(json);
+  }
+
+  /**
+   *
+   * @return
+   */
+  public String toPrometheus() {
+    StringBuilder sb = new StringBuilder();
+    String lang = "lang=\"" + language + "\"";
+    sb.append("# HELP lector_step_latency_seconds Time spent by an article in a step.\n");
+    sb.append("# TYPE lector_step_latency_seconds histogram\n");
+    for (Map.Entry<Step, LatencyHistogram> entry : histograms.entrySet()) {
+      LatencyHistogram h = entry.getValue();
+      String labels = lang + ",step=\"" + entry.getKey().label() + "\"";
+      long[] counts = h.getBuckets();
+      long cumulative = 0;
+      for (int i = 0; i < counts.length; i++) {
+        cumulative += counts[i];
+        sb.append("lector_step_latency_seconds_bucket{" + labels + ",le=\"" + bound(i) + "\"} "
+            + cumulative + "\n");
+      }
+      sb.append("lector_step_latency_seconds_sum{" + labels + "} " + h.getSum() + "\n");
+      sb.append("lector_step_latency_seconds_count{" + labels + "} " + h.getCount() + "\n");
+    }
+    sb.append("# HELP lector_articles_total Articles that went through the whole pipeline.\n");
+    sb.append("# TYPE lector_articles_total counter\n");
+    sb.append("lector_articles_total{" + lang + "} " + articles.sum() + "\n");
+    sb.append("# HELP lector_triples_total Triples written in the model DB.\n");
+    sb.append("# TYPE lector_triples_total counter\n");
+    sb.append("lector_triples_total{" + lang + "} " + triples.sum() + "\n");
+    sb.append("# HELP lector_articles_per_second Average articles per second of the run.\n");
+    sb.append("# TYPE lector_articles_per_second gauge\n");
+    sb.append("lector_articles_per_second{" + lang + "} " + getArticlesPerSecond() + "\n");
+    sb.append("# HELP lector_triples_per_second Average triples per second of the run.\n");
+    sb.append("# TYPE lector_triples_per_second gauge\n");
+    sb.append("lector_triples_per_second{" + lang + "} " + getTriplesPerSecond() + "\n");
+    return sb.toString();
+  }
+
+  /**
+   *
+   * @param bucket
+   * @return
+   */
+  private static String bound(int bucket) {
+    if (bucket < LatencyHistogram.BOUNDS.length)
+      return BigDecimal.valueOf(LatencyHistogram.BOUNDS[bucket]).stripTrailingZeros()
+          .toPlainString();
+    return "+Inf";
+  }
+
+  /**
+   * Prints the percentiles of each step and the slowest articles.
+   */
+  public void printStats() {
+    System.out.println("\nLatency of the steps (seconds)");
+    System.out.println("---------------");
+    System.out.printf("\t%-20s %-10s %-10s %-10s %-10s %-10s\n", "step", "count", "p50", "p90",
+        "p99", "max");
+    for (Map.Entry<Step, LatencyHistogram> entry : histograms.entrySet()) {
+      LatencyHistogram h = entry.getValue();
+      System.out.printf("\t%-20s %-10d %-10.4f %-10.4f %-10.4f %-10.4f\n", entry.getKey().label(),
+          h.getCount(), h.getPercentile(50), h.getPercentile(90), h.getPercentile(99), h.getMax());
+    }
+    System.out.printf("\t%-20s %.2f\n", "articles/sec:", getArticlesPerSecond());
+    System.out.printf("\t%-20s %.2f\n", "triples/sec:", getTriplesPerSecond());
+    System.out.println("\nSlowest articles");
+    System.out.println("---------------");
+    for (SlowestArticles.Entry e : slowest.getSlowest())
+      System.out.printf("\t%-20s %-10.3f %s\n", e.step, e.nanos / 1e9, e.wikid);
+  }
+
+}
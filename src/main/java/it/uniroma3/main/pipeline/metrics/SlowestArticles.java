@@ -0,0 +1,82 @@
+package it.uniroma3.main.pipeline.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the N slowest articles seen so far, with the step in which they spent the time.
+ *
+ * @author matteo
+ *
+ */
+public class SlowestArticles {
+
+  private int size;
+  private PriorityQueue<Entry> heap; // the fastest of the slowest is on top
+  private volatile long threshold;
+
+  /**
+   *
+   * @param size
+   */
+  public SlowestArticles(int size) {
+    this.size = size;
+    this.heap = new PriorityQueue<Entry>(Math.max(1, size));
+  }
+
+  /**
+   *
+   * @param wikid
+   * @param step
+   * @param nanos
+   */
+  public void offer(String wikid, String step, long nanos) {
+    // most of the articles are faster than the threshold and do not need the lock
+    if (size == 0 || nanos <= threshold)
+      return;
+    synchronized (heap) {
+      heap.add(new Entry(wikid, step, nanos));
+      if (heap.size() > size)
+        heap.poll();
+      if (heap.size() == size)
+        threshold = heap.peek().nanos;
+    }
+  }
+
+  /**
+   * Returns the slowest articles, from the slowest.
+   *
+   * @return
+   */
+  public List<Entry> getSlowest() {
+    List<Entry> slowest;
+    synchronized (heap) {
+      slowest = new ArrayList<Entry>(heap);
+    }
+    Collections.sort(slowest, Collections.reverseOrder());
+    return slowest;
+  }
+
+  /**
+   *
+   */
+  public static class Entry implements Comparable<Entry> {
+    public final String wikid;
+    public final String step;
+    public final long nanos;
+
+    private Entry(String wikid, String step, long nanos) {
+      this.wikid = wikid;
+      this.step = step;
+      this.nanos = nanos;
+    }
+
+    @Override
+    public int compareTo(Entry o) {
+      return Long.compare(nanos, o.nanos);
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+package it.uniroma3.main.pipeline.metrics;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the stragglers of each chunk: the time from when most of its pages (95%) are done to
+ * when the last one is done, i.e. the time in which the chunk only waits for a few long pages.
+ *
+ * @author matteo
+ *
+ */
+public class Stragglers {
+
+  private static final double TAIL = 0.95;
+
+  private Map<Integer, Chunk> pages;
+  private int chunks;
+  private long tailNanos;
+  private long slowestTailNanos;
+
+  /**
+   *
+   */
+  public Stragglers() {
+    this.pages = new ConcurrentHashMap<Integer, Chunk>();
+  }
+
+  /**
+   * Tracks the pages of a chunk, before they enter the pipeline.
+   *
+   * @param chunk
+   */
+  public void track(Collection<Integer> chunk) {
+    Chunk tracked = new Chunk(chunk.size());
+    for (int page : chunk)
+      pages.put(page, tracked);
+  }
+
+  /**
+   * A page is done (the pages that are not tracked are ignored).
+   *
+   * @param page
+   */
+  public void complete(int page) {
+    Chunk chunk = pages.remove(page);
+    if (chunk == null)
+      return;
+    long tail = chunk.complete(System.nanoTime());
+    if (tail >= 0) {
+      synchronized (this) {
+        chunks++;
+        tailNanos += tail;
+        slowestTailNanos = Math.max(slowestTailNanos, tail);
+      }
+    }
+  }
+
+  /**
+   * Prints the time spent by the chunks waiting for their stragglers.
+   */
+  public synchronized void printStats() {
+    System.out.printf("\t%-30s %d ms in %d chunks (slowest %d ms)\n", "Straggler time:",
+        TimeUnit.NANOSECONDS.toMillis(tailNanos), chunks,
+        TimeUnit.NANOSECONDS.toMillis(slowestTailNanos));
+  }
+
+  /**
+   *
+   */
+  private static class Chunk {
+    private final int total;
+    private final int most;
+    private int done;
+    private long mostDone;
+
+    /**
+     *
+     * @param total
+     */
+    private Chunk(int total) {
+      this.total = total;
+      this.most = Math.max(1, (int) (TAIL * total));
+    }
+
+    /**
+     * Returns the time of the tail, when the last page of the chunk is done, -1 otherwise.
+     *
+     * @param now
+     * @return
+     */
+    private synchronized long complete(long now) {
+      done++;
+      if (done == most)
+        mostDone = now;
+      return (done == total) ? now - mostDone : -1;
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+package it.uniroma3.main.pipeline.triplesextractor;
+
+import java.util.ArrayList;
+import java.util.List;
+import it.uniroma3.main.bean.WikiMVL;
+import it.uniroma3.main.bean.WikiTriple;
+
+/**
+ * The triples of an article together with its multi-valued lists. They are created outside the
+ * lock of the block, and dispatched together only if the article was completed, so that an
+ * article over budget leaves nothing in the block.
+ *
+ * @author matteo
+ *
+ */
+public class ArticleTriples {
+
+  private List<WikiTriple> triples;
+  private List<WikiMVL> lists;
+
+  /**
+   *
+   */
+  public ArticleTriples() {
+    this.triples = new ArrayList<WikiTriple>();
+    this.lists = new ArrayList<WikiMVL>();
+  }
+
+  /**
+   * Appends the triples and the lists of another part of the article.
+   *
+   * @param other
+   */
+  public void addAll(ArticleTriples other) {
+    triples.addAll(other.triples);
+    lists.addAll(other.lists);
+  }
+
+  /**
+   * @return the triples
+   */
+  public List<WikiTriple> getTriples() {
+    return triples;
+  }
+
+  /**
+   * @return the multi-valued lists
+   */
+  public List<WikiMVL> getLists() {
+    return lists;
+  }
+
+}
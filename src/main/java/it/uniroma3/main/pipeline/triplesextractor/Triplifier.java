@@ -1,5 +1,6 @@
 package it.uniroma3.main.pipeline.triplesextractor;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -13,11 +14,13 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import it.uniroma3.config.Configuration;
 import it.uniroma3.config.Lector;
+import it.uniroma3.main.bean.AnnotatedText;
 import it.uniroma3.main.bean.WikiArticle;
 import it.uniroma3.main.bean.WikiMVL;
 import it.uniroma3.main.bean.WikiTriple;
-import it.uniroma3.main.pipeline.articleparser.MarkupParser;
+import it.uniroma3.main.pipeline.Checkpoint;
 import it.uniroma3.main.pipeline.triplesextractor.placeholders.PlaceholderFilter;
+import it.uniroma3.main.pipeline.watchdog.BudgetExceededException;
 import it.uniroma3.main.util.Pair;
 
 /**
@@ -59,7 +62,6 @@ public class Triplifier {
    * 
    */
   public Triplifier() {
-    Lector.getDbmodel(true);
     labeled_triples = new ConcurrentLinkedQueue<Pair<WikiTriple, String>>();
     unlabeled_triples = new ConcurrentLinkedQueue<WikiTriple>();
     other_triples = new ConcurrentLinkedQueue<WikiTriple>();
@@ -91,17 +93,101 @@ public class Triplifier {
    * @param article
    */
   public void extractTriples(WikiArticle article) {
-    for (Map.Entry<String, List<String>> sentenceCollection : article.getSentences().entrySet()) {
-      String section = sentenceCollection.getKey();
-      for (String sentence : sentenceCollection.getValue()) {
-        sentence = Lector.getTextParser().removeParenthesis(sentence);
-        sentence =
-            replaceMultiValuedList(sentence, sentenceCollection.getKey(), article.getWikid());
-        for (WikiTriple t : createTriples(article, sentence, section)) {
-          processTriple(t);
-        }
+    addTriples(article, createTriples(article));
+  }
+
+  /**
+   * Extracts the triples (and the multi-valued lists) of all the sentences of the article, without
+   * dispatching them. The sections of a very long article are shared among the threads of the fan
+   * out.
+   * 
+   * @param article
+   * @return
+   */
+  public ArticleTriples createTriples(WikiArticle article) {
+    List<Map.Entry<String, List<AnnotatedText>>> sections =
+        new ArrayList<Map.Entry<String, List<AnnotatedText>>>(article.getSentences().entrySet());
+    int chars = 0;
+    for (Map.Entry<String, List<AnnotatedText>> section : sections)
+      chars += length(section.getValue());
+    ArticleTriples triples = new ArticleTriples();
+    if (Lector.getFanOut().isLarge(chars)) {
+      for (ArticleTriples created : Lector.getFanOut().map(sections,
+          section -> length(section.getValue()),
+          section -> createSectionTriples(article, section.getKey(), section.getValue())))
+        triples.addAll(created);
+    } else {
+      for (Map.Entry<String, List<AnnotatedText>> section : sections)
+        triples.addAll(createSectionTriples(article, section.getKey(), section.getValue()));
+    }
+    return triples;
+  }
+
+  /**
+   * 
+   * @param sentences
+   * @return
+   */
+  private static int length(List<AnnotatedText> sentences) {
+    int chars = 0;
+    for (AnnotatedText sentence : sentences)
+      chars += sentence.getText().length();
+    return chars;
+  }
+
+  /**
+   * Extracts the triples of the sentences of a section.
+   * 
+   * @param article
+   * @param section
+   * @param sentences
+   * @return
+   */
+  private ArticleTriples createSectionTriples(WikiArticle article, String section,
+      List<AnnotatedText> sentences) {
+    ArticleTriples triples = new ArticleTriples();
+    for (AnnotatedText sentence : sentences) {
+      String inline = sentence.toString();
+      if (needsRewriting(inline)) {
+        inline = Lector.getTextParser().removeParenthesis(inline);
+        inline = replaceMultiValuedList(inline, section, article.getWikid(), triples.getLists());
+        sentence = AnnotatedText.parse(inline);
+      } else {
+        sentence = sentence.trim();
       }
+      triples.getTriples().addAll(createTriples(article, sentence, section));
     }
+    return triples;
+  }
+
+  /**
+   * The parenthesis and the multi-valued lists are rewritten in the inline sentence, and this is
+   * needed only if there is a parenthesis or at least three entities (a list).
+   * 
+   * @param inline
+   * @return
+   */
+  private static boolean needsRewriting(String inline) {
+    if (inline.indexOf('(') >= 0)
+      return true;
+    int entities = 0;
+    for (int i = inline.indexOf(">>"); i >= 0 && entities < 3; i = inline.indexOf(">>", i + 2))
+      entities++;
+    return entities >= 3;
+  }
+
+  /**
+   * Dispatches the triples of the article (with its multi-valued lists and its nationality) in the
+   * DB.
+   * 
+   * @param article
+   * @param triples
+   */
+  public void addTriples(WikiArticle article, ArticleTriples triples) {
+    for (WikiTriple t : triples.getTriples()) {
+      processTriple(t);
+    }
+    mvlists.addAll(triples.getLists());
     extractNationality(article);
   }
 
@@ -161,11 +247,19 @@ public class Triplifier {
    * @return
    */
   public List<WikiTriple> createTriples(WikiArticle article, String sentence, String section) {
-    List<WikiTriple> triples = new ArrayList<WikiTriple>();
+    return createTriples(article, AnnotatedText.parse(sentence).trim(), section);
+  }
 
-    // find entities
-    Pattern ENTITIES = Pattern.compile(MarkupParser.WIKID_REGEX);
-    Matcher m = ENTITIES.matcher(sentence);
+  /**
+   * Extract a list of triples (using consecutive entities) from the given sentence, walking its
+   * entities. The inline sentence is rendered only for the triples (provenance).
+   * 
+   * @param annotated
+   * @return
+   */
+  public List<WikiTriple> createTriples(WikiArticle article, AnnotatedText annotated,
+      String section) {
+    List<WikiTriple> triples = new ArrayList<WikiTriple>();
 
     // find placeholders
     Pattern PLACEHOLDERS = Pattern.compile("#[A-Z]+?#");
@@ -190,11 +284,13 @@ public class Triplifier {
     int objectStartPos = 0;
     int objectEndPos = 0;
 
-    sentence = sentence.trim().replace("\t", " ").replaceAll("\n", " ");
+    String sentence = annotated.toString().replace("\t", " ").replaceAll("\n", " ");
 
-    while (m.find()) {
+    for (int entity = 0; entity < annotated.size(); entity++) {
+      if (Thread.currentThread().isInterrupted())
+        throw new BudgetExceededException();
       allEntities.incrementAndGet();
-      method = m.group(1);
+      method = annotated.getMethod(entity);
       if (method.contains("PE"))
         allPE.incrementAndGet();
       else
@@ -203,14 +299,14 @@ public class Triplifier {
 
       if (!foundSubject) {
         foundSubject = true;
-        subject = m.group(0);
-        subjectStartPos = m.start(0);
-        subjectEndPos = m.end(0);
+        subject = annotated.render(entity);
+        subjectStartPos = annotated.getRenderedStart(entity);
+        subjectEndPos = annotated.getRenderedEnd(entity);
 
       } else if (!foundObject) {
-        object = m.group(0);
-        objectStartPos = m.start(0);
-        objectEndPos = m.end(0);
+        object = annotated.render(entity);
+        objectStartPos = annotated.getRenderedStart(entity);
+        objectEndPos = annotated.getRenderedEnd(entity);
 
         pre = getWindow(replaceEntities(sentence.substring(Math.max(subjectStartPos - 200, 0), subjectStartPos).trim()), 3, "pre");
         post = getWindow(replaceEntities(sentence.substring(objectEndPos, Math.min(sentence.length(), objectEndPos + 200)).trim()), 3, "post");
@@ -264,16 +360,20 @@ public class Triplifier {
 
 
   /**
-   * Replace all the MVL lists that are present in the sentence.
+   * Replace all the MVL lists that are present in the sentence, collecting them in lists.
    * 
    * @param sentence
+   * @param section
+   * @param wikid
+   * @param lists
    * @return
    */
-  private String replaceMultiValuedList(String sentence, String section, String wikid) {
+  private String replaceMultiValuedList(String sentence, String section, String wikid,
+      List<WikiMVL> lists) {
     Matcher m = WikiMVL.getRegexMVL().matcher(sentence);
     while (m.find()) {
       WikiMVL mv = new WikiMVL(m.group(0), section, wikid);
-      this.mvlists.add(mv);
+      lists.add(mv);
       sentence = m.replaceAll(
           Matcher.quoteReplacement("<<MVL><" + mv.getCode() + "><" + mv.getSpanOfText() + ">>"));
     }
@@ -389,24 +489,47 @@ public class Triplifier {
 
 
   /**
+   * Writes in the DB the triples extracted so far, together with the checkpoint. The queues are
+   * drained (and not cleared) so that the triples added meanwhile by the other threads are kept
+   * for the next block.
    * 
+   * @param checkpoint
+   * @return the number of triples written
    */
-  public void updateBlock() {
-    Lector.getDbmodel(false).batchInsertLabeledTriple(this.labeled_triples);
-    this.labeled_triples.clear();
-
-    Lector.getDbmodel(false).batchInsertNationalityTriple(this.nationalities);
-    this.nationalities.clear();
-
-    Lector.getDbmodel(false).batchInsertUnlabeledTriple(this.unlabeled_triples);
-    this.unlabeled_triples.clear();
-
-    Lector.getDbmodel(false).batchInsertOtherTriple(this.other_triples);
-    this.other_triples.clear();
+  public int updateBlock(Checkpoint checkpoint) {
+    return updateBlock(checkpoint, false);
+  }
 
-    Lector.getDbmodel(false).batchInsertMVList(this.mvlists);
-    this.mvlists.clear();
+  /**
+   * Same as above. With replace, the rows that the articles of the block already had in the DB
+   * are replaced (incremental extraction).
+   * 
+   * @param checkpoint
+   * @param replace
+   * @return the number of triples written
+   */
+  public synchronized int updateBlock(Checkpoint checkpoint, boolean replace) {
+    Queue<Pair<WikiTriple, String>> labeled = drain(this.labeled_triples);
+    Queue<String[]> nationality = drain(this.nationalities);
+    Queue<WikiTriple> unlabeled = drain(this.unlabeled_triples);
+    Queue<WikiTriple> other = drain(this.other_triples);
+    Lector.getDbmodel(false).batchInsertBlock(labeled, nationality, unlabeled, other,
+        drain(this.mvlists), checkpoint, replace);
+    return labeled.size() + nationality.size() + unlabeled.size() + other.size();
+  }
 
+  /**
+   * Moves the current content of the queue in a new one.
+   * 
+   * @param queue
+   * @return
+   */
+  private static <T> Queue<T> drain(Queue<T> queue) {
+    Queue<T> drained = new ArrayDeque<T>();
+    T element;
+    while ((element = queue.poll()) != null)
+      drained.add(element);
+    return drained;
   }
 
   /**
@@ -0,0 +1,18 @@
+package it.uniroma3.main.pipeline.watchdog;
+
+/**
+ * Thrown in a thread that has been interrupted by the watchdog, because the article it was
+ * processing used all the time of its budget.
+ *
+ * @author matteo
+ *
+ */
+public class BudgetExceededException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public BudgetExceededException() {
+    super("time budget of the article exceeded");
+  }
+
+}
@@ -0,0 +1,44 @@
+package it.uniroma3.main.pipeline.watchdog;
+
+/**
+ * A CharSequence that can be given to a regex Matcher so that the matching can be aborted: the
+ * matcher reads every character through charAt, which fails as soon as the thread is interrupted.
+ *
+ * @author matteo
+ *
+ */
+public class InterruptibleCharSequence implements CharSequence {
+
+  private CharSequence inner;
+
+  /**
+   *
+   * @param inner
+   */
+  public InterruptibleCharSequence(CharSequence inner) {
+    this.inner = inner;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (Thread.currentThread().isInterrupted())
+      throw new BudgetExceededException();
+    return inner.charAt(index);
+  }
+
+  @Override
+  public int length() {
+    return inner.length();
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return new InterruptibleCharSequence(inner.subSequence(start, end));
+  }
+
+  @Override
+  public String toString() {
+    return inner.toString();
+  }
+
+}
@@ -0,0 +1,163 @@
+package it.uniroma3.main.pipeline.watchdog;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Gives a time budget to each article in each stage of the pipeline. A background thread
+ * interrupts the threads whose article is over budget: the regex matching on an
+ * InterruptibleCharSequence stops as soon as the thread is interrupted, every other code ends
+ * normally.
+ *
+ * Either way, an article that exceeded its budget is skipped and written in the quarantine file
+ * (wikid, stage, page, seconds), so that it can be replayed offline.
+ *
+ * @author matteo
+ *
+ */
+public class Watchdog {
+
+  /* how often the running articles are checked, in milliseconds */
+  private static final long TICK = 100;
+
+  private Map<Thread, Task> running;
+  private PrintStream quarantine;
+  private AtomicInteger quarantined;
+  private Thread checker;
+
+  /**
+   * The quarantine file is appended, if it already exists.
+   *
+   * @param quarantineFile
+   */
+  public Watchdog(String quarantineFile) {
+    this.running = new ConcurrentHashMap<Thread, Task>();
+    this.quarantined = new AtomicInteger(0);
+    try {
+      File file = new File(quarantineFile);
+      file.getAbsoluteFile().getParentFile().mkdirs();
+      this.quarantine = new PrintStream(new FileOutputStream(file, true), true, "UTF-8");
+    } catch (FileNotFoundException | UnsupportedEncodingException e) {
+      e.printStackTrace();
+    }
+    this.checker = new Thread(this::check, "watchdog");
+    this.checker.setDaemon(true);
+    this.checker.start();
+  }
+
+  /**
+   * Runs the task of the stage on the article, in the current thread. Returns null if the article
+   * exceeded the budget (in seconds, 0 means no budget).
+   *
+   * @param stage
+   * @param wikid
+   * @param page
+   * @param budget
+   * @param task
+   * @return
+   */
+  public <T> T run(String stage, String wikid, int page, int budget, Supplier<T> task) {
+    if (budget <= 0)
+      return task.get();
+    Task current = new Task(Thread.currentThread(), System.nanoTime() + budget * 1000000000L);
+    running.put(current.thread, current);
+    long start = System.nanoTime();
+    T result = null;
+    try {
+      result = task.get();
+    } catch (BudgetExceededException e) {
+      result = null;
+    } finally {
+      synchronized (current) {
+        current.active = false;
+      }
+      running.remove(current.thread);
+      // clears an interruption that arrived after the last check of the task
+      Thread.interrupted();
+    }
+    if (current.expired) {
+      quarantine(wikid, stage, page, (System.nanoTime() - start) / 1e9);
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * The loop of the background thread.
+   */
+  private void check() {
+    try {
+      while (true) {
+        Thread.sleep(TICK);
+        long now = System.nanoTime();
+        for (Task task : running.values()) {
+          if (now - task.deadline > 0) {
+            // the lock guarantees that the thread is still working on the same article
+            synchronized (task) {
+              if (task.active && !task.expired) {
+                task.expired = true;
+                task.thread.interrupt();
+              }
+            }
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      return;
+    }
+  }
+
+  /**
+   *
+   * @param wikid
+   * @param stage
+   * @param page
+   * @param seconds
+   */
+  private void quarantine(String wikid, String stage, int page, double seconds) {
+    quarantined.incrementAndGet();
+    System.out.printf("\tQuarantined %s in %s after %.1f sec.\n", wikid, stage, seconds);
+    if (quarantine != null)
+      quarantine.printf("%s\t%s\t%d\t%.1f\n", wikid, stage, page, seconds);
+  }
+
+  /**
+   *
+   * @return
+   */
+  public int getQuarantined() {
+    return quarantined.get();
+  }
+
+  /**
+   *
+   */
+  public void close() {
+    checker.interrupt();
+    if (quarantine != null)
+      quarantine.close();
+  }
+
+  /**
+   * An article being processed by a thread.
+   */
+  private static class Task {
+    private final Thread thread;
+    private final long deadline;
+    private boolean active = true;
+    private volatile boolean expired;
+
+    private Task(Thread thread, long deadline) {
+      this.thread = thread;
+      this.deadline = deadline;
+    }
+  }
+
+}
@@ -0,0 +1,139 @@
+package it.uniroma3.main.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton: finds which of a set of keywords occur in a text with a single scan of
+ * the text, whatever the number of keywords.
+ *
+ * @author matteo
+ *
+ */
+public class AhoCorasick {
+
+  /* transitions of each state, the labels are sorted */
+  private char[][] labels;
+  private int[][] targets;
+  /* longest proper suffix of the state that is also a state */
+  private int[] fail;
+  /* keywords that end in each state, including the ones of its suffixes */
+  private int[][] outputs;
+
+  /**
+   * The keywords are identified by their position in the list.
+   *
+   * @param keywords
+   */
+  public AhoCorasick(List<String> keywords) {
+    List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+    List<List<Integer>> ends = new ArrayList<List<Integer>>();
+    trie.add(new TreeMap<Character, Integer>());
+    ends.add(new ArrayList<Integer>());
+    for (int k = 0; k < keywords.size(); k++) {
+      int state = 0;
+      for (char c : keywords.get(k).toCharArray()) {
+        Integer next = trie.get(state).get(c);
+        if (next == null) {
+          next = trie.size();
+          trie.add(new TreeMap<Character, Integer>());
+          ends.add(new ArrayList<Integer>());
+          trie.get(state).put(c, next);
+        }
+        state = next;
+      }
+      ends.get(state).add(k);
+    }
+
+    int size = trie.size();
+    this.labels = new char[size][];
+    this.targets = new int[size][];
+    for (int s = 0; s < size; s++) {
+      labels[s] = new char[trie.get(s).size()];
+      targets[s] = new int[trie.get(s).size()];
+      int i = 0;
+      for (Map.Entry<Character, Integer> t : trie.get(s).entrySet()) {
+        labels[s][i] = t.getKey();
+        targets[s][i++] = t.getValue();
+      }
+    }
+
+    // breadth first, so that the fail state of each state is already complete
+    this.fail = new int[size];
+    this.outputs = new int[size][];
+    outputs[0] = toArray(ends.get(0));
+    Deque<Integer> queue = new ArrayDeque<Integer>();
+    for (int child : targets[0]) {
+      fail[child] = 0;
+      queue.add(child);
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      List<Integer> out = new ArrayList<Integer>(ends.get(state));
+      for (int o : outputs[fail[state]])
+        out.add(o);
+      outputs[state] = toArray(out);
+      for (int i = 0; i < labels[state].length; i++) {
+        int child = targets[state][i];
+        int f = fail[state];
+        while (f != 0 && next(f, labels[state][i]) < 0)
+          f = fail[f];
+        int n = next(f, labels[state][i]);
+        fail[child] = (n < 0 || n == child) ? 0 : n;
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   *
+   * @param list
+   * @return
+   */
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++)
+      array[i] = list.get(i);
+    return array;
+  }
+
+  /**
+   * The transition from the state with the char, or -1.
+   *
+   * @param state
+   * @param c
+   * @return
+   */
+  private int next(int state, char c) {
+    int i = Arrays.binarySearch(labels[state], c);
+    return (i < 0) ? -1 : targets[state][i];
+  }
+
+  /**
+   * Returns the keywords that occur in the text.
+   *
+   * @param text
+   * @return
+   */
+  public BitSet search(CharSequence text) {
+    BitSet found = new BitSet();
+    int state = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      int n;
+      while ((n = next(state, c)) < 0 && state != 0)
+        state = fail[state];
+      state = (n < 0) ? 0 : n;
+      for (int k : outputs[state])
+        found.set(k);
+    }
+    return found;
+  }
+
+}
@@ -1,235 +1,417 @@
 package it.uniroma3.main.util;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Paths;
-import java.util.Base64;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field.Store;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.IndexWriterConfig.OpenMode;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.MatchAllDocsQuery;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
+import java.util.function.IntUnaryOperator;
+import it.uniroma3.config.Configuration;
+import it.uniroma3.config.Lector;
+import it.uniroma3.main.kg.normalizer.Normalizer;
 
 /**
- * 
- * 
+ * A read-only index of key-value pairs (redirects, instance types, DBpedia relations) in a single
+ * file of the index folder, mapped in memory (in several segments, so it can be larger than 2GB).
+ *
+ * The distinct strings are written once, in UTF-8, in a heap sorted by their bytes: a string is
+ * found with a binary search, and its position in the heap (its id) orders it as its bytes. The
+ * pairs are two arrays of ids sorted by key (in the order of insertion for the same key), plus a
+ * permutation of the pairs sorted by value. A lookup is two binary searches, and only the strings
+ * returned are decoded.
+ *
+ * The indexes built on Lucene by the previous versions are converted the first time they are
+ * opened, and the files with int offsets (at most 2GB) are still read as they are.
+ *
  * @author matteo
  *
  */
 public class KeyValueIndex {
 
-  private IndexSearcher indexSearcher;
+  /* the file of the index, in its folder */
+  private static final String FILE = "pairs.kv";
+  /* LKV2: the offsets of the strings are longs (they were ints in LKV1, that is still read) */
+  private static final int MAGIC = 0x4c4b5632;
+  private static final int MAGIC_INT_OFFSETS = 0x4c4b5631;
+  private static final int HEADER = 3 * Integer.BYTES;
+  /* the heap is mapped in segments of 1GB, a mapped buffer can not be larger than 2GB */
+  private static final int SEGMENT_BITS = 30;
+  private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+  /* as many hits as the queries on Lucene collected */
+  private static final int MAX_VALUES = 20;
+  private static final int MAX_KEYS = 1000000;
+
   private int indexedLines;
+  private int strings;
+  private int pairs;
+  /* offsets of the strings in the heap, one more than the strings (intOffsets in LKV1) */
+  private LongBuffer offsets;
+  private IntBuffer intOffsets;
+  private IntBuffer keys;
+  private IntBuffer values;
+  private IntBuffer byValue;
+  private ByteBuffer[] heap;
 
   /**
    * This is the constructor if we need to create the index from a list of pairs.
-   * 
-   * @param kvPairsFilePath
+   *
+   * @param kvPairsList
    * @param kvIndexPath
    */
   public KeyValueIndex(List<Pair<String, String>> kvPairsList, String kvIndexPath) {
-    indexedLines = this.createIndexFromList(kvPairsList, kvIndexPath);
-    this.indexSearcher = createSearcher(kvIndexPath);
+    File file = new File(kvIndexPath, FILE);
+    try {
+      indexedLines = write(kvPairsList, file);
+      open(file);
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot write the index " + file, e);
+    }
   }
 
-
   /**
    * This is the constructor if we already have the index.
-   * 
+   *
    * @param kvIndexPath
    */
   public KeyValueIndex(String kvIndexPath) {
-    this.indexSearcher = createSearcher(kvIndexPath);
+    File file = new File(kvIndexPath, FILE);
+    try {
+      if (!file.exists() && new File(kvIndexPath).isDirectory())
+        convert(kvIndexPath, file);
+      open(file);
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot open the index " + file, e);
+    }
   }
 
   /**
-   * 
+   * Writes the pairs of the index built on Lucene in the new format, in the same folder.
+   *
    * @param kvIndexPath
-   * @return
+   * @param file
+   * @throws IOException
    */
-  private IndexWriter createWriter(String kvIndexPath) {
-    IndexWriter writer = null;
-    try {
-      Directory dir = null;
-      if (new File(kvIndexPath).exists())
-        new File(kvIndexPath).delete();
-      dir = FSDirectory.open(Paths.get(kvIndexPath));
-      IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer());
-      config.setOpenMode(OpenMode.CREATE);
-      writer = new IndexWriter(dir, config);
+  private static void convert(String kvIndexPath, File file) throws IOException {
+    System.out.printf("\t\t%-20s %s\n", "--> Convert index:", new File(kvIndexPath).getName());
+    List<Pair<String, String>> kvPairsList = new ArrayList<Pair<String, String>>();
+    for (String pair : new LuceneKeyValueIndex(kvIndexPath).matchAllPairs()) {
+      int tab = pair.indexOf('\t');
+      kvPairsList.add(Pair.make(pair.substring(0, tab), pair.substring(tab + 1)));
+    }
+    write(kvPairsList, file);
+  }
 
-    } catch (IOException e) {
-      e.printStackTrace();
+  /**
+   * Writes the index in a temporary file, that replaces the file when it is complete.
+   *
+   * @param kvPairsList
+   * @param file
+   * @return the pairs written
+   * @throws IOException
+   */
+  private static int write(List<Pair<String, String>> kvPairsList, File file) throws IOException {
+    // the sources (Normalizer, TSVReader) give linked lists
+    kvPairsList = new ArrayList<Pair<String, String>>(kvPairsList);
+
+    // the distinct strings, sorted by their bytes
+    Map<String, Integer> ids = new HashMap<String, Integer>();
+    for (Pair<String, String> pair : kvPairsList) {
+      ids.put(pair.key, 0);
+      ids.put(pair.value, 0);
+    }
+    List<Pair<byte[], String>> encoded = new ArrayList<Pair<byte[], String>>(ids.size());
+    for (String string : ids.keySet())
+      encoded.add(Pair.make(string.getBytes(StandardCharsets.UTF_8), string));
+    encoded.sort((a, b) -> compare(a.key, b.key));
+    // a string that is not valid UTF-16 (a lone surrogate) has the same bytes of another one: it
+    // takes its id, as it is found in the lookups
+    List<byte[]> heap = new ArrayList<byte[]>(encoded.size());
+    for (Pair<byte[], String> string : encoded) {
+      if (heap.isEmpty() || compare(heap.get(heap.size() - 1), string.key) != 0)
+        heap.add(string.key);
+      ids.put(string.value, heap.size() - 1);
     }
-    return writer;
+    if (8L * (heap.size() + 1) > Integer.MAX_VALUE || 4L * kvPairsList.size() > Integer.MAX_VALUE)
+      throw new IOException("Too many strings or pairs for the index " + file);
+
+    // the pairs sorted by key and, for the same key, as they were inserted
+    long[] byKey = new long[kvPairsList.size()];
+    for (int p = 0; p < byKey.length; p++)
+      byKey[p] = ((long) ids.get(kvPairsList.get(p).key) << 32) | p;
+    Arrays.sort(byKey);
+    int[] keys = new int[byKey.length];
+    int[] values = new int[byKey.length];
+    long[] byValue = new long[byKey.length];
+    for (int p = 0; p < byKey.length; p++) {
+      keys[p] = (int) (byKey[p] >>> 32);
+      values[p] = ids.get(kvPairsList.get((int) byKey[p]).value);
+      byValue[p] = ((long) values[p] << 32) | p;
+    }
+    Arrays.sort(byValue);
+
+    file.getParentFile().mkdirs();
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(heap.size());
+      out.writeInt(keys.length);
+      long offset = 0;
+      for (byte[] string : heap) {
+        out.writeLong(offset);
+        offset += string.length;
+      }
+      out.writeLong(offset);
+      for (int key : keys)
+        out.writeInt(key);
+      for (int value : values)
+        out.writeInt(value);
+      for (long pair : byValue)
+        out.writeInt((int) pair);
+      for (byte[] string : heap)
+        out.write(string);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    return keys.length;
+  }
+
+  /**
+   * Maps the file of the index.
+   *
+   * @param file
+   * @throws IOException
+   */
+  private void open(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      int magic = (channel.size() < HEADER) ? 0 : raf.readInt();
+      if (magic != MAGIC && magic != MAGIC_INT_OFFSETS)
+        throw new IOException("Not a key-value index: " + file);
+      strings = raf.readInt();
+      pairs = raf.readInt();
+      long position = HEADER;
+      int offsetBytes = (magic == MAGIC) ? Long.BYTES : Integer.BYTES;
+      MappedByteBuffer mapped = map(channel, position, (long) offsetBytes * (strings + 1));
+      if (magic == MAGIC)
+        offsets = mapped.asLongBuffer();
+      else
+        intOffsets = mapped.asIntBuffer();
+      position += (long) offsetBytes * (strings + 1);
+      keys = map(channel, position, 4L * pairs).asIntBuffer();
+      position += 4L * pairs;
+      values = map(channel, position, 4L * pairs).asIntBuffer();
+      position += 4L * pairs;
+      byValue = map(channel, position, 4L * pairs).asIntBuffer();
+      position += 4L * pairs;
+      long heapSize = offset(strings);
+      if (position + heapSize != channel.size())
+        throw new IOException("The index is truncated: " + file);
+      heap = new ByteBuffer[(int) ((heapSize + SEGMENT_MASK) >>> SEGMENT_BITS)];
+      for (int s = 0; s < heap.length; s++) {
+        long from = (long) s << SEGMENT_BITS;
+        heap[s] = map(channel, position + from, Math.min(SEGMENT_MASK + 1L, heapSize - from));
+      }
+    }
+    if (indexedLines == 0)
+      indexedLines = pairs;
   }
 
   /**
-   * 
+   *
+   * @param channel
+   * @param position
+   * @param bytes
    * @return
    * @throws IOException
    */
-  private IndexSearcher createSearcher(String kvIndexPath) {
-    IndexSearcher searcher = null;
-    try {
+  private static MappedByteBuffer map(FileChannel channel, long position, long bytes)
+      throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+  }
 
-      Directory dir = FSDirectory.open(Paths.get(kvIndexPath));
-      IndexReader reader = DirectoryReader.open(dir);
-      searcher = new IndexSearcher(reader);
-    } catch (IOException e) {
-      e.printStackTrace();
+  /**
+   * Compares two strings in UTF-8 as unsigned bytes.
+   *
+   * @param a
+   * @param b
+   * @return
+   */
+  private static int compare(byte[] a, byte[] b) {
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      int c = (a[i] & 0xff) - (b[i] & 0xff);
+      if (c != 0)
+        return c;
     }
+    return a.length - b.length;
+  }
+
+  /**
+   *
+   * @param id
+   * @return the position of the string in the heap
+   */
+  private long offset(int id) {
+    return (offsets != null) ? offsets.get(id) : intOffsets.get(id);
+  }
 
-    return searcher;
+  /**
+   *
+   * @param position
+   * @return the byte of the heap at the given position
+   */
+  private byte heapAt(long position) {
+    return heap[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
   }
 
   /**
-   * 
-   * @param keywordToEncode
+   * Compares the string with the given id with a string in UTF-8.
+   *
+   * @param id
+   * @param target
    * @return
    */
-  private String encodeBase64(String keywordToEncode) {
-    return Base64.getEncoder().withoutPadding().encodeToString(keywordToEncode.getBytes());
+  private int compare(int id, byte[] target) {
+    long start = offset(id);
+    int length = (int) (offset(id + 1) - start);
+    int n = Math.min(length, target.length);
+    for (int i = 0; i < n; i++) {
+      int c = (heapAt(start + i) & 0xff) - (target[i] & 0xff);
+      if (c != 0)
+        return c;
+    }
+    return length - target.length;
   }
 
   /**
-   * 
-   * @param keywordToDecode
+   * Returns the id of the string, or -1 if it is not in the index.
+   *
+   * @param string
    * @return
    */
-  private String decodeBase64(String keywordToDecode) {
-    return new String(Base64.getDecoder().decode(keywordToDecode));
+  private int find(String string) {
+    byte[] target = string.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = strings - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = compare(mid, target);
+      if (c < 0)
+        low = mid + 1;
+      else if (c > 0)
+        high = mid - 1;
+      else
+        return mid;
+    }
+    return -1;
   }
 
   /**
-   * 
-   * @param kvPairsList
-   * @param kvIndexPath
+   *
+   * @param id
    * @return
    */
-  private int createIndexFromList(List<Pair<String, String>> kvPairsList, String kvIndexPath) {
-    IndexWriter writer = createWriter(kvIndexPath);
-    int count_ok = 0;
-    try {
-      for (Pair<String, String> pair : kvPairsList) {
-        String key = encodeBase64(pair.key);
-        String value = encodeBase64(pair.value);
-        count_ok += 1;
-        /*
-         * indexing key-value pairs using the name of the fields
-         */
-        Document doc = new Document();
-        doc.add(new StringField("key", key, Store.YES));
-        doc.add(new StringField("value", value, Store.YES));
-        writer.addDocument(doc);
-      }
-      writer.close();
+  private String getString(int id) {
+    long start = offset(id);
+    byte[] bytes = new byte[(int) (offset(id + 1) - start)];
+    for (int i = 0; i < bytes.length; i++)
+      bytes[i] = heapAt(start + i);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
 
-    } catch (IOException e) {
-      e.printStackTrace();
+  /**
+   * Returns the first position whose id is not less than the given one, in a sorted array of
+   * ids.
+   *
+   * @param idAt
+   * @param id
+   * @return
+   */
+  private int lowerBound(IntUnaryOperator idAt, int id) {
+    int low = 0;
+    int high = pairs;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (idAt.applyAsInt(mid) < id)
+        low = mid + 1;
+      else
+        high = mid;
     }
-    return count_ok;
+    return low;
   }
 
   /**
-   * 
+   *
    * @param value
    * @return
    */
   public Set<String> retrieveKeys(String value) {
     Set<String> keys = new HashSet<String>();
-    String encodedValue = this.encodeBase64(value);
-    Query query = new TermQuery(new Term("value", encodedValue));
-    try {
-      TopDocs hits = this.indexSearcher.search(query, 1000000);
-      for (ScoreDoc sd : hits.scoreDocs) {
-        Document d = this.indexSearcher.doc(sd.doc);
-        String decodedKey = this.decodeBase64(d.getField("key").stringValue());
-        keys.add(decodedKey);
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+    int id = find(value);
+    if (id < 0)
+      return keys;
+    IntUnaryOperator valueAt = p -> values.get(byValue.get(p));
+    for (int p = lowerBound(valueAt, id); p < pairs && keys.size() < MAX_KEYS
+        && valueAt.applyAsInt(p) == id; p++)
+      keys.add(getString(this.keys.get(byValue.get(p))));
     return keys;
   }
 
   /**
-   * 
+   *
    * @param key
    * @return
    */
   public Set<String> retrieveValues(String key) {
     Set<String> values = new HashSet<String>();
-    String encodedKey = this.encodeBase64(key);
-    Query query = new TermQuery(new Term("key", encodedKey));
-    try {
-      TopDocs hits = this.indexSearcher.search(query, 20);
-      for (ScoreDoc sd : hits.scoreDocs) {
-        Document d = this.indexSearcher.doc(sd.doc);
-        String decodedValue = this.decodeBase64(d.getField("value").stringValue());
-        values.add(decodedValue);
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+    int id = find(key);
+    if (id < 0)
+      return values;
+    int first = lowerBound(keys::get, id);
+    int last = Math.min(pairs, first + MAX_VALUES);
+    for (int p = first; p < last && keys.get(p) == id; p++)
+      values.add(getString(this.values.get(p)));
     return values;
   }
 
   /**
-   * 
+   *
    * @return
    */
   public CounterMap<String> matchAll() {
     CounterMap<String> results = new CounterMap<String>();
-    Query query = new MatchAllDocsQuery();
-    try {
-      TopDocs hits = this.indexSearcher.search(query, Integer.MAX_VALUE);
-      for (ScoreDoc sd : hits.scoreDocs) {
-        Document d = this.indexSearcher.doc(sd.doc);
-        String decodedValue = this.decodeBase64(d.getField("value").stringValue());
-        results.add(decodedValue);
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+    for (int p = 0; p < pairs; p++)
+      results.add(getString(values.get(p)));
     return results;
   }
 
   /**
-   * 
+   * Returns all the pairs (as key TAB value), in the order of the keys.
+   *
    * @return
    */
   public List<String> matchAllPairs() {
     List<String> results = new LinkedList<String>();
-    Query query = new MatchAllDocsQuery();
-    try {
-      TopDocs hits = this.indexSearcher.search(query, Integer.MAX_VALUE);
-      for (ScoreDoc sd : hits.scoreDocs) {
-        Document d = this.indexSearcher.doc(sd.doc);
-        String decodedKey = this.decodeBase64(d.getField("key").stringValue());
-        String decodedValue = this.decodeBase64(d.getField("value").stringValue());
-        results.add(decodedKey + "\t" + decodedValue);
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+    for (int p = 0; p < pairs; p++)
+      results.add(getString(keys.get(p)) + "\t" + getString(values.get(p)));
     return results;
   }
 
@@ -241,4 +423,105 @@ public class KeyValueIndex {
     return indexedLines;
   }
 
+  /**
+   *
+   * @param folder
+   * @return
+   */
+  private static long sizeOnDisk(File folder) {
+    long size = 0;
+    for (File file : folder.listFiles())
+      size += file.length();
+    return size;
+  }
+
+  /**
+   *
+   * @param folder
+   */
+  private static void delete(File folder) {
+    for (File file : folder.listFiles()) {
+      if (file.isDirectory())
+        delete(file);
+      else
+        file.delete();
+    }
+    folder.delete();
+  }
+
+  /**
+   * Compares the index with the one on Lucene, on the instance types of DBpedia (repeated with
+   * different names up to a million pairs): the time to build them, their size on disk, and the
+   * lookups per second of retrieveValues and retrieveKeys, checking that they return the same.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    Configuration.init(args);
+    Lector.init("FE");
+    List<Pair<String, String>> types =
+        Normalizer.normalizeInstanceTypesDataset(Configuration.getSourceMainInstanceTypes());
+    List<Pair<String, String>> kvPairsList = new ArrayList<Pair<String, String>>();
+    for (int copy = 0; kvPairsList.size() < 1000000; copy++)
+      for (Pair<String, String> pair : types)
+        kvPairsList.add(Pair.make(pair.key + "_" + copy, pair.value + "_" + copy));
+    System.out.printf("\t%-30s %d\n", "Pairs:", kvPairsList.size());
+
+    File folder = Files.createTempDirectory("kvindex").toFile();
+    String lucenePath = new File(folder, "lucene").getPath();
+    String packedPath = new File(folder, "packed").getPath();
+    long start = System.currentTimeMillis();
+    LuceneKeyValueIndex lucene = new LuceneKeyValueIndex(kvPairsList, lucenePath);
+    long luceneBuild = System.currentTimeMillis() - start;
+    start = System.currentTimeMillis();
+    KeyValueIndex packed = new KeyValueIndex(kvPairsList, packedPath);
+    long packedBuild = System.currentTimeMillis() - start;
+    System.out.printf("\t%-30s Lucene %d ms, packed %d ms\n", "Build:", luceneBuild, packedBuild);
+    System.out.printf("\t%-30s Lucene %d KB, packed %d KB\n", "Size on disk:",
+        sizeOnDisk(new File(lucenePath)) / 1024, sizeOnDisk(new File(packedPath)) / 1024);
+
+    Random random = new Random(42);
+    String[] keys = new String[100000];
+    String[] values = new String[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      Pair<String, String> pair = kvPairsList.get(random.nextInt(kvPairsList.size()));
+      keys[i] = (i % 10 == 0) ? pair.key + "_missing" : pair.key;
+      values[i] = pair.value;
+    }
+    int different = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (!lucene.retrieveValues(keys[i]).equals(packed.retrieveValues(keys[i])))
+        different++;
+      if (!lucene.retrieveKeys(values[i]).equals(packed.retrieveKeys(values[i])))
+        different++;
+    }
+    System.out.printf("\t%-30s %d\n", "Different lookups:", different);
+
+    for (int round = 0; round < 3; round++) {
+      start = System.nanoTime();
+      for (String key : keys)
+        lucene.retrieveValues(key);
+      long luceneValues = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (String key : keys)
+        packed.retrieveValues(key);
+      long packedValues = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < 1000; i++)
+        lucene.retrieveKeys(values[i]);
+      long luceneKeys = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < 1000; i++)
+        packed.retrieveKeys(values[i]);
+      long packedKeys = System.nanoTime() - start;
+      System.out.printf("\t%-30s Lucene %d/s, packed %d/s\n",
+          "Round " + round + " retrieveValues:", keys.length * 1000000000L / luceneValues,
+          keys.length * 1000000000L / packedValues);
+      System.out.printf("\t%-30s Lucene %d/s, packed %d/s\n", "Round " + round + " retrieveKeys:",
+          1000 * 1000000000L / luceneKeys, 1000 * 1000000000L / packedKeys);
+    }
+    delete(folder);
+  }
+
 }
@@ -0,0 +1,58 @@
+package it.uniroma3.main.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named prefix-1, prefix-2, ... so that the threads of each pool can be
+ * recognized in a thread dump or in a profiler. The threads can run a hook when they start and
+ * when they end, e.g. to create and release their thread-local components.
+ *
+ * @author matteo
+ *
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+  private String prefix;
+  private AtomicInteger count;
+  private Runnable onStart;
+  private Runnable onExit;
+
+  /**
+   *
+   * @param prefix
+   */
+  public NamedThreadFactory(String prefix) {
+    this(prefix, null, null);
+  }
+
+  /**
+   *
+   * @param prefix
+   * @param onStart run by each thread before its first task, can be null
+   * @param onExit run by each thread when it ends, can be null
+   */
+  public NamedThreadFactory(String prefix, Runnable onStart, Runnable onExit) {
+    this.prefix = prefix;
+    this.count = new AtomicInteger(0);
+    this.onStart = onStart;
+    this.onExit = onExit;
+  }
+
+  @Override
+  public Thread newThread(Runnable r) {
+    Thread t = new Thread(() -> {
+      try {
+        if (onStart != null)
+          onStart.run();
+        r.run();
+      } finally {
+        if (onExit != null)
+          onExit.run();
+      }
+    }, prefix + "-" + count.incrementAndGet());
+    t.setDaemon(true);
+    return t;
+  }
+
+}
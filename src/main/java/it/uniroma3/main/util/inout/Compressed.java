@@ -3,10 +3,10 @@ package it.uniroma3.main.util.inout;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import org.apache.commons.compress.compressors.CompressorException;
-import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 
 public class Compressed {
@@ -19,14 +19,43 @@ public class Compressed {
    */
   public static BufferedReader getBufferedReaderForCompressedFile(String path) {
     BufferedReader br = null;
-    try {
-      FileInputStream fin = new FileInputStream(path);
-      BufferedInputStream bis = new BufferedInputStream(fin);
-      CompressorInputStream input = new CompressorStreamFactory().createCompressorInputStream(bis);
+    InputStream input = getInputStreamForCompressedFile(path);
+    if (input != null)
       br = new BufferedReader(new InputStreamReader(input));
-    } catch (FileNotFoundException | CompressorException e) {
+    return br;
+  }
+
+  /**
+   * Returns the decompressed bytes of a compressed file. Concatenated streams (e.g. multistream
+   * bz2) are read until the end of the file.
+   * 
+   * @param path
+   * @return
+   */
+  public static InputStream getInputStreamForCompressedFile(String path) {
+    InputStream input = null;
+    try {
+      input = openCompressedFile(path);
+    } catch (IOException e) {
       e.printStackTrace();
     }
-    return br;
+    return input;
+  }
+
+  /**
+   * As getInputStreamForCompressedFile, but a file that can not be opened throws.
+   * 
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public static InputStream openCompressedFile(String path) throws IOException {
+    BufferedInputStream bis = new BufferedInputStream(new FileInputStream(path));
+    try {
+      return new CompressorStreamFactory(true).createCompressorInputStream(bis);
+    } catch (CompressorException e) {
+      bis.close();
+      throw new IOException("Cannot decompress " + path, e);
+    }
   }
 }
@@ -0,0 +1,71 @@
+package it.uniroma3.main.util.inout;
+
+import java.util.List;
+import it.uniroma3.config.Configuration;
+
+/**
+ * A DumpReader hands the <page> elements of a Wikipedia XML dump to the pipeline, in the same
+ * order in which they appear in the dump.
+ *
+ * @author matteo
+ *
+ */
+public abstract class DumpReader {
+
+  /**
+   * Returns the reader to use for the dump, based on the configuration. The multistream reader is
+   * used only for bz2 dumps, and in a worker of a sharded extraction it reads only the segments of
+   * the shard. With a prefetch depth greater than zero, the chunks are read in background.
+   *
+   * @param file
+   * @return
+   */
+  public static DumpReader getDumpReader(String file) {
+    DumpReader reader;
+    int shard = Configuration.getShard();
+    if (file.endsWith("bz2") && Configuration.useMultistreamReader())
+      reader = new MultistreamXMLReader(file, Configuration.getOriginalArticlesIndexFile(),
+          Configuration.getReaderThreads(), Math.max(shard, 0),
+          (shard < 0) ? 1 : Configuration.getShards());
+    else
+      reader = new XMLReader(file);
+    if (Configuration.getPrefetchDepth() > 0)
+      reader = new PrefetchDumpReader(reader, Configuration.getChunkSize(),
+          Configuration.getPrefetchDepth());
+    return reader;
+  }
+
+  /**
+   * Returns the next articles in the dump, at most chunk. An empty list means the dump is over.
+   * A dump that can not be read (e.g. a corrupted segment) throws a RuntimeException, rather than
+   * skipping pages and changing the numbers of the pages after them.
+   *
+   * @param chunk
+   * @return
+   */
+  public abstract List<String> nextChunk(int chunk);
+
+  /**
+   * Returns true if the whole dump was read, up to its closing </mediawiki>, without errors. Only
+   * then an empty chunk proves that the pages not seen are not in the dump anymore.
+   *
+   * @return
+   */
+  public abstract boolean reachedEnd();
+
+  /**
+   * Returns true if the reader hands out only the pages of the shard of this worker, so that the
+   * pipeline does not need to pick them.
+   *
+   * @return
+   */
+  public boolean readsShard() {
+    return false;
+  }
+
+  /**
+   *
+   */
+  public abstract void close();
+
+}
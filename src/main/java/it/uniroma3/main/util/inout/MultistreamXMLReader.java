@@ -0,0 +1,477 @@
+package it.uniroma3.main.util.inout;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import it.uniroma3.main.util.NamedThreadFactory;
+
+/**
+ * Reads a multistream bz2 dump (*-multistream.xml.bz2) decompressing its independent bz2 streams
+ * on a pool of threads. The streams are cut using the offsets of the index that comes with the
+ * dump (offset:pageid:title) or, when the index is missing, scanning the dump for the magic that
+ * opens every bz2 stream. The pages are handed out in the same order of the dump.
+ *
+ * A dump made by a single bz2 stream is still read correctly, but on a single thread: when no new
+ * stream starts within the first MAX_SEGMENT bytes of a segment, the rest of the dump is
+ * decompressed sequentially, so that it is never kept whole in memory.
+ *
+ * A worker of a sharded extraction gets only its own segments, dealt in turn to the shards: the
+ * segments of the other shards are skipped (with the index) or dropped (scanning) without being
+ * decompressed. Since every stream of a multistream dump holds whole pages, no page is split
+ * between two shards. The last segment is always decompressed, to find the end of the dump.
+ *
+ * @author matteo
+ *
+ */
+public class MultistreamXMLReader extends DumpReader {
+
+  /* every bz2 stream starts with "BZh", the block size ('1'-'9') and the block magic (pi) */
+  private static final byte[] BLOCK_MAGIC = {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+
+  /* minimum amount of compressed bytes given to each decompression task */
+  private static final int SEGMENT_SIZE = 1024 * 1024;
+
+  /* maximum amount of compressed bytes kept looking for the start of the next stream */
+  private static final int MAX_SEGMENT = 64 * SEGMENT_SIZE;
+
+  /* marks the end of the dump in the queue */
+  private static final Future<Segment> END = CompletableFuture.completedFuture(null);
+
+  private ExecutorService decompressors;
+  private BlockingQueue<Future<Segment>> segments;
+  private Thread producer;
+
+  private Deque<String> pages;
+  private byte[] pending; // a page that starts in a segment and continues in the next one
+  private boolean finished;
+  /* the last segment closed the dump, and it was reached */
+  private boolean closesDump;
+  private boolean ended;
+  private volatile boolean closed;
+  /* why the segmenter stopped before the end of the dump */
+  private volatile Throwable failure;
+
+  private int shard;
+  private int shards;
+  private int segmentCount;
+
+  /**
+   * Starts reading the dump. The index can be null, or not exist, in that case the dump is
+   * scanned.
+   *
+   * @param file
+   * @param indexFile
+   * @param threads
+   */
+  public MultistreamXMLReader(String file, String indexFile, int threads) {
+    this(file, indexFile, threads, 0, 1);
+  }
+
+  /**
+   * Starts reading only the segments of the given shard.
+   *
+   * @param file
+   * @param indexFile
+   * @param threads
+   * @param shard
+   * @param shards
+   */
+  public MultistreamXMLReader(String file, String indexFile, int threads, int shard,
+      int shards) {
+    this.shard = shard;
+    this.shards = shards;
+    this.decompressors =
+        Executors.newFixedThreadPool(threads, new NamedThreadFactory("bz2-decompressor"));
+    this.segments = new ArrayBlockingQueue<Future<Segment>>(threads * 2);
+    this.pages = new ArrayDeque<String>();
+    this.producer = new Thread(() -> produce(file, indexFile), "bz2-segmenter");
+    this.producer.setDaemon(true);
+    this.producer.start();
+  }
+
+  /**
+   * Reads the compressed dump sequentially and submits a decompression task for each segment. The
+   * end is always queued, also when the dump can not be read: the failure is then thrown to the
+   * reader of the pages.
+   *
+   * @param file
+   * @param indexFile
+   */
+  private void produce(String file, String indexFile) {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+      if (indexFile != null && new File(indexFile).exists())
+        segmentWithIndex(in, indexFile);
+      else
+        segmentWithScan(in);
+    } catch (InterruptedException e) {
+      return;
+    } catch (Throwable e) {
+      failure = e;
+    } finally {
+      try {
+        if (!closed)
+          segments.put(END);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Cuts the dump on the offsets of the streams that are listed in the index.
+   *
+   * @param in
+   * @param indexFile
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private void segmentWithIndex(InputStream in, String indexFile)
+      throws IOException, InterruptedException {
+    BufferedReader index;
+    if (indexFile.endsWith("bz2"))
+      index = Compressed.getBufferedReaderForCompressedFile(indexFile);
+    else
+      index = new BufferedReader(new FileReader(indexFile));
+    long position = 0;
+    String line;
+    while ((line = index.readLine()) != null && !closed) {
+      int sep = line.indexOf(':');
+      if (sep == -1)
+        continue;
+      long offset = Long.parseLong(line.substring(0, sep));
+      if (offset - position >= SEGMENT_SIZE) {
+        if (isOfShard()) {
+          byte[] segment = new byte[(int) (offset - position)];
+          IOUtils.readFully(in, segment);
+          submit(segment);
+        } else {
+          IOUtils.skipFully(in, offset - position);
+        }
+        position = offset;
+      }
+    }
+    index.close();
+    // the last streams, after the last offset
+    if (!closed)
+      submitLast(IOUtils.toByteArray(in));
+  }
+
+  /**
+   * Cuts the dump where a new bz2 stream starts, looking for its magic.
+   *
+   * @param in
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private void segmentWithScan(InputStream in) throws IOException, InterruptedException {
+    byte[] buffer = new byte[SEGMENT_SIZE * 2];
+    int size = 0;
+    int scanned = SEGMENT_SIZE;
+    int read;
+    while (!closed) {
+      if (size == buffer.length) {
+        if (buffer.length >= MAX_SEGMENT) {
+          // no other stream is near, e.g. a dump made by a single stream
+          decompressRest(new SequenceInputStream(new ByteArrayInputStream(buffer, 0, size), in));
+          return;
+        }
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+      if ((read = in.read(buffer, size, buffer.length - size)) == -1)
+        break;
+      size += read;
+      int cut = findStream(buffer, scanned, size);
+      if (cut != -1) {
+        if (isOfShard())
+          submit(Arrays.copyOf(buffer, cut));
+        System.arraycopy(buffer, cut, buffer, 0, size - cut);
+        size -= cut;
+        scanned = SEGMENT_SIZE;
+      } else {
+        scanned = Math.max(scanned, size - (BLOCK_MAGIC.length + 4));
+      }
+    }
+    if (size > 0 && !closed)
+      submitLast(Arrays.copyOf(buffer, size));
+  }
+
+  /**
+   * Decompresses the rest of the dump on the thread of the segmenter, cutting it in segments that
+   * end with a page. The segments of the other shards are dropped, the last one is kept to find
+   * the end of the dump.
+   *
+   * @param compressed
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  private void decompressRest(InputStream compressed) throws IOException, InterruptedException {
+    try (InputStream in = new BZip2CompressorInputStream(compressed, true)) {
+      byte[] buffer = new byte[SEGMENT_SIZE * 4];
+      int size = 0;
+      while (!closed) {
+        size += IOUtils.read(in, buffer, size, buffer.length - size);
+        if (size < buffer.length)
+          break;
+        int cut = lastIndexOf(buffer, PageSplitter.PAGE_CLOSE, size);
+        if (cut == -1) {
+          // a page bigger than the buffer
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+          continue;
+        }
+        cut += PageSplitter.PAGE_CLOSE.length;
+        if (isOfShard())
+          segments.put(CompletableFuture.completedFuture(new Segment(Arrays.copyOf(buffer, cut))));
+        System.arraycopy(buffer, cut, buffer, 0, size - cut);
+        size -= cut;
+      }
+      if (!closed) {
+        Segment last = new Segment(Arrays.copyOf(buffer, size));
+        segments.put(CompletableFuture.completedFuture(isOfShard() ? last : last.onlyEnd()));
+      }
+    }
+  }
+
+  /**
+   * Returns the position of the last occurrence of pattern in data[0, to), or -1.
+   *
+   * @param data
+   * @param pattern
+   * @param to
+   * @return
+   */
+  private static int lastIndexOf(byte[] data, byte[] pattern, int to) {
+    for (int i = to - pattern.length; i >= 0; i--) {
+      int j = 0;
+      while (j < pattern.length && data[i + j] == pattern[j])
+        j++;
+      if (j == pattern.length)
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true if the next segment of the dump belongs to the shard of this reader.
+   *
+   * @return
+   */
+  private boolean isOfShard() {
+    return segmentCount++ % shards == shard;
+  }
+
+  /**
+   * Returns the position of the first bz2 stream header in buffer[from, to), or -1.
+   *
+   * @param buffer
+   * @param from
+   * @param to
+   * @return
+   */
+  private static int findStream(byte[] buffer, int from, int to) {
+    for (int i = from; i + BLOCK_MAGIC.length + 4 <= to; i++) {
+      if (buffer[i] == 'B' && buffer[i + 1] == 'Z' && buffer[i + 2] == 'h'
+          && buffer[i + 3] >= '1' && buffer[i + 3] <= '9') {
+        int j = 0;
+        while (j < BLOCK_MAGIC.length && buffer[i + 4 + j] == BLOCK_MAGIC[j])
+          j++;
+        if (j == BLOCK_MAGIC.length)
+          return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   *
+   * @param compressed
+   * @throws InterruptedException
+   */
+  private void submit(byte[] compressed) throws InterruptedException {
+    segments.put(decompressors.submit(() -> decompress(compressed)));
+  }
+
+  /**
+   * Submits the last segment of the dump. When it belongs to another shard it is decompressed
+   * anyway, but only to know if the dump ends there.
+   *
+   * @param compressed
+   * @throws InterruptedException
+   */
+  private void submitLast(byte[] compressed) throws InterruptedException {
+    if (isOfShard())
+      submit(compressed);
+    else
+      segments.put(decompressors.submit(() -> decompress(compressed).onlyEnd()));
+  }
+
+  /**
+   * Decompresses all the streams of the segment and splits it in pages.
+   *
+   * @param compressed
+   * @return
+   * @throws IOException
+   */
+  private static Segment decompress(byte[] compressed) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 5);
+    try (InputStream in =
+        new BZip2CompressorInputStream(new ByteArrayInputStream(compressed), true)) {
+      IOUtils.copy(in, out);
+    }
+    return new Segment(out.toByteArray());
+  }
+
+  /**
+   * Moves the pages of the next segment in the queue of the pages. A segment that can not be
+   * decompressed fails the reading: skipping its pages would shift the numbers of all the pages
+   * after it, on which the checkpoint and the shards rely.
+   *
+   * @return false if the dump is over
+   */
+  private boolean nextSegment() {
+    Segment segment;
+    try {
+      segment = segments.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Cannot decompress a segment of the dump", e.getCause());
+    }
+    if (segment == null) {
+      if (failure != null)
+        throw new RuntimeException("Cannot read the dump", failure);
+      ended = true;
+      return false;
+    }
+    closesDump = segment.closesDump;
+
+    if (pending != null) {
+      byte[] page = Arrays.copyOf(pending, pending.length + segment.leadingEnd);
+      System.arraycopy(segment.data, 0, page, pending.length, segment.leadingEnd);
+      int end = PageSplitter.indexOf(page, PageSplitter.PAGE_CLOSE, 0, page.length);
+      if (end != -1) {
+        end += PageSplitter.PAGE_CLOSE.length;
+        pages.add(new String(page, 0, end, StandardCharsets.UTF_8));
+        pending = null;
+      } else {
+        pending = page;
+      }
+    }
+    pages.addAll(segment.pages);
+    if (segment.trailingStart != -1)
+      pending = Arrays.copyOfRange(segment.data, segment.trailingStart, segment.data.length);
+    return true;
+  }
+
+  /**
+   * Returns the next articles in the dump.
+   *
+   * @return
+   */
+  @Override
+  public List<String> nextChunk(int chunk) {
+    List<String> s = new ArrayList<String>(chunk);
+    while (s.size() < chunk && !finished) {
+      if (pages.isEmpty())
+        finished = !nextSegment();
+      else
+        s.add(pages.poll());
+    }
+    return s;
+  }
+
+  /**
+   *
+   */
+  @Override
+  public boolean reachedEnd() {
+    return ended && closesDump && pending == null;
+  }
+
+  /**
+   *
+   */
+  @Override
+  public boolean readsShard() {
+    return shards > 1;
+  }
+
+  /**
+   *
+   */
+  @Override
+  public void close() {
+    closed = true;
+    producer.interrupt();
+    decompressors.shutdownNow();
+  }
+
+  /**
+   * A decompressed piece of the dump. The complete pages are already decoded, what comes before
+   * the first <page> belongs to a page started in the previous segment, and the last page can
+   * continue in the next segment.
+   */
+  private static class Segment {
+    private byte[] data;
+    private int leadingEnd;
+    private int trailingStart = -1;
+    private List<String> pages = new ArrayList<String>();
+    /* the closing of the dump comes after the last page */
+    private boolean closesDump;
+
+    private Segment(byte[] data) {
+      this.data = data;
+      int start = PageSplitter.indexOf(data, PageSplitter.PAGE_OPEN, 0, data.length);
+      this.leadingEnd = (start == -1) ? data.length : start;
+      int lastEnd = 0;
+      while (start != -1) {
+        int end = PageSplitter.indexOf(data, PageSplitter.PAGE_CLOSE, start, data.length);
+        if (end == -1) {
+          this.trailingStart = start;
+          break;
+        }
+        end += PageSplitter.PAGE_CLOSE.length;
+        pages.add(new String(data, start, end - start, StandardCharsets.UTF_8));
+        lastEnd = end;
+        start = PageSplitter.indexOf(data, PageSplitter.PAGE_OPEN, end, data.length);
+      }
+      this.closesDump = trailingStart == -1
+          && PageSplitter.indexOf(data, PageSplitter.DUMP_CLOSE, lastEnd, data.length) != -1;
+    }
+
+    /**
+     * Keeps only the end of the dump, for a segment of another shard.
+     *
+     * @return
+     */
+    private Segment onlyEnd() {
+      this.data = new byte[0];
+      this.leadingEnd = 0;
+      this.pages.clear();
+      return this;
+    }
+  }
+
+}
@@ -0,0 +1,267 @@
+package it.uniroma3.main.util.inout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a Wikipedia XML dump in <page> elements working directly on the UTF-8 bytes. Each page is
+ * decoded once, from its <page> to its </page>, without building the lines of the dump.
+ *
+ * An uncompressed dump is memory-mapped, a compressed one is read from the decompressing stream
+ * into a single growing buffer.
+ *
+ * The splitter also tells if the dump really ended, i.e. its closing </mediawiki> came after the
+ * last page, rather than the file being cut.
+ *
+ */
+public abstract class PageSplitter {
+
+  protected static final byte[] PAGE_OPEN = "<page>".getBytes(StandardCharsets.UTF_8);
+  protected static final byte[] PAGE_CLOSE = "</page>".getBytes(StandardCharsets.UTF_8);
+  protected static final byte[] DUMP_CLOSE = "</mediawiki>".getBytes(StandardCharsets.UTF_8);
+
+  /* the closing of the dump was found after the last page */
+  protected boolean complete;
+
+  /**
+   * Returns a splitter that reads the pages from a (decompressed) stream.
+   *
+   * @param in
+   * @return
+   */
+  public static PageSplitter forStream(InputStream in) {
+    return new StreamPageSplitter(in);
+  }
+
+  /**
+   * Returns a splitter that reads the pages from an uncompressed file, using memory-mapping.
+   *
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public static PageSplitter forFile(String path) throws IOException {
+    return new MappedPageSplitter(path);
+  }
+
+  /**
+   * Returns the next page of the dump, or null if the dump is over.
+   *
+   * @return
+   * @throws IOException
+   */
+  public abstract String nextPage() throws IOException;
+
+  /**
+   * Returns true if the dump is over and it ended with its closing </mediawiki>.
+   *
+   * @return
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   *
+   * @throws IOException
+   */
+  public abstract void close() throws IOException;
+
+  /**
+   * Returns the position of the first occurrence of pattern in data[from, to), or -1.
+   *
+   * @param data
+   * @param pattern
+   * @param from
+   * @param to
+   * @return
+   */
+  public static int indexOf(byte[] data, byte[] pattern, int from, int to) {
+    byte first = pattern[0];
+    int last = to - pattern.length;
+    for (int i = from; i <= last; i++) {
+      if (data[i] != first)
+        continue;
+      int j = 1;
+      while (j < pattern.length && data[i + j] == pattern[j])
+        j++;
+      if (j == pattern.length)
+        return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Reads the pages from a stream. The buffer contains the bytes not consumed yet and it is
+   * compacted (or grown, for pages bigger than the buffer) only when it is full.
+   */
+  private static class StreamPageSplitter extends PageSplitter {
+    private InputStream in;
+    private byte[] buffer = new byte[1 << 20];
+    private int start; // first byte not consumed yet
+    private int end; // first byte not read yet
+    private boolean eof;
+
+    private StreamPageSplitter(InputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public String nextPage() throws IOException {
+      int open;
+      while ((open = indexOf(buffer, PAGE_OPEN, start, end)) == -1) {
+        if (indexOf(buffer, DUMP_CLOSE, start, end) != -1)
+          complete = true;
+        if (eof)
+          return null;
+        // the markers could be split between what we have and the next read
+        start = Math.max(start, end - DUMP_CLOSE.length + 1);
+        fill();
+      }
+      complete = false;
+      start = open;
+      int scan = open + PAGE_OPEN.length;
+      int close;
+      while ((close = indexOf(buffer, PAGE_CLOSE, scan, end)) == -1) {
+        if (eof)
+          return null;
+        scan = Math.max(scan, end - PAGE_CLOSE.length + 1);
+        scan -= fill();
+      }
+      close += PAGE_CLOSE.length;
+      String page = new String(buffer, start, close - start, StandardCharsets.UTF_8);
+      start = close;
+      return page;
+    }
+
+    /**
+     * Reads more bytes, moving the bytes not consumed at the beginning of the buffer.
+     *
+     * @return how much the bytes have been moved back
+     * @throws IOException
+     */
+    private int fill() throws IOException {
+      int shift = start;
+      if (shift > 0) {
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+      }
+      if (end == buffer.length) {
+        byte[] bigger = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, bigger, 0, end);
+        buffer = bigger;
+      }
+      int read = in.read(buffer, end, buffer.length - end);
+      if (read == -1)
+        eof = true;
+      else
+        end += read;
+      return shift;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads the pages from a memory-mapped file. The file is mapped in windows, a window is moved
+   * forward when a marker or a page is not entirely contained in it.
+   */
+  private static class MappedPageSplitter extends PageSplitter {
+    private static final int WINDOW = 1 << 29;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long size;
+    private MappedByteBuffer window;
+    private long base; // position in the file of the window
+    private long cursor; // first byte not consumed yet
+
+    private MappedPageSplitter(String path) throws IOException {
+      this.file = new RandomAccessFile(path, "r");
+      this.channel = file.getChannel();
+      this.size = channel.size();
+      map(0, WINDOW);
+    }
+
+    /**
+     *
+     * @param position
+     * @param length
+     * @throws IOException
+     */
+    private void map(long position, long length) throws IOException {
+      this.base = position;
+      this.window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+          Math.min(length, size - position));
+    }
+
+    @Override
+    public String nextPage() throws IOException {
+      long open = find(PAGE_OPEN, cursor);
+      if (open == -1) {
+        complete = find(DUMP_CLOSE, cursor) != -1;
+        return null;
+      }
+      long close = find(PAGE_CLOSE, open + PAGE_OPEN.length);
+      if (close == -1)
+        return null;
+      close += PAGE_CLOSE.length;
+      int length = (int) (close - open);
+      if (open < base || close > base + window.limit())
+        map(open, Math.max(WINDOW, length));
+      byte[] page = new byte[length];
+      window.position((int) (open - base));
+      window.get(page);
+      cursor = close;
+      return new String(page, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the position in the file of the first occurrence of pattern after from, or -1.
+     *
+     * @param pattern
+     * @param from
+     * @return
+     * @throws IOException
+     */
+    private long find(byte[] pattern, long from) throws IOException {
+      while (true) {
+        if (from >= size)
+          return -1;
+        if (from < base || from >= base + window.limit())
+          map(from, WINDOW);
+        int limit = window.limit();
+        byte first = pattern[0];
+        for (int i = (int) (from - base); i <= limit - pattern.length; i++) {
+          if (window.get(i) != first)
+            continue;
+          int j = 1;
+          while (j < pattern.length && window.get(i + j) == pattern[j])
+            j++;
+          if (j == pattern.length)
+            return base + i;
+        }
+        if (base + limit >= size)
+          return -1;
+        // the marker could be split between this window and the next one
+        from = base + limit - pattern.length + 1;
+        map(from, WINDOW);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+      file.close();
+    }
+  }
+
+}
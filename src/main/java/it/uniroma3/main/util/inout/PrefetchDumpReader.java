@@ -0,0 +1,129 @@
+package it.uniroma3.main.util.inout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads the next chunks of the dump in a background thread, while the pipeline is processing the
+ * current one. At most depth chunks are kept in memory, then the reading thread waits.
+ *
+ * The chunks have always the size given at construction time, which is the only size that can be
+ * asked to nextChunk.
+ *
+ * @author matteo
+ *
+ */
+public class PrefetchDumpReader extends DumpReader {
+
+  private DumpReader reader;
+  private int chunkSize;
+  private BlockingQueue<List<String>> chunks;
+  private Thread producer;
+  private boolean finished;
+  /* the end chunk was taken, rather than the reading being interrupted */
+  private boolean drained;
+  /* why the reading thread stopped before the end of the dump */
+  private volatile Throwable failure;
+
+  /**
+   *
+   * @param reader
+   * @param chunkSize
+   * @param depth
+   */
+  public PrefetchDumpReader(DumpReader reader, int chunkSize, int depth) {
+    this.reader = reader;
+    this.chunkSize = chunkSize;
+    this.chunks = new ArrayBlockingQueue<List<String>>(depth);
+    this.producer = new Thread(() -> produce(chunkSize), "dump-prefetcher");
+    this.producer.setDaemon(true);
+    this.producer.start();
+  }
+
+  /**
+   * Fills the queue until the dump is over. The last chunk in the queue is always empty, also when
+   * the reader fails: the failure is then thrown to the consumer.
+   *
+   * @param chunkSize
+   */
+  private void produce(int chunkSize) {
+    try {
+      List<String> chunk;
+      do {
+        chunk = reader.nextChunk(chunkSize);
+        if (chunk.isEmpty())
+          break;
+        chunks.put(chunk);
+      } while (!Thread.currentThread().isInterrupted());
+    } catch (InterruptedException e) {
+      return;
+    } catch (Throwable e) {
+      failure = e;
+    }
+    try {
+      chunks.put(new ArrayList<String>());
+    } catch (InterruptedException e) {
+      return;
+    }
+  }
+
+  /**
+   * Returns the next prefetched chunk, waiting for it if the reader is slower than the pipeline.
+   * The chunks are read ahead, so their size can not change.
+   *
+   * @return
+   */
+  @Override
+  public List<String> nextChunk(int chunk) {
+    if (chunk != chunkSize)
+      throw new IllegalArgumentException(
+          "Chunks of " + chunk + " pages asked, but " + chunkSize + " are prefetched");
+    if (finished)
+      return new ArrayList<String>();
+    try {
+      List<String> next = chunks.take();
+      finished = next.isEmpty();
+      drained = finished;
+      if (finished && failure != null)
+        throw new RuntimeException("Cannot read the dump", failure);
+      return next;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      finished = true;
+      return new ArrayList<String>();
+    }
+  }
+
+  /**
+   * The underlying reader is read to its end by the background thread before the last chunk.
+   */
+  @Override
+  public boolean reachedEnd() {
+    return drained && failure == null && reader.reachedEnd();
+  }
+
+  /**
+   *
+   */
+  @Override
+  public boolean readsShard() {
+    return reader.readsShard();
+  }
+
+  /**
+   * Stops the background thread and closes the underlying reader.
+   */
+  @Override
+  public void close() {
+    producer.interrupt();
+    try {
+      producer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    reader.close();
+  }
+
+}
@@ -12,7 +12,7 @@ import it.uniroma3.config.Lector;
 public class ResultsWriterWrapper {
   private StringBuffer buffer = new StringBuffer();
   private Writer out;
-  private static String WIKIPEDIA_URL;
+  private String wikipediaURL;
 
   public ResultsWriterWrapper(String path) {
     setURILang();
@@ -29,7 +29,7 @@ public class ResultsWriterWrapper {
    * 
    */
   private void setURILang() {
-    WIKIPEDIA_URL = "https://" + Lector.getWikiLang().getLang().name() + ".wikipedia.org/wiki/";
+    wikipediaURL = "https://" + Lector.getWikiLang().getLang().name() + ".wikipedia.org/wiki/";
   }
 
   /**
@@ -60,7 +60,7 @@ public class ResultsWriterWrapper {
         e.printStackTrace();
       }
     }
-    String line = WIKIPEDIA_URL + wikid + "\t" + section + "\t" + predicate + "\t" + lectorSubect
+    String line = wikipediaURL + wikid + "\t" + section + "\t" + predicate + "\t" + lectorSubect
         + "\t" + subject + "\t" + lectorObject + "\t" + object + "\t" + phrase + "\t" + sentence;
     buffer.append(line.replace("\n", " ") + "\n");
   }
@@ -1,9 +1,7 @@
 package it.uniroma3.main.util.inout;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,65 +10,39 @@ import java.util.List;
  * @author matteo
  *
  */
-public class XMLReader {
-  private BufferedReader br;
+public class XMLReader extends DumpReader {
+  private PageSplitter splitter;
 
   /**
-   * Creates an input stream for reading Wikipedia articles from a bz2-compressed dump file.
+   * Creates an input stream for reading Wikipedia articles from a bz2-compressed dump file, or
+   * memory-maps the dump if it is not compressed. A dump that can not be opened throws an
+   * UncheckedIOException.
    * 
    * @param file
    */
   public XMLReader(String file) {
-    if (file.endsWith("bz2"))
-      this.br = Compressed.getBufferedReaderForCompressedFile(file);
-    else
-      this.br = getReaderXML(file);
-  }
-
-  /**
-   * 
-   * @param path
-   * @return
-   */
-  public BufferedReader getReaderXML(String path) {
-    BufferedReader br = null;
     try {
-      br = new BufferedReader(new FileReader(new File(path)));
+      if (file.endsWith("bz2"))
+        this.splitter = PageSplitter.forStream(Compressed.openCompressedFile(file));
+      else
+        this.splitter = PageSplitter.forFile(file);
     } catch (IOException e) {
-      e.printStackTrace();
+      throw new UncheckedIOException("Cannot open the dump " + file, e);
     }
-    return br;
   }
 
   /**
+   * Returns the next page, or null at the end of the dump. A read error (e.g. a truncated or
+   * corrupted bz2) throws an UncheckedIOException, rather than ending the dump there.
    * 
    * @return
    */
   public String getArticle() {
-    StringBuffer sb = new StringBuffer();
-    String line;
     try {
-      // read until the next article
-      while ((line = br.readLine()) != null) {
-        if (line.endsWith("<page>"))
-          break;
-      }
-      // no articles found in the dump
-      if (line == null) {
-        br.close();
-        return null;
-      } else { // extract an article
-        sb.append(line + "\n");
-        while ((line = br.readLine()) != null) {
-          sb.append(line + "\n");
-          if (line.endsWith("</page>"))
-            break;
-        }
-      }
+      return splitter.nextPage();
     } catch (IOException e) {
-      e.printStackTrace();
+      throw new UncheckedIOException("Cannot read the dump", e);
     }
-    return sb.toString();
   }
 
 
@@ -80,33 +52,12 @@ public class XMLReader {
    * 
    * @return
    */
+  @Override
   public List<String> nextChunk(int chunk) {
     List<String> s = new ArrayList<String>(chunk);
-    StringBuffer sb;
-    while (chunk > 0) {
-      sb = new StringBuffer();
-      String line;
-      try {
-        // read untill the next article
-        while ((line = br.readLine()) != null) {
-          if (line.endsWith("<page>"))
-            break;
-        }
-        // no articles found in the dump
-        if (line == null) {
-          break;
-        } else { // extract an article
-          sb.append(line + "\n");
-          while ((line = br.readLine()) != null) {
-            sb.append(line + "\n");
-            if (line.endsWith("</page>"))
-              break;
-          }
-        }
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-      s.add(sb.toString());
+    String page;
+    while (chunk > 0 && (page = getArticle()) != null) {
+      s.add(page);
       chunk -= 1;
     }
     return s;
@@ -115,9 +66,18 @@ public class XMLReader {
   /**
    * 
    */
+  @Override
+  public boolean reachedEnd() {
+    return splitter.isComplete();
+  }
+
+  /**
+   * 
+   */
+  @Override
   public void close() {
     try {
-      this.br.close();
+      this.splitter.close();
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -9,19 +9,19 @@ import it.uniroma3.config.WikiLanguage.Lang;
  * 
  */
 public class NTriplesConverter {
-  private static String RESOURCE;
   private static String ONTOLOGY = "http://dbpedia.org/ontology/";
 
 
   /**
-   * Use the right URIs depending on the language.
+   * Use the right URIs depending on the language (of the current thread).
    * 
+   * @return
    */
-  private static void setURIResource() {
+  private static String getURIResource() {
     if (!Lector.getWikiLang().getLang().equals(Lang.en))
-      RESOURCE = "http://" + Lector.getWikiLang().getLang().name() + ".dbpedia.org/resource/";
+      return "http://" + Lector.getWikiLang().getLang().name() + ".dbpedia.org/resource/";
     else
-      RESOURCE = "http://dbpedia.org/resource/";
+      return "http://dbpedia.org/resource/";
   }
 
   /**
@@ -32,11 +32,11 @@ public class NTriplesConverter {
    * @return
    */
   public static String convertString2NTriple(String subject, String predicate, String object) {
-    setURIResource();
+    String resource = getURIResource();
     StringBuffer ntriple_line = new StringBuffer();
-    subject = RESOURCE + subject;
+    subject = resource + subject;
     predicate = ONTOLOGY + predicate;
-    object = RESOURCE + object;
+    object = resource + object;
     ntriple_line.append("<" + subject + "> ");
     ntriple_line.append("<" + predicate + "> ");
     ntriple_line.append("<" + object + "> ");
@@ -53,7 +53,7 @@ public class NTriplesConverter {
    * @return
    */
   public static String convertRDFFacts2String(String line) {
-    setURIResource();
+    String resource = getURIResource();
     line = removeLastDot(line);
     StringBuffer converted_line = new StringBuffer();
     String[] text_line = line.split(">\\s(<|\")");
@@ -61,8 +61,8 @@ public class NTriplesConverter {
     String predicate;
     String object;
 
-    if (text_line[0].contains(RESOURCE)) {
-      subject = text_line[0].replaceAll(RESOURCE, "");
+    if (text_line[0].contains(resource)) {
+      subject = text_line[0].replaceAll(resource, "");
       subject = strip(subject, "<", ">");
     } else
       return null;
@@ -74,8 +74,8 @@ public class NTriplesConverter {
     } else
       return null;
 
-    if (text_line[2].contains(RESOURCE)) {
-      object = text_line[2].replaceAll(RESOURCE, "");
+    if (text_line[2].contains(resource)) {
+      object = text_line[2].replaceAll(resource, "");
       object = strip(object, "<", ">");
     } else
       return null;
@@ -123,15 +123,15 @@ public class NTriplesConverter {
    * @return
    */
   public static String convertRDFinstancetypes2String(String line) {
-    setURIResource();
+    String resource = getURIResource();
     StringBuffer converted_line = new StringBuffer();
     line = removeLastDot(line);
     String[] text_line = line.split(">\\s(<|\")");
     String subject;
     String object;
 
-    if (text_line[0].contains(RESOURCE)) {
-      subject = text_line[0].replaceAll(RESOURCE, "");
+    if (text_line[0].contains(resource)) {
+      subject = text_line[0].replaceAll(resource, "");
       subject = strip(subject, "<", ">");
     } else
       return null;
@@ -152,7 +152,7 @@ public class NTriplesConverter {
    * @return
    */
   public static String convertRDFontology2String(String line) {
-    setURIResource();
+    String resource = getURIResource();
     line = removeLastDot(line);
     String[] text_line = line.split(">\\s(<|\")");
     String subject;
@@ -162,7 +162,7 @@ public class NTriplesConverter {
       StringBuffer converted_line = new StringBuffer();
 
       if (text_line[0].contains(ONTOLOGY)) {
-        subject = text_line[0].replaceAll(RESOURCE, "");
+        subject = text_line[0].replaceAll(resource, "");
         subject = strip(subject, "<", ">");
       } else
         return null;
@@ -0,0 +1,150 @@
+package it.uniroma3.main.util.nlp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import edu.stanford.nlp.ie.AbstractSequenceClassifier;
+import edu.stanford.nlp.ie.crf.CRFClassifier;
+import edu.stanford.nlp.ling.CoreLabel;
+import it.uniroma3.config.Configuration;
+import it.uniroma3.config.WikiLanguage;
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.tokenize.TokenizerModel;
+
+/**
+ * The NLP models of a language, loaded once and shared (read-only) by all the threads. The models
+ * are immutable: only the decoders built on them (POSTaggerME, TokenizerME) keep a state, so they
+ * are created by each thread in OpenNLP. The CRF classifier of Stanford is loaded only the first
+ * time it is needed, since it is very heavy and used only on demand.
+ *
+ * @author matteo
+ *
+ */
+public class NLPModels {
+
+  private WikiLanguage.Lang lang;
+  private POSModel posModel;
+  private TokenizerModel tokenizerModel;
+  private DictionaryLemmatizer lemmatizer;
+  private volatile AbstractSequenceClassifier<CoreLabel> classifier;
+
+  /* heap taken by the models of OpenNLP */
+  private long size;
+
+  /**
+   * Loads the models of OpenNLP of the current language.
+   *
+   * @param lang
+   */
+  public NLPModels(WikiLanguage.Lang lang) {
+    this.lang = lang;
+    long before = usedMemory();
+    try (InputStream pos = new FileInputStream(Configuration.getPOSModel());
+        InputStream token = new FileInputStream(Configuration.getTokenModel());
+        InputStream lemma = new FileInputStream(Configuration.getLemmatizerModel())) {
+      this.posModel = new POSModel(pos);
+      this.tokenizerModel = new TokenizerModel(token);
+      this.lemmatizer = new DictionaryLemmatizer(lemma);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    this.size = Math.max(0, usedMemory() - before);
+  }
+
+  /**
+   *
+   * @return
+   */
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * @return the POS model
+   */
+  public POSModel getPOSModel() {
+    return posModel;
+  }
+
+  /**
+   * @return the tokenizer model
+   */
+  public TokenizerModel getTokenizerModel() {
+    return tokenizerModel;
+  }
+
+  /**
+   * @return the lemmatizer, which only looks up its dictionary
+   */
+  public DictionaryLemmatizer getLemmatizer() {
+    return lemmatizer;
+  }
+
+  /**
+   * Returns the CRF classifier of Stanford, loading it the first time.
+   *
+   * @return
+   */
+  public AbstractSequenceClassifier<CoreLabel> getClassifier() {
+    if (classifier == null) {
+      synchronized (this) {
+        if (classifier == null)
+          classifier = loadClassifier();
+      }
+    }
+    return classifier;
+  }
+
+  /**
+   *
+   * @return
+   */
+  private AbstractSequenceClassifier<CoreLabel> loadClassifier() {
+    AbstractSequenceClassifier<CoreLabel> classifier = null;
+    /*********
+     * this code only makes all writes to the System.err stream silent to avoid the print "Loading
+     * classifier ... "
+     *****/
+    PrintStream err = System.err;
+    System.setErr(new PrintStream(new OutputStream() {
+      @Override
+      public void write(int b) {}
+    }));
+    switch (lang) {
+      case en:
+        classifier = CRFClassifier.getClassifierNoExceptions(
+            "edu/stanford/nlp/models/ner/english.all.3class.distsim.crf.ser.gz");
+        break;
+
+      case es:
+        classifier = CRFClassifier.getClassifierNoExceptions(
+            "edu/stanford/nlp/models/ner/spanish.ancora.distsim.s512.crf.ser.gz");
+        break;
+
+      default:
+        System.out.println("No Stanford classifier for this language.");
+        System.exit(1);
+        break;
+    }
+    System.setErr(err);
+    /*** and then set everything back to its original state afterwards ***/
+    return classifier;
+  }
+
+  /**
+   * Prints the heap taken by the models, and the heap saved by sharing them among the threads.
+   *
+   * @param threads
+   */
+  public void printSize(int threads) {
+    long mb = size / (1024 * 1024);
+    System.out.printf("\t%-30s %d MB, shared by %d threads (%d MB saved)\n", "NLP models:", mb,
+        threads, mb * (threads - 1));
+  }
+
+}
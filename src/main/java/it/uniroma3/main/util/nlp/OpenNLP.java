@@ -1,21 +1,17 @@
 package it.uniroma3.main.util.nlp;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
-import it.uniroma3.config.Configuration;
+import java.util.ArrayList;
+import java.util.List;
 import it.uniroma3.main.util.Token;
 import opennlp.tools.lemmatizer.DictionaryLemmatizer;
-import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTagger;
 import opennlp.tools.postag.POSTaggerME;
 import opennlp.tools.tokenize.Tokenizer;
 import opennlp.tools.tokenize.TokenizerME;
-import opennlp.tools.tokenize.TokenizerModel;
-import opennlp.tools.util.InvalidFormatException;
 
 /**
+ * The tools of OpenNLP of a thread. The decoders keep a state, so each thread has its own, but
+ * they are built on the models of NLPModels, that are loaded once and shared.
  * 
  * @author matteo
  *
@@ -27,16 +23,12 @@ public class OpenNLP {
 
   /**
    * 
-   * @param task
+   * @param models
    */
-  public OpenNLP() {
-    try {
-      posTagger = obtainPOSTagger();
-      tokenizer = obtainTokenizer();
-      lemmatizer = obtainLemmatizer();
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+  public OpenNLP(NLPModels models) {
+    posTagger = new POSTaggerME(models.getPOSModel());
+    tokenizer = new TokenizerME(models.getTokenizerModel());
+    lemmatizer = models.getLemmatizer();
   }
 
   /**
@@ -56,54 +48,33 @@ public class OpenNLP {
 
 
   /**
+   * Tags the sentences all together: first all of them are tokenized, then all of them are
+   * tagged, so that each model stays hot while it is used.
    * 
+   * @param sentences
    * @return
    */
-  public String getSingular(String word, String postag) {
-    return lemmatizer.apply(word, postag);
-  }
-
-
-  /**
-   * 
-   * @return
-   * @throws InvalidFormatException
-   * @throws FileNotFoundException
-   * @throws IOException
-   */
-  public Tokenizer obtainTokenizer()
-      throws InvalidFormatException, FileNotFoundException, IOException {
-    TokenizerModel model = new TokenizerModel(new FileInputStream(Configuration.getTokenModel()));
-    Tokenizer sdetector = new TokenizerME(model);
-    return sdetector;
-  }
-
-  /**
-   * 
-   * @return
-   * @throws InvalidFormatException
-   * @throws FileNotFoundException
-   * @throws IOException
-   */
-  public DictionaryLemmatizer obtainLemmatizer()
-      throws InvalidFormatException, FileNotFoundException, IOException {
-    InputStream model = new FileInputStream(Configuration.getLemmatizerModel());
-    DictionaryLemmatizer lemmatizer = new DictionaryLemmatizer(model);
-    return lemmatizer;
+  public List<Token[]> applyPOSTagger(List<String> sentences) {
+    List<String[]> tokenized = new ArrayList<String[]>(sentences.size());
+    for (String sentence : sentences)
+      tokenized.add(this.tokenizer.tokenize(sentence));
+    List<Token[]> tagged = new ArrayList<Token[]>(sentences.size());
+    for (String[] tokens : tokenized) {
+      String[] tags = this.posTagger.tag(tokens);
+      Token[] tagSequence = new Token[tokens.length];
+      for (int i = 0; i < tokens.length; i++)
+        tagSequence[i] = new Token(tokens[i], tags[i]);
+      tagged.add(tagSequence);
+    }
+    return tagged;
   }
 
   /**
    * 
    * @return
-   * @throws InvalidFormatException
-   * @throws FileNotFoundException
-   * @throws IOException
    */
-  public POSTagger obtainPOSTagger()
-      throws InvalidFormatException, FileNotFoundException, IOException {
-    POSModel model = new POSModel(new FileInputStream(Configuration.getPOSModel()));
-    POSTagger sdetector = new POSTaggerME(model);
-    return sdetector;
+  public String getSingular(String word, String postag) {
+    return lemmatizer.apply(word, postag);
   }
 
 }
@@ -0,0 +1,357 @@
+package it.uniroma3.main.util.nlp;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.text.BreakIterator;
+import java.text.CharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import it.uniroma3.config.Configuration;
+import it.uniroma3.config.WikiLanguage;
+import it.uniroma3.main.bean.AnnotatedText;
+import it.uniroma3.main.bean.WikiArticle;
+
+/**
+ * Splits the texts in sentences working on the offsets of the clean text. The entities are never
+ * split: the break iterator sees each entity as the placeholder @WIKILINKn@ (as in StupidNLP), but
+ * the text with the placeholders is never built, and the boundaries are mapped back to offsets of
+ * the clean text.
+ *
+ * By default the sentences are exactly the ones of StupidNLP (english rules, its abbreviation
+ * check, and the text after a last sentence that it skips is dropped). With the rules of the
+ * language, the break iterator uses its locale, a sentence that ends with one of its
+ * abbreviations (abbreviations in its properties; for english, the list of StupidNLP when the key
+ * is missing) is joined to the next one, and the text after the last sentence is kept.
+ *
+ * @author matteo
+ *
+ */
+public class SentenceSplitter {
+
+  private static final List<String> ABBREVIATIONS =
+      Arrays.asList("Dr.", "Prof.", "Mr.", "Mrs.", "Ms.", "Jr.", "Ph.D.", "Sr.", "feat.", "Inc.");
+
+  /* the longest sentence that the abbreviation check of StupidNLP can match, e.g. " Prof. " */
+  private static final int STUPID_ABBREVIATION = 7;
+
+  private boolean languageRules;
+  private Locale locale;
+  private Set<String> abbreviations;
+
+  /**
+   *
+   * @param lang
+   * @param languageRules true to split with the rules of the language, false as StupidNLP
+   */
+  public SentenceSplitter(WikiLanguage lang, boolean languageRules) {
+    this.languageRules = languageRules;
+    this.locale = languageRules ? lang.getLocale() : Locale.US;
+    List<String> abbreviations = lang.getAbbreviations();
+    if (abbreviations.isEmpty() && lang.getLang() == WikiLanguage.Lang.en)
+      abbreviations = ABBREVIATIONS;
+    this.abbreviations = new HashSet<String>(abbreviations);
+  }
+
+  /**
+   * Splits a text with inline annotations, and renders the sentences again.
+   *
+   * @param text
+   * @return
+   */
+  public List<String> splitInSentence(String text) {
+    List<AnnotatedText> parts = splitInSentence(AnnotatedText.parse(text));
+    List<String> sentences = new ArrayList<String>(parts.size());
+    for (AnnotatedText part : parts)
+      sentences.add(part.toString());
+    return sentences;
+  }
+
+  /**
+   *
+   * @param text
+   * @return
+   */
+  public List<AnnotatedText> splitInSentence(AnnotatedText text) {
+    int[] ends = split(text);
+    List<AnnotatedText> sentences = new ArrayList<AnnotatedText>(ends.length);
+    int from = 0;
+    for (int end : ends) {
+      sentences.add(text.subText(from, end));
+      from = end;
+    }
+    return sentences;
+  }
+
+  /**
+   * Returns the offsets (in the clean text) where the sentences end, the last one is the end of
+   * the text.
+   *
+   * @param text
+   * @return
+   */
+  public int[] split(AnnotatedText text) {
+    PlaceholderIterator placeholders = new PlaceholderIterator(text);
+    BreakIterator bi = BreakIterator.getSentenceInstance(locale);
+    bi.setText(placeholders);
+    int[] ends = new int[8];
+    int size = 0;
+    int start = 0;
+    int previous = bi.first();
+    for (int boundary = bi.next(); boundary != BreakIterator.DONE; boundary = bi.next()) {
+      int end = placeholders.toText(boundary);
+      boolean joined = languageRules ? endsWithAbbreviation(text.getText(), start, end)
+          : boundary - previous <= STUPID_ABBREVIATION
+              && StupidNLP.hasAbbreviation(placeholders.substring(previous, boundary));
+      previous = boundary;
+      if (joined)
+        continue;
+      if (size == ends.length)
+        ends = Arrays.copyOf(ends, size * 2);
+      ends[size++] = end;
+      start = end;
+    }
+    // the text ends with an abbreviation
+    if (languageRules && start < text.getText().length()) {
+      ends = Arrays.copyOf(ends, size + 1);
+      ends[size++] = text.getText().length();
+    }
+    return Arrays.copyOf(ends, size);
+  }
+
+  /**
+   * Returns true if the last word of the sentence (before the trailing whitespaces) is an
+   * abbreviation.
+   *
+   * @param text
+   * @param start
+   * @param end
+   * @return
+   */
+  private boolean endsWithAbbreviation(String text, int start, int end) {
+    while (end > start && Character.isWhitespace(text.charAt(end - 1)))
+      end--;
+    if (end == start || text.charAt(end - 1) != '.')
+      return false;
+    int word = end - 1;
+    while (word > start && !Character.isWhitespace(text.charAt(word - 1)))
+      word--;
+    return abbreviations.contains(text.substring(word, end));
+  }
+
+  /**
+   * The clean text as seen by the break iterator, i.e. with each entity replaced by its
+   * placeholder @WIKILINKn@. The text is never written: the iterator maps its offsets to the clean
+   * text and to the placeholders.
+   */
+  private static class PlaceholderIterator implements CharacterIterator {
+    private static final String PLACEHOLDER = "@WIKILINK";
+
+    private final String text;
+    private final AnnotatedText annotated;
+    private final int length;
+    /* where the placeholders are, and how much longer than the entities they are */
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] shifts;
+    private int index;
+    /* the first placeholder that does not end before the index */
+    private int entity;
+    /* the placeholders that start before the last boundary mapped to the clean text */
+    private int mapped;
+
+    /**
+     *
+     * @param annotated
+     */
+    private PlaceholderIterator(AnnotatedText annotated) {
+      this.annotated = annotated;
+      this.text = annotated.getText();
+      this.starts = new int[annotated.size()];
+      this.ends = new int[annotated.size()];
+      this.shifts = new int[annotated.size() + 1];
+      for (int i = 0; i < annotated.size(); i++) {
+        starts[i] = annotated.getStart(i) + shifts[i];
+        ends[i] = starts[i] + PLACEHOLDER.length() + digits(i + 1) + 1;
+        shifts[i + 1] = ends[i] - annotated.getEnd(i);
+      }
+      this.length = text.length() + shifts[annotated.size()];
+    }
+
+    /**
+     *
+     * @param n
+     * @return
+     */
+    private static int digits(int n) {
+      int digits = 1;
+      while (n >= 10) {
+        n /= 10;
+        digits++;
+      }
+      return digits;
+    }
+
+    /**
+     * Maps a boundary to the clean text. A boundary is never inside a placeholder. The boundaries
+     * come in increasing order from the break iterator, so the placeholders before them are
+     * counted from the previous one.
+     *
+     * @param boundary
+     * @return
+     */
+    private int toText(int boundary) {
+      while (mapped < starts.length && starts[mapped] < boundary)
+        mapped++;
+      if (mapped == 0)
+        return boundary;
+      return annotated.getEnd(mapped - 1) + Math.max(0, boundary - ends[mapped - 1]);
+    }
+
+    /**
+     * The text seen by the break iterator between two of its offsets.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    private String substring(int from, int to) {
+      int saved = index;
+      StringBuilder s = new StringBuilder(to - from);
+      for (index = from; index < to; index++)
+        s.append(current());
+      index = saved;
+      return s.toString();
+    }
+
+    @Override
+    public char current() {
+      if (index >= length)
+        return DONE;
+      while (entity > 0 && ends[entity - 1] > index)
+        entity--;
+      while (entity < ends.length && ends[entity] <= index)
+        entity++;
+      if (entity == ends.length || starts[entity] > index)
+        return text.charAt(index - shifts[entity]);
+      int k = index - starts[entity];
+      if (k < PLACEHOLDER.length())
+        return PLACEHOLDER.charAt(k);
+      if (index == ends[entity] - 1)
+        return '@';
+      // the k-th digit of the number of the entity
+      int n = entity + 1;
+      for (int d = digits(n) - 1 - (k - PLACEHOLDER.length()); d > 0; d--)
+        n /= 10;
+      return (char) ('0' + n % 10);
+    }
+
+    @Override
+    public char first() {
+      index = 0;
+      return current();
+    }
+
+    @Override
+    public char last() {
+      index = Math.max(0, length - 1);
+      return current();
+    }
+
+    @Override
+    public char next() {
+      if (index < length)
+        index++;
+      return current();
+    }
+
+    @Override
+    public char previous() {
+      if (index == 0)
+        return DONE;
+      index--;
+      return current();
+    }
+
+    @Override
+    public char setIndex(int position) {
+      if (position < 0 || position > length)
+        throw new IllegalArgumentException("Invalid index " + position);
+      index = position;
+      return current();
+    }
+
+    @Override
+    public int getBeginIndex() {
+      return 0;
+    }
+
+    @Override
+    public int getEndIndex() {
+      return length;
+    }
+
+    @Override
+    public int getIndex() {
+      return index;
+    }
+
+    @Override
+    public Object clone() {
+      PlaceholderIterator copy = new PlaceholderIterator(annotated);
+      copy.index = index;
+      copy.entity = entity;
+      return copy;
+    }
+  }
+
+  /**
+   * Compares the splitter with StupidNLP on the blocks of the augmented dump (with the default
+   * rules, so that the sentences must be the same), and measures both.
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    Configuration.init(args);
+    WikiLanguage lang = Configuration.getLanguage();
+    SentenceSplitter splitter = new SentenceSplitter(lang, false);
+
+    List<AnnotatedText> blocks = new ArrayList<AnnotatedText>();
+    try (BufferedReader reader =
+        new BufferedReader(new FileReader(Configuration.getAugmentedArticlesFile()))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        for (String block : WikiArticle.fromJson(line).getBlocks().values())
+          blocks.add(AnnotatedText.parse(block));
+      }
+    }
+
+    int different = 0;
+    for (AnnotatedText block : blocks) {
+      List<AnnotatedText> expected = StupidNLP.splitInSentence(block);
+      List<AnnotatedText> actual = splitter.splitInSentence(block);
+      if (!expected.toString().equals(actual.toString()))
+        different++;
+    }
+    System.out.printf("\t%-30s %d\n", "Blocks:", blocks.size());
+    System.out.printf("\t%-30s %d\n", "Different splits:", different);
+
+    for (int round = 0; round < 5; round++) {
+      long start = System.nanoTime();
+      for (AnnotatedText block : blocks)
+        StupidNLP.splitInSentence(block);
+      long stupid = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (AnnotatedText block : blocks)
+        splitter.splitInSentence(block);
+      long offsets = System.nanoTime() - start;
+      System.out.printf("\t%-30s StupidNLP %d us, SentenceSplitter %d us\n",
+          "Round " + round + ":", stupid / 1000, offsets / 1000);
+    }
+  }
+
+}
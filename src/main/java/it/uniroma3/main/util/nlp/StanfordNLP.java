@@ -1,7 +1,5 @@
 package it.uniroma3.main.util.nlp;
 
-import java.io.OutputStream;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -10,10 +8,8 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import edu.stanford.nlp.ie.AbstractSequenceClassifier;
-import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
-import it.uniroma3.config.Lector;
 import it.uniroma3.main.pipeline.entitydetection.PatternComparator;
 import it.uniroma3.main.util.Pair;
 
@@ -28,35 +24,11 @@ public class StanfordNLP {
 
   /**
    * 
+   * @param models
    */
-  public StanfordNLP() {
-    /*********
-     * this code only makes all writes to the System.err stream silent to avoid the print "Loading
-     * classifier ... "
-     *****/
-    PrintStream err = System.err;
-    System.setErr(new PrintStream(new OutputStream() {
-      @Override
-      public void write(int b) {}
-    }));
-    switch (Lector.getWikiLang().getLang()) {
-      case en:
-        this.classifier = CRFClassifier.getClassifierNoExceptions(
-            "edu/stanford/nlp/models/ner/english.all.3class.distsim.crf.ser.gz");
-        break;
-
-      case es:
-        this.classifier = CRFClassifier.getClassifierNoExceptions(
-            "edu/stanford/nlp/models/ner/spanish.ancora.distsim.s512.crf.ser.gz");
-        break;
-
-      default:
-        System.out.println("No Stanford classifier for this language.");
-        System.exit(1);
-        break;
-    }
-    System.setErr(err);
-    /*** and then set everything back to its original state afterwards ***/
+  public StanfordNLP(NLPModels models) {
+    // the classifier is shared: classify() does not change it
+    this.classifier = models.getClassifier();
 
     this.mapping = new HashMap<String, String>();
     mapping.put("-LSB-", "[");
@@ -2,13 +2,10 @@ package it.uniroma3.main.util.nlp;
 
 import java.text.BreakIterator;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import it.uniroma3.main.pipeline.articleparser.MarkupParser;
+import it.uniroma3.main.bean.AnnotatedText;
 
 public class StupidNLP {
 
@@ -18,66 +15,70 @@ public class StupidNLP {
    * @return
    */
   public static List<String> splitInSentence(String sentence) {
-    // save a temmp map for the entities
-    Map<String, String> tmpEntitiesMapping = new HashMap<String, String>();
+    List<AnnotatedText> parts = splitInSentence(AnnotatedText.parse(sentence));
+    List<String> splittedSentences = new ArrayList<String>(parts.size());
+    for (AnnotatedText part : parts)
+      splittedSentences.add(part.toString());
+    return splittedSentences;
+  }
 
-    // replace them
-    Pattern ENTITIES = Pattern.compile(MarkupParser.WIKID_REGEX);
-    Matcher m = ENTITIES.matcher(sentence);
-    StringBuffer generalText = new StringBuffer();
-    int i = 0;
-    while (m.find()) {
-      i++;
-      String key = "@WIKILINK" + i + "@";
-      tmpEntitiesMapping.put(key, m.group(0));
-      m.appendReplacement(generalText, Matcher.quoteReplacement(key));
+  /**
+   * Splits the text in sentences, the entities are never split. Each entity is seen by the
+   * splitter as a placeholder (@WIKILINKn@), built from the spans without any regex, and the
+   * sentences are mapped back to the spans through their offsets.
+   * 
+   * @param text
+   * @return
+   */
+  public static List<AnnotatedText> splitInSentence(AnnotatedText text) {
+    // the text with the placeholders, and where the entities are in it
+    StringBuilder generalText = new StringBuilder(text.getText().length());
+    int[] placeholderStarts = new int[text.size()];
+    int[] placeholderEnds = new int[text.size()];
+    int copied = 0;
+    for (int i = 0; i < text.size(); i++) {
+      generalText.append(text.getText(), copied, text.getStart(i));
+      placeholderStarts[i] = generalText.length();
+      generalText.append("@WIKILINK").append(i + 1).append('@');
+      placeholderEnds[i] = generalText.length();
+      copied = text.getEnd(i);
     }
-    m.appendTail(generalText);
-    sentence = generalText.toString();
+    generalText.append(text.getText(), copied, text.getText().length());
 
-    // split in sentences
-    List<String> parts = split(sentence);
-
-    // get the entities back
-    List<String> splittedSentences = new ArrayList<String>(parts.size());
-    Pattern PLACEHOLDERS = Pattern.compile("@WIKILINK[0-9]+@");
-    for (String setn : parts) {
-      StringBuffer cleanSent = new StringBuffer();
-      m = PLACEHOLDERS.matcher(setn);
-      while (m.find()) {
-        m.appendReplacement(cleanSent,
-            Matcher.quoteReplacement(tmpEntitiesMapping.get(m.group(0))));
-      }
-      m.appendTail(cleanSent);
-      splittedSentences.add(cleanSent.toString());
+    List<AnnotatedText> sentences = new ArrayList<AnnotatedText>();
+    int entity = 0;
+    int from = 0;
+    for (int end : split(generalText.toString())) {
+      // the entities before the end of the sentence, a placeholder is never broken
+      while (entity < text.size() && placeholderStarts[entity] < end)
+        entity++;
+      int to = (entity == 0) ? end
+          : text.getEnd(entity - 1) + Math.max(0, end - placeholderEnds[entity - 1]);
+      sentences.add(text.subText(from, to));
+      from = to;
     }
-    return splittedSentences;
-
+    return sentences;
   }
 
   /**
    * 
    * @param document
-   * @return
+   * @return the offsets where the sentences end
    */
-  private static List<String> split(String document) {
-    List<String> sentenceList = new ArrayList<String>();
+  private static List<Integer> split(String document) {
+    List<Integer> sentenceEnds = new ArrayList<Integer>();
     BreakIterator bi = BreakIterator.getSentenceInstance(Locale.US);
     bi.setText(document);
     int start = bi.first();
     int end = bi.next();
-    int tempStart = start;
     while (end != BreakIterator.DONE) {
       String sentence = document.substring(start, end);
-      if (!hasAbbreviation(sentence)) {
-        sentence = document.substring(tempStart, end);
-        tempStart = end;
-        sentenceList.add(sentence);
-      }
+      if (!hasAbbreviation(sentence))
+        sentenceEnds.add(end);
       start = end;
       end = bi.next();
     }
-    return sentenceList;
+    return sentenceEnds;
   }
 
   /**
@@ -85,7 +86,7 @@ public class StupidNLP {
    * @param sentence
    * @return
    */
-  private static boolean hasAbbreviation(String sentence) {
+  static boolean hasAbbreviation(String sentence) {
     if (sentence == null || sentence.isEmpty())
       return false;
     if (Pattern.matches("\\sDr.\\s||\\sProf.\\s||\\sMr.\\s||\\sMrs.\\s||\\sMs.\\s||"
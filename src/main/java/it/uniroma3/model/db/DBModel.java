@@ -4,12 +4,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import org.apache.commons.lang3.StringUtils;
 import it.uniroma3.main.bean.WikiMVL;
 import it.uniroma3.main.bean.WikiTriple;
+import it.uniroma3.main.pipeline.Checkpoint;
 import it.uniroma3.main.util.Pair;
 
 /**
@@ -18,6 +22,10 @@ import it.uniroma3.main.util.Pair;
  * It includes four tables: - labeled_triples - unlabeled_triples - other_triples - mvl_collection -
  * nationality_collection
  * 
+ * Two tables keep the state of the pipeline, to resume it: - checkpoint - article_stats
+ * 
+ * One keeps the revision of each article, for the incremental extraction: - revisions
+ * 
  * And one for the model: - model
  * 
  * 
@@ -32,6 +40,9 @@ public class DBModel extends DBLector {
   public static String other_table = "other_triples";
   public static String mvl_table = "mvl_collection";
   public static String nationality_table = "nationality_collection";
+  public static String checkpoint_table = "checkpoint";
+  public static String article_stats_table = "article_stats";
+  public static String revisions_table = "revisions";
 
   /**
    * Create a db evidence
@@ -85,6 +96,9 @@ public class DBModel extends DBLector {
       stmt.executeUpdate(createMVLCollection);
       stmt.executeUpdate(dropNationalitiesCollection);
       stmt.executeUpdate(createNationalitiesCollection);
+      stmt.executeUpdate("DROP TABLE IF EXISTS " + checkpoint_table);
+      stmt.executeUpdate("DROP TABLE IF EXISTS " + article_stats_table);
+      stmt.executeUpdate("DROP TABLE IF EXISTS " + revisions_table);
 
     } catch (SQLException e) {
       try {
@@ -94,6 +108,26 @@ public class DBModel extends DBLector {
       }
       e.printStackTrace();
     }
+    createCheckpointTables();
+  }
+
+  /**
+   * Creates the tables of the checkpoint and of the revisions, if they do not exist yet.
+   */
+  public void createCheckpointTables() {
+    String createCheckpoint = "CREATE TABLE IF NOT EXISTS " + checkpoint_table + "("
+        + "pages integer, " + "done text, " + "time text)";
+    String createArticleStats = "CREATE TABLE IF NOT EXISTS " + article_stats_table + "("
+        + "page integer, " + "type text, " + "wikid text, " + "namespace text)";
+    String createRevisions = "CREATE TABLE IF NOT EXISTS " + revisions_table + "("
+        + "wikid text PRIMARY KEY, " + "revision text, " + "sha1 text)";
+    try (Statement stmt = this.getConnection().createStatement()) {
+      stmt.executeUpdate(createCheckpoint);
+      stmt.executeUpdate(createArticleStats);
+      stmt.executeUpdate(createRevisions);
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
   }
 
   /**
@@ -170,27 +204,9 @@ public class DBModel extends DBLector {
    * @param relation
    */
   public void batchInsertLabeledTriple(Queue<Pair<WikiTriple, String>> labeled_triples) {
-    String insert = "INSERT INTO " + labeled_table + " VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)";
     try {
       this.getConnection().setAutoCommit(false);
-      PreparedStatement stmt = this.getConnection().prepareStatement(insert);
-      for (Pair<WikiTriple, String> triple : labeled_triples) {
-        stmt.setString(1, triple.key.getWikid());
-        stmt.setString(2, triple.key.getSection());
-        stmt.setString(3, triple.key.getPhraseOriginal());
-        stmt.setString(4, triple.key.getPhrasePlaceholders());
-        stmt.setString(5, triple.key.getPre());
-        stmt.setString(6, triple.key.getPost());
-        stmt.setString(7, triple.key.getSubject());
-        stmt.setString(8, triple.key.getWikiSubject());
-        stmt.setString(9, triple.key.getSubjectType());
-        stmt.setString(10, triple.key.getObject());
-        stmt.setString(11, triple.key.getWikiObject());
-        stmt.setString(12, triple.key.getObjectType());
-        stmt.setString(13, triple.value);
-        stmt.addBatch();
-      }
-      stmt.executeBatch();
+      insertLabeledTriples(labeled_triples);
       this.getConnection().commit();
     } catch (SQLException e) {
       try {
@@ -213,10 +229,119 @@ public class DBModel extends DBLector {
    * @param triple
    */
   public void batchInsertUnlabeledTriple(Queue<WikiTriple> unlabeled_triples) {
-    String insert = "INSERT INTO " + unlabeled_table + " VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)";
     try {
       this.getConnection().setAutoCommit(false);
-      PreparedStatement stmt = this.getConnection().prepareStatement(insert);
+      insertUnlabeledTriples(unlabeled_triples);
+      this.getConnection().commit();
+    } catch (SQLException e) {
+      try {
+        this.getConnection().rollback();
+      } catch (SQLException e1) {
+        e1.printStackTrace();
+      }
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * This is the schema of other_triples:
+   * 
+   * 01- wikid text 02- section text 03- phrase_original text 04- phrase_placeholder text 05-
+   * phrase_pre text 06- phrase_post text 07- subject text 08- wiki_subject text 09- type_subject
+   * text 10- object text 11- wiki_object text 12- type_object text 13- type text
+   * 
+   * @param triple
+   */
+  public void batchInsertOtherTriple(Queue<WikiTriple> other_triples) {
+    try {
+      this.getConnection().setAutoCommit(false);
+      insertOtherTriples(other_triples);
+      this.getConnection().commit();
+    } catch (SQLException e) {
+      try {
+        this.getConnection().rollback();
+      } catch (SQLException e1) {
+        e1.printStackTrace();
+      }
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * 
+   * @param list
+   */
+  public void batchInsertMVList(Queue<WikiMVL> lists) {
+    try {
+      this.getConnection().setAutoCommit(false);
+      insertMVLists(lists);
+      this.getConnection().commit();
+    } catch (SQLException e) {
+      try {
+        this.getConnection().rollback();
+      } catch (SQLException e1) {
+        e1.printStackTrace();
+      }
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * 
+   * @param list
+   */
+  public void batchInsertNationalityTriple(Queue<String[]> nationalities) {
+    try {
+      this.getConnection().setAutoCommit(false);
+      insertNationalityTriples(nationalities);
+      this.getConnection().commit();
+    } catch (SQLException e) {
+      try {
+        this.getConnection().rollback();
+      } catch (SQLException e1) {
+        e1.printStackTrace();
+      }
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * 
+   * @param labeled_triples
+   * @throws SQLException
+   */
+  private void insertLabeledTriples(Queue<Pair<WikiTriple, String>> labeled_triples)
+      throws SQLException {
+    String insert = "INSERT INTO " + labeled_table + " VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insert)) {
+      for (Pair<WikiTriple, String> triple : labeled_triples) {
+        stmt.setString(1, triple.key.getWikid());
+        stmt.setString(2, triple.key.getSection());
+        stmt.setString(3, triple.key.getPhraseOriginal());
+        stmt.setString(4, triple.key.getPhrasePlaceholders());
+        stmt.setString(5, triple.key.getPre());
+        stmt.setString(6, triple.key.getPost());
+        stmt.setString(7, triple.key.getSubject());
+        stmt.setString(8, triple.key.getWikiSubject());
+        stmt.setString(9, triple.key.getSubjectType());
+        stmt.setString(10, triple.key.getObject());
+        stmt.setString(11, triple.key.getWikiObject());
+        stmt.setString(12, triple.key.getObjectType());
+        stmt.setString(13, triple.value);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  /**
+   * 
+   * @param unlabeled_triples
+   * @throws SQLException
+   */
+  private void insertUnlabeledTriples(Queue<WikiTriple> unlabeled_triples) throws SQLException {
+    String insert = "INSERT INTO " + unlabeled_table + " VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insert)) {
       for (WikiTriple triple : unlabeled_triples) {
         stmt.setString(1, triple.getWikid());
         stmt.setString(2, triple.getSection());
@@ -234,31 +359,17 @@ public class DBModel extends DBLector {
         stmt.addBatch();
       }
       stmt.executeBatch();
-      this.getConnection().commit();
-    } catch (SQLException e) {
-      try {
-        this.getConnection().rollback();
-      } catch (SQLException e1) {
-        e1.printStackTrace();
-      }
-      e.printStackTrace();
     }
   }
 
   /**
-   * This is the schema of other_triples:
-   * 
-   * 01- wikid text 02- section text 03- phrase_original text 04- phrase_placeholder text 05-
-   * phrase_pre text 06- phrase_post text 07- subject text 08- wiki_subject text 09- type_subject
-   * text 10- object text 11- wiki_object text 12- type_object text 13- type text
    * 
-   * @param triple
+   * @param other_triples
+   * @throws SQLException
    */
-  public void batchInsertOtherTriple(Queue<WikiTriple> other_triples) {
+  private void insertOtherTriples(Queue<WikiTriple> other_triples) throws SQLException {
     String insert = "INSERT INTO " + other_table + " VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?)";
-    try {
-      this.getConnection().setAutoCommit(false);
-      PreparedStatement stmt = this.getConnection().prepareStatement(insert);
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insert)) {
       for (WikiTriple triple : other_triples) {
         stmt.setString(1, triple.getWikid());
         stmt.setString(2, triple.getSection());
@@ -276,26 +387,17 @@ public class DBModel extends DBLector {
         stmt.addBatch();
       }
       stmt.executeBatch();
-      this.getConnection().commit();
-    } catch (SQLException e) {
-      try {
-        this.getConnection().rollback();
-      } catch (SQLException e1) {
-        e1.printStackTrace();
-      }
-      e.printStackTrace();
     }
   }
 
   /**
    * 
-   * @param list
+   * @param lists
+   * @throws SQLException
    */
-  public void batchInsertMVList(Queue<WikiMVL> lists) {
+  private void insertMVLists(Queue<WikiMVL> lists) throws SQLException {
     String insert = "INSERT INTO " + mvl_table + " VALUES(?,?,?,?)";
-    try {
-      this.getConnection().setAutoCommit(false);
-      PreparedStatement stmt = this.getConnection().prepareStatement(insert);
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insert)) {
       for (WikiMVL mvl : lists) {
         stmt.setString(1, mvl.getCode());
         stmt.setString(2, mvl.getWikid());
@@ -304,6 +406,78 @@ public class DBModel extends DBLector {
         stmt.addBatch();
       }
       stmt.executeBatch();
+    }
+  }
+
+  /**
+   * 
+   * @param nationalities
+   * @throws SQLException
+   */
+  private void insertNationalityTriples(Queue<String[]> nationalities) throws SQLException {
+    String insert = "INSERT INTO " + nationality_table + " VALUES(?,?,?,?)";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insert)) {
+      for (String[] nat : nationalities) {
+        stmt.setString(1, nat[0]);
+        stmt.setString(2, nat[1]);
+        stmt.setString(3, nat[2]);
+        stmt.setString(4, nat[3]);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+  }
+
+  /**
+   * Writes a block of triples together with the checkpoint of the pipeline, in a single
+   * transaction: after a crash, either both are in the DB or none of them.
+   * 
+   * @param labeled_triples
+   * @param nationalities
+   * @param unlabeled_triples
+   * @param other_triples
+   * @param lists
+   * @param checkpoint
+   */
+  public void batchInsertBlock(Queue<Pair<WikiTriple, String>> labeled_triples,
+      Queue<String[]> nationalities, Queue<WikiTriple> unlabeled_triples,
+      Queue<WikiTriple> other_triples, Queue<WikiMVL> lists, Checkpoint checkpoint) {
+    batchInsertBlock(labeled_triples, nationalities, unlabeled_triples, other_triples, lists,
+        checkpoint, false);
+  }
+
+  /**
+   * Same as above. With replace, the rows that the articles of the block had in the DB (from a
+   * previous extraction) are deleted first, and the model table is updated by the difference.
+   * 
+   * @param labeled_triples
+   * @param nationalities
+   * @param unlabeled_triples
+   * @param other_triples
+   * @param lists
+   * @param checkpoint
+   * @param replace
+   */
+  public void batchInsertBlock(Queue<Pair<WikiTriple, String>> labeled_triples,
+      Queue<String[]> nationalities, Queue<WikiTriple> unlabeled_triples,
+      Queue<WikiTriple> other_triples, Queue<WikiMVL> lists, Checkpoint checkpoint,
+      boolean replace) {
+    try {
+      this.getConnection().setAutoCommit(false);
+      if (replace) {
+        List<String> wikids = new LinkedList<String>();
+        for (String[] article : checkpoint.getArticles())
+          wikids.add(article[2]);
+        deleteArticles(wikids);
+      }
+      insertLabeledTriples(labeled_triples);
+      insertNationalityTriples(nationalities);
+      insertUnlabeledTriples(unlabeled_triples);
+      insertOtherTriples(other_triples);
+      insertMVLists(lists);
+      if (replace)
+        updateModelCounts(1);
+      insertCheckpoint(checkpoint);
       this.getConnection().commit();
     } catch (SQLException e) {
       try {
@@ -317,21 +491,91 @@ public class DBModel extends DBLector {
 
   /**
    * 
-   * @param list
+   * @param checkpoint
+   * @throws SQLException
    */
-  public void batchInsertNationalityTriple(Queue<String[]> nationalities) {
-    String insert = "INSERT INTO " + nationality_table + " VALUES(?,?,?,?)";
-    try {
-      this.getConnection().setAutoCommit(false);
-      PreparedStatement stmt = this.getConnection().prepareStatement(insert);
-      for (String[] nat : nationalities) {
-        stmt.setString(1, nat[0]);
-        stmt.setString(2, nat[1]);
-        stmt.setString(3, nat[2]);
-        stmt.setString(4, nat[3]);
+  private void insertCheckpoint(Checkpoint checkpoint) throws SQLException {
+    String insertStats = "INSERT INTO " + article_stats_table + " VALUES(?,?,?,?)";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insertStats)) {
+      for (String[] article : checkpoint.getArticles()) {
+        stmt.setInt(1, Integer.parseInt(article[0]));
+        stmt.setString(2, article[1]);
+        stmt.setString(3, article[2]);
+        stmt.setString(4, article[3]);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+    String insertRevision = "INSERT OR REPLACE INTO " + revisions_table + " VALUES(?,?,?)";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insertRevision)) {
+      for (String[] article : checkpoint.getArticles()) {
+        stmt.setString(1, article[2]);
+        stmt.setString(2, article[4]);
+        stmt.setString(3, article[5]);
         stmt.addBatch();
       }
       stmt.executeBatch();
+    }
+    try (Statement stmt = this.getConnection().createStatement()) {
+      stmt.executeUpdate("DELETE FROM " + checkpoint_table);
+    }
+    String insert = "INSERT INTO " + checkpoint_table + " VALUES(?,?,datetime('now'))";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insert)) {
+      stmt.setInt(1, checkpoint.getPages());
+      stmt.setString(2, checkpoint.getDone());
+      stmt.executeUpdate();
+    }
+  }
+
+  /**
+   * Copies the triples, the lists and the article statistics of the DB of a shard in this DB, in a
+   * single transaction. A shard that can not be merged throws a RuntimeException: the model would
+   * be derived from a part of the data.
+   * 
+   * @param shardDB
+   */
+  public void mergeShard(String shardDB) {
+    String[] tables = {labeled_table, unlabeled_table, other_table, mvl_table, nationality_table,
+        article_stats_table, revisions_table};
+    try {
+      // ATTACH and DETACH can not run inside a transaction
+      this.getConnection().setAutoCommit(true);
+      try (PreparedStatement stmt = this.getConnection().prepareStatement("ATTACH ? AS shard")) {
+        stmt.setString(1, shardDB);
+        stmt.execute();
+      }
+      try {
+        this.getConnection().setAutoCommit(false);
+        try (Statement stmt = this.getConnection().createStatement()) {
+          for (String table : tables)
+            stmt.executeUpdate(
+                "INSERT OR REPLACE INTO " + table + " SELECT * FROM shard." + table);
+        }
+        this.getConnection().commit();
+      } catch (SQLException e) {
+        this.getConnection().rollback();
+        throw e;
+      } finally {
+        this.getConnection().setAutoCommit(true);
+        try (Statement stmt = this.getConnection().createStatement()) {
+          stmt.execute("DETACH shard");
+        }
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException("Cannot merge the shard " + shardDB, e);
+    }
+  }
+
+  /**
+   * Deletes all the rows of the articles, e.g. of the pages that are not in the dump anymore, and
+   * updates the model table.
+   * 
+   * @param wikids
+   */
+  public void removeArticles(Collection<String> wikids) {
+    try {
+      this.getConnection().setAutoCommit(false);
+      deleteArticles(wikids);
       this.getConnection().commit();
     } catch (SQLException e) {
       try {
@@ -343,6 +587,158 @@ public class DBModel extends DBLector {
     }
   }
 
+  /**
+   * Deletes the rows of the articles from all the tables. Their triples are first subtracted from
+   * the model table, if it exists. The articles are kept in the temporary table changed_articles,
+   * until the next call.
+   * 
+   * @param wikids
+   * @throws SQLException
+   */
+  private void deleteArticles(Collection<String> wikids) throws SQLException {
+    try (Statement stmt = this.getConnection().createStatement()) {
+      stmt.executeUpdate(
+          "CREATE TEMP TABLE IF NOT EXISTS changed_articles(wikid text PRIMARY KEY)");
+      stmt.executeUpdate("DELETE FROM changed_articles");
+    }
+    String insert = "INSERT OR IGNORE INTO changed_articles VALUES(?)";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(insert)) {
+      for (String wikid : wikids) {
+        stmt.setString(1, wikid);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+    updateModelCounts(-1);
+    String[] tables = {labeled_table, unlabeled_table, other_table, mvl_table, nationality_table,
+        article_stats_table, revisions_table};
+    try (Statement stmt = this.getConnection().createStatement()) {
+      for (String table : tables)
+        stmt.executeUpdate("DELETE FROM " + table
+            + " WHERE wikid IN (SELECT wikid FROM changed_articles)");
+    }
+  }
+
+  /**
+   * Adds (sign 1) or subtracts (sign -1) the labeled and unlabeled triples of the articles in
+   * changed_articles to the occurrences in the model table. It does nothing if the model table has
+   * not been derived yet.
+   * 
+   * @param sign
+   * @throws SQLException
+   */
+  private void updateModelCounts(int sign) throws SQLException {
+    if (!checkTableExists(model_triples))
+      return;
+    String query = "SELECT phrase_placeholder, type_subject, type_object, relation, count(*) "
+        + "FROM " + labeled_table + " WHERE wikid IN (SELECT wikid FROM changed_articles) "
+        + "GROUP BY phrase_placeholder, type_subject, type_object, relation " + "UNION ALL "
+        + "SELECT phrase_placeholder, type_subject, type_object, 'NONE', count(*) " + "FROM "
+        + unlabeled_table + " WHERE wikid IN (SELECT wikid FROM changed_articles) "
+        + "GROUP BY phrase_placeholder, type_subject, type_object";
+    List<Object[]> deltas = new LinkedList<Object[]>();
+    try (Statement stmt = this.getConnection().createStatement()) {
+      try (ResultSet rs = stmt.executeQuery(query)) {
+        while (rs.next())
+          deltas.add(new Object[] {rs.getString(1), rs.getString(2), rs.getString(3),
+              rs.getString(4), rs.getInt(5)});
+      }
+    }
+    String update = "INSERT OR REPLACE INTO " + model_triples + " VALUES (?, ?, ?, ?, "
+        + "COALESCE((SELECT occurrences FROM " + model_triples + " WHERE phrase_placeholder=? "
+        + "AND type_subject=? " + "AND type_object=? " + "AND relation=?), 0) + ?)";
+    try (PreparedStatement stmt = this.getConnection().prepareStatement(update)) {
+      for (Object[] delta : deltas) {
+        for (int i = 0; i < 4; i++) {
+          stmt.setString(i + 1, (String) delta[i]);
+          stmt.setString(i + 5, (String) delta[i]);
+        }
+        stmt.setInt(9, sign * (Integer) delta[4]);
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+    }
+    try (Statement stmt = this.getConnection().createStatement()) {
+      stmt.executeUpdate("DELETE FROM " + model_triples + " WHERE occurrences <= 0");
+    }
+  }
+
+  /**
+   * Creates the indexes on the wikid, needed to replace the rows of the articles.
+   */
+  public void createWikidIndexes() {
+    String[] tables = {labeled_table, unlabeled_table, other_table, mvl_table, nationality_table,
+        article_stats_table};
+    try (Statement stmt = this.getConnection().createStatement()) {
+      for (String table : tables)
+        stmt.executeUpdate(
+            "CREATE INDEX IF NOT EXISTS indexwikid_" + table + " ON " + table + "(wikid)");
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the sha1 of the revision of each article extracted in the DB.
+   * 
+   * @return
+   */
+  public Map<String, String> readRevisions() {
+    Map<String, String> revisions = new HashMap<String, String>();
+    if (!checkTableExists(revisions_table))
+      return revisions;
+    String query = "SELECT wikid, sha1 FROM " + revisions_table;
+    try (Statement stmt = this.getConnection().createStatement()) {
+      try (ResultSet rs = stmt.executeQuery(query)) {
+        while (rs.next())
+          revisions.put(rs.getString(1), rs.getString(2));
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return revisions;
+  }
+
+  /**
+   * Returns the last checkpoint written in the DB, or null if there is not.
+   * 
+   * @return
+   */
+  public Checkpoint readCheckpoint() {
+    Checkpoint checkpoint = null;
+    if (!checkTableExists(checkpoint_table))
+      return checkpoint;
+    String query = "SELECT pages, done FROM " + checkpoint_table;
+    try (Statement stmt = this.getConnection().createStatement()) {
+      try (ResultSet rs = stmt.executeQuery(query)) {
+        if (rs.next())
+          checkpoint = new Checkpoint(rs.getInt(1), rs.getString(2));
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Returns the articles completed before the last checkpoint: type, wikid and namespace.
+   * 
+   * @return
+   */
+  public List<String[]> readArticleStats() {
+    List<String[]> articles = new LinkedList<String[]>();
+    String query = "SELECT type, wikid, namespace FROM " + article_stats_table;
+    try (Statement stmt = this.getConnection().createStatement()) {
+      try (ResultSet rs = stmt.executeQuery(query)) {
+        while (rs.next())
+          articles.add(new String[] {rs.getString(1), rs.getString(2), rs.getString(3)});
+      }
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+    return articles;
+  }
+
   /**
    * 
    * @param modelTableName